@@ -0,0 +1,25 @@
+package com.example.auth.DTO;
+
+import java.util.List;
+
+public class UserPage {
+    public static final int DEFAULT_LIMIT = 100;
+    public static final int MAX_LIMIT = 1000;
+
+    private List<UserSummary> users;
+    // Pass as cursor to get the next page; null on the last page
+    private String nextCursor;
+
+    public UserPage(List<UserSummary> users, String nextCursor) {
+        this.users = users;
+        this.nextCursor = nextCursor;
+    }
+
+    public List<UserSummary> getUsers() {
+        return users;
+    }
+
+    public String getNextCursor() {
+        return nextCursor;
+    }
+}
@@ -0,0 +1,43 @@
+package com.example.auth.DTO;
+
+import com.example.auth.model.Role;
+
+/**
+ * What admins get to see of a user: everything but the password. Built directly by
+ * the User.findSummariesByRole queries, so listing users never loads User entities.
+ */
+public class UserSummary {
+    private Long id;
+    private String username;
+    private String email;
+    private String companyName;
+    private Role role;
+
+    public UserSummary(Long id, String username, String email, String companyName, Role role) {
+        this.id = id;
+        this.username = username;
+        this.email = email;
+        this.companyName = companyName;
+        this.role = role;
+    }
+
+    public Long getId() {
+        return id;
+    }
+
+    public String getUsername() {
+        return username;
+    }
+
+    public String getEmail() {
+        return email;
+    }
+
+    public String getCompanyName() {
+        return companyName;
+    }
+
+    public Role getRole() {
+        return role;
+    }
+}
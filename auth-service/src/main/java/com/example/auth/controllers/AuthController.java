@@ -2,7 +2,7 @@ package com.example.auth.controllers;
 
 import com.example.auth.DTO.RegistrationResponse;
 import com.example.auth.model.Role;
-import com.example.auth.model.User;
+import com.example.auth.service.PasswordHashingService;
 import com.example.auth.service.UserService;
 import com.example.auth.utils.Jwt;
 
@@ -10,8 +10,7 @@ import jakarta.ejb.EJB;
 import jakarta.ws.rs.*;
 import jakarta.ws.rs.core.MediaType;
 import jakarta.ws.rs.core.Response;
-
-import java.util.List;
+import jakarta.ws.rs.core.StreamingOutput;
 
 @Path("/auth")
 @Produces(MediaType.APPLICATION_JSON)
@@ -21,6 +20,9 @@ public class AuthController {
     @EJB
     private UserService userService;
 
+    @EJB
+    private PasswordHashingService passwordHashing;
+
     @POST
     @Path("/register/customer")
     public Response registerCustomer(
@@ -53,7 +55,10 @@ public class AuthController {
         }
 
         // Create the user
-        userService.createUser(username, password, email, null, Role.CUSTOMER);
+        Response created = userService.createUser(username, password, email, null, Role.CUSTOMER);
+        if (created.getStatus() != Response.Status.CREATED.getStatusCode()) {
+            return created;
+        }
 
         // Return a JSON response
         return Response.status(Response.Status.CREATED)
@@ -125,7 +130,10 @@ public class AuthController {
 
     @GET
     @Path("/customers")
-    public Response getAllCustomers(@HeaderParam("Authorization") String authHeader) {
+    public Response getAllCustomers(
+            @HeaderParam("Authorization") String authHeader,
+            @QueryParam("limit") Integer limit,
+            @QueryParam("cursor") String cursor) {
         try {
             // Extract token from Authorization header
             String token = authHeader.substring("Bearer ".length());
@@ -137,8 +145,7 @@ public class AuthController {
                         .entity("Unauthorized access").build();
             }
 
-            List<User> customers = userService.getAllCustomers();
-            return Response.ok(customers).build();
+            return listUsers(Role.CUSTOMER, limit, cursor);
         } catch (Exception e) {
             return Response.status(Response.Status.UNAUTHORIZED)
                     .entity("Invalid token").build();
@@ -147,7 +154,10 @@ public class AuthController {
 
     @GET
     @Path("/restaurants")
-    public Response getAllRestaurantReps(@HeaderParam("Authorization") String authHeader) {
+    public Response getAllRestaurantReps(
+            @HeaderParam("Authorization") String authHeader,
+            @QueryParam("limit") Integer limit,
+            @QueryParam("cursor") String cursor) {
         try {
             // Extract token from Authorization header
             String token = authHeader.substring("Bearer ".length());
@@ -159,12 +169,49 @@ public class AuthController {
                         .entity("Unauthorized access").build();
             }
 
-            List<User> restaurantReps = userService.getAllRestaurantRepresentatives();
-            return Response.ok(restaurantReps).build();
+            return listUsers(Role.RESTAURANT_REPRESENTATIVE, limit, cursor);
         } catch (Exception e) {
             return Response.status(Response.Status.UNAUTHORIZED)
                     .entity("Invalid token").build();
         }
     }
 
-}
\ No newline at end of file
+    private Response listUsers(Role role, Integer limit, String cursor) {
+        if (limit == null && cursor == null) {
+            // The full list, still a plain JSON array, written while it is read from the database
+            StreamingOutput body = out -> userService.writeUsers(role, out);
+            return Response.ok(body, MediaType.APPLICATION_JSON).build();
+        }
+        long afterId = 0;
+        if (cursor != null && !cursor.isEmpty()) {
+            try {
+                afterId = Long.parseLong(cursor);
+            } catch (NumberFormatException e) {
+                return Response.status(Response.Status.BAD_REQUEST)
+                        .entity("Invalid cursor").build();
+            }
+        }
+        return Response.ok(userService.getUserPage(role, afterId, limit)).build();
+    }
+
+    @GET
+    @Path("/hash-metrics")
+    public Response getHashMetrics(@HeaderParam("Authorization") String authHeader) {
+        try {
+            // Extract token from Authorization header
+            String token = authHeader.substring("Bearer ".length());
+
+            // Validate token and check if admin
+            String role = Jwt.getRole(token);
+            if (!role.equals(Role.ADMIN.toString())) {
+                return Response.status(Response.Status.FORBIDDEN)
+                        .entity("Unauthorized access").build();
+            }
+
+            return Response.ok(passwordHashing.getMetrics()).build();
+        } catch (Exception e) {
+            return Response.status(Response.Status.UNAUTHORIZED)
+                    .entity("Invalid token").build();
+        }
+    }
+}
@@ -4,7 +4,14 @@ package com.example.auth.model;
 import jakarta.persistence.*;
 
 @Entity
-@Table(name = "users")
+// Named so a duplicate insert can be told apart by constraint
+@Table(name = "users", uniqueConstraints = {
+        @UniqueConstraint(name = User.USERNAME_CONSTRAINT, columnNames = "username"),
+        @UniqueConstraint(name = User.COMPANY_CONSTRAINT, columnNames = "companyName")
+}, indexes = {
+        // Admin listings page through one role in id order
+        @Index(name = "idx_users_role_id", columnList = "role, id")
+})
 @NamedQueries({
         @NamedQuery(name = "User.findByUsername",
                 query = "SELECT u FROM User u WHERE u.username = :username"),
@@ -13,14 +20,25 @@ import jakarta.persistence.*;
         @NamedQuery(name = "User.findByRole",
                 query = "SELECT u FROM User u WHERE u.role = :role"),
         @NamedQuery(name = "User.findByCompanyName",
-                query = "SELECT u FROM User u WHERE u.companyName = :companyName")
+                query = "SELECT u FROM User u WHERE u.companyName = :companyName"),
+        @NamedQuery(name = "User.countByUsername",
+                query = "SELECT COUNT(u) FROM User u WHERE u.username = :username"),
+        @NamedQuery(name = "User.countByCompanyName",
+                query = "SELECT COUNT(u) FROM User u WHERE u.companyName = :companyName"),
+        @NamedQuery(name = "User.findNames",
+                query = "SELECT u.username, u.companyName FROM User u"),
+        @NamedQuery(name = "User.findSummariesByRole",
+                query = "SELECT NEW com.example.auth.DTO.UserSummary(u.id, u.username, u.email, u.companyName, u.role) " +
+                        "FROM User u WHERE u.role = :role AND u.id > :afterId ORDER BY u.id")
 })
 public class User{
+    public static final String USERNAME_CONSTRAINT = "uk_users_username";
+    public static final String COMPANY_CONSTRAINT = "uk_users_company_name";
+
     @Id
     @GeneratedValue(strategy = GenerationType.IDENTITY)
     private Long id;
 
-    @Column(unique = true)
     private String username;
 
     @Column(nullable = false)
@@ -29,7 +47,6 @@ public class User{
     @Column(nullable = false)
     private String email;
 
-    @Column(unique = true)
     private String companyName;
 
     @Enumerated(EnumType.STRING)
@@ -0,0 +1,141 @@
+package com.example.auth.service;
+
+import com.example.auth.utils.PasswordHasher;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import jakarta.annotation.Resource;
+import jakarta.ejb.ApplicationException;
+import jakarta.ejb.ConcurrencyManagement;
+import jakarta.ejb.ConcurrencyManagementType;
+import jakarta.ejb.Singleton;
+import jakarta.enterprise.concurrent.ManagedThreadFactory;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Runs password hashing on a small dedicated pool so a burst of logins cannot take every CPU
+ * from the rest of the server. Only a bounded number of hashes may wait for a thread; beyond
+ * that, and when a hash waits longer than the timeout, callers get an OverloadedException
+ * and should answer 503 so clients back off.
+ */
+@Singleton
+@ConcurrencyManagement(ConcurrencyManagementType.BEAN)
+public class PasswordHashingService {
+
+    // Override with -Dpassword.hash.threads / -Dpassword.hash.queue / -Dpassword.hash.timeout.ms
+    private static final int THREADS = Integer.getInteger("password.hash.threads",
+            Math.max(1, Runtime.getRuntime().availableProcessors() / 2));
+    private static final int QUEUE_SIZE = Integer.getInteger("password.hash.queue", 32);
+    private static final long TIMEOUT_MILLIS = Long.getLong("password.hash.timeout.ms", 5000);
+
+    @Resource(lookup = "java:comp/DefaultManagedThreadFactory")
+    private ManagedThreadFactory threadFactory;
+
+    private ThreadPoolExecutor executor;
+    // Checked against when a login names an unknown user
+    private String dummyHash;
+
+    private final AtomicLong completed = new AtomicLong();
+    private final AtomicLong rejected = new AtomicLong();
+    private final AtomicLong hashNanos = new AtomicLong();
+
+    // Reaches callers as is, instead of wrapped in an EJBException that rolls their transaction back
+    @ApplicationException(rollback = false)
+    public static class OverloadedException extends RuntimeException {
+        private static final long serialVersionUID = 1L;
+
+        public OverloadedException(String message) {
+            super(message);
+        }
+    }
+
+    @PostConstruct
+    public void init() {
+        executor = new ThreadPoolExecutor(THREADS, THREADS, 0, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(QUEUE_SIZE), threadFactory, new ThreadPoolExecutor.AbortPolicy());
+        dummyHash = PasswordHasher.hash(UUID.randomUUID().toString());
+    }
+
+    public String hash(String password) {
+        return run(() -> PasswordHasher.hash(password));
+    }
+
+    public boolean verify(String password, String stored) {
+        return run(() -> PasswordHasher.verify(password, stored));
+    }
+
+    /**
+     * Takes as long as verify() does for an existing user and always fails, so that a login
+     * with an unknown username cannot be told apart by its response time.
+     */
+    public boolean verifyUnknownUser(String password) {
+        run(() -> PasswordHasher.verify(password, dummyHash));
+        return false;
+    }
+
+    private <T> T run(Callable<T> task) {
+        Future<T> future;
+        try {
+            future = executor.submit(() -> {
+                long start = System.nanoTime();
+                try {
+                    return task.call();
+                } finally {
+                    hashNanos.addAndGet(System.nanoTime() - start);
+                    completed.incrementAndGet();
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            rejected.incrementAndGet();
+            throw new OverloadedException("Too many logins in progress");
+        }
+
+        try {
+            return future.get(TIMEOUT_MILLIS, TimeUnit.MILLISECONDS);
+        } catch (TimeoutException e) {
+            future.cancel(true);
+            rejected.incrementAndGet();
+            throw new OverloadedException("Password check timed out");
+        } catch (InterruptedException e) {
+            future.cancel(true);
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while checking password", e);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            throw cause instanceof RuntimeException ? (RuntimeException) cause : new IllegalStateException(cause);
+        }
+    }
+
+    /**
+     * Hashing counters since startup, for monitoring.
+     */
+    public Map<String, Object> getMetrics() {
+        long hashes = completed.get();
+        Map<String, Object> metrics = new LinkedHashMap<>();
+        metrics.put("threads", THREADS);
+        metrics.put("queued", executor.getQueue().size());
+        metrics.put("active", executor.getActiveCount());
+        metrics.put("completed", hashes);
+        metrics.put("rejected", rejected.get());
+        metrics.put("averageHashMillis", hashes == 0 ? 0.0 : hashNanos.get() / 1_000_000.0 / hashes);
+        // Upper bound on sustained logins per second with the current pool
+        metrics.put("maxHashesPerSecond", hashes == 0 ? 0.0 : THREADS * 1_000_000_000.0 * hashes / hashNanos.get());
+        return metrics;
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+}
@@ -0,0 +1,97 @@
+package com.example.auth.service;
+
+import com.example.auth.utils.BloomFilter;
+import jakarta.annotation.PostConstruct;
+import jakarta.ejb.ConcurrencyManagement;
+import jakarta.ejb.ConcurrencyManagementType;
+import jakarta.ejb.Singleton;
+import jakarta.ejb.Startup;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.PersistenceContext;
+
+import java.util.List;
+
+/**
+ * Bloom filters over the usernames and company names in the users table, so checking a
+ * name nobody has taken usually needs no query. A "maybe" still has to be confirmed
+ * against the database, and the unique constraints on users stay the final word: names
+ * registered by another instance are only picked up by the next warm().
+ */
+@Singleton
+@Startup
+@ConcurrencyManagement(ConcurrencyManagementType.BEAN)
+public class UserExistenceFilter {
+
+    // Override with -Dusers.bloom.expected / -Dusers.bloom.fpp
+    private static final long EXPECTED_USERS = Long.getLong("users.bloom.expected", 1_000_000);
+    private static final double FALSE_POSITIVE_RATE = Double.parseDouble(System.getProperty("users.bloom.fpp", "0.01"));
+
+    @PersistenceContext(unitName = "auth-service")
+    private EntityManager entityManager;
+
+    private static class Filters {
+        final BloomFilter usernames = new BloomFilter(EXPECTED_USERS, FALSE_POSITIVE_RATE);
+        final BloomFilter companies = new BloomFilter(EXPECTED_USERS, FALSE_POSITIVE_RATE);
+    }
+
+    // Null until the first warm() succeeds; every check goes to the database until then
+    private volatile Filters filters;
+    // Filters being built by warm(), so names registered meanwhile are not lost with the swap
+    private volatile Filters rebuilding;
+
+    @PostConstruct
+    public void init() {
+        warm();
+    }
+
+    /**
+     * Rebuilds the filters from the users table.
+     */
+    public synchronized void warm() {
+        Filters warmed = new Filters();
+        rebuilding = warmed;
+        try {
+            List<Object[]> rows = entityManager.createNamedQuery("User.findNames", Object[].class)
+                    .getResultList();
+            for (Object[] row : rows) {
+                add(warmed, (String) row[0], (String) row[1]);
+            }
+            filters = warmed;
+            System.out.println("\u001B[32m User existence filter warmed with " + rows.size() + " users \u001B[0m");
+        } catch (Exception e) {
+            System.err.println("\u001B[31m Failed to warm user existence filter: " + e.getMessage() + " \u001B[0m");
+        } finally {
+            rebuilding = null;
+        }
+    }
+
+    public void add(String username, String companyName) {
+        Filters current = filters;
+        if (current != null) {
+            add(current, username, companyName);
+        }
+        Filters next = rebuilding;
+        if (next != null) {
+            add(next, username, companyName);
+        }
+    }
+
+    public boolean mightHaveUsername(String username) {
+        Filters current = filters;
+        return current == null || current.usernames.mightContain(username);
+    }
+
+    public boolean mightHaveCompany(String companyName) {
+        Filters current = filters;
+        return current == null || current.companies.mightContain(companyName);
+    }
+
+    private static void add(Filters filters, String username, String companyName) {
+        if (username != null) {
+            filters.usernames.add(username);
+        }
+        if (companyName != null) {
+            filters.companies.add(companyName);
+        }
+    }
+}
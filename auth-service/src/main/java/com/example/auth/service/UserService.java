@@ -3,23 +3,40 @@ package com.example.auth.service;
 import com.example.auth.model.Role;
 import com.example.auth.model.User;
 import com.example.auth.utils.Jwt;
-import com.example.auth.utils.Security;
+import com.example.auth.utils.PasswordHasher;
 import com.example.auth.DTO.LoginResponse;
+import com.example.auth.DTO.UserPage;
+import com.example.auth.DTO.UserSummary;
+import jakarta.ejb.EJB;
 import jakarta.ejb.Stateless;
+import jakarta.json.Json;
+import jakarta.json.stream.JsonGenerator;
 import jakarta.persistence.EntityManager;
 import jakarta.persistence.NoResultException;
 import jakarta.persistence.PersistenceContext;
+import jakarta.persistence.PersistenceException;
 import jakarta.ws.rs.core.Response;
 
+import java.io.OutputStream;
+import java.util.ArrayList;
 import java.util.List;
 import java.util.UUID;
+import java.util.stream.Stream;
 
 @Stateless
 public class UserService {
 
+    private static final int STREAM_FETCH_SIZE = 500;
+
     @PersistenceContext(unitName = "auth-service")
     private EntityManager entityManager;
 
+    @EJB
+    private PasswordHashingService passwordHashing;
+
+    @EJB
+    private UserExistenceFilter existenceFilter;
+
     public Response createUser(String username, String password, String email, String companyName, Role role) {
         try {
             // Validate inputs
@@ -36,39 +53,45 @@ public class UserService {
                 }
 
                 // Check if a representative for the company already exists
-                try {
-                    entityManager.createNamedQuery("User.findByCompanyName", User.class)
-                            .setParameter("companyName", companyName)
-                            .getSingleResult();
+                if (isCompanyTaken(companyName)) {
                     return Response.status(Response.Status.CONFLICT)
                             .entity("A representative for this company already exists").build();
-                } catch (NoResultException ignored) {
-                    // No representative exists, continue
                 }
             }
 
             // Check if username exists
-            try {
-                entityManager.createNamedQuery("User.findByUsername", User.class)
-                        .setParameter("username", username)
-                        .getSingleResult();
+            if (isUsernameTaken(username)) {
                 return Response.status(Response.Status.CONFLICT)
                         .entity("Username already exists").build();
-            } catch (NoResultException ignored) {
-                // Username doesn't exist, continue
             }
 
-            // Encrypt the password
-            String encryptedPassword = Security.encrypt(password);
+            // Hash the password
+            String hashedPassword = passwordHashing.hash(password);
 
             // Create and persist user
-            User user = new User(username, encryptedPassword, email, companyName, role);
-            entityManager.persist(user);
-            entityManager.flush();
+            User user = new User(username, hashedPassword, email, companyName, role);
+            try {
+                entityManager.persist(user);
+                entityManager.flush();
+            } catch (PersistenceException e) {
+                // Lost a race with a concurrent registration, or a name this instance had not seen yet
+                if (violates(e, User.COMPANY_CONSTRAINT)) {
+                    return Response.status(Response.Status.CONFLICT)
+                            .entity("A representative for this company already exists").build();
+                }
+                if (violates(e, User.USERNAME_CONSTRAINT)) {
+                    return Response.status(Response.Status.CONFLICT)
+                            .entity("Username already exists").build();
+                }
+                throw e;
+            }
+            existenceFilter.add(username, companyName);
 
             return Response.status(Response.Status.CREATED)
                     .entity("User created successfully").build();
 
+        } catch (PasswordHashingService.OverloadedException e) {
+            return overloaded();
         } catch (Exception e) {
             e.printStackTrace();
             return Response.status(Response.Status.INTERNAL_SERVER_ERROR)
@@ -85,12 +108,18 @@ public class UserService {
                         .setParameter("username", username)
                         .getSingleResult();
             } catch (NoResultException e) {
+                passwordHashing.verifyUnknownUser(password);
                 return Response.status(Response.Status.UNAUTHORIZED)
                         .entity("Invalid credentials").build();
             }
 
-            // Decrypt and compare passwords
-            if (Security.decrypt(user.getPassword()).equals(password)) {
+            // Compare against the stored hash
+            if (passwordHashing.verify(password, user.getPassword())) {
+                // Old AES values and hashes with fewer iterations are replaced while we have the plaintext
+                if (PasswordHasher.needsRehash(user.getPassword())) {
+                    user.setPassword(passwordHashing.hash(password));
+                }
+
                 String token = generateToken(user);
 
                 // Extract role from the token
@@ -109,6 +138,8 @@ public class UserService {
                 return Response.status(Response.Status.UNAUTHORIZED)
                         .entity("Invalid credentials").build();
             }
+        } catch (PasswordHashingService.OverloadedException e) {
+            return overloaded();
         } catch (Exception e) {
             e.printStackTrace();
             return Response.status(Response.Status.INTERNAL_SERVER_ERROR)
@@ -116,29 +147,92 @@ public class UserService {
         }
     }
 
-    // For admin to list all customers
-    public List<User> getAllCustomers() {
-        return entityManager.createNamedQuery("User.findByRole", User.class)
-                .setParameter("role", Role.CUSTOMER)
-                .getResultList();
+    private static Response overloaded() {
+        return Response.status(Response.Status.SERVICE_UNAVAILABLE)
+                .header("Retry-After", "1")
+                .entity("Server busy, please try again").build();
     }
 
-    // For admin to list all restaurant representatives
-    public List<User> getAllRestaurantRepresentatives() {
-        return entityManager.createNamedQuery("User.findByRole", User.class)
-                .setParameter("role", Role.RESTAURANT_REPRESENTATIVE)
+    /**
+     * One page of a role's users in id order, for admins, starting after the last user
+     * of the previous page.
+     */
+    public UserPage getUserPage(Role role, long afterId, Integer limit) {
+        int pageSize = limit == null || limit <= 0 ? UserPage.DEFAULT_LIMIT : Math.min(limit, UserPage.MAX_LIMIT);
+
+        // One extra row tells whether there is a next page
+        List<UserSummary> users = entityManager.createNamedQuery("User.findSummariesByRole", UserSummary.class)
+                .setParameter("role", role)
+                .setParameter("afterId", afterId)
+                .setMaxResults(pageSize + 1)
                 .getResultList();
+
+        String nextCursor = null;
+        if (users.size() > pageSize) {
+            users = users.subList(0, pageSize);
+            nextCursor = String.valueOf(users.get(pageSize - 1).getId());
+        }
+        return new UserPage(new ArrayList<>(users), nextCursor);
+    }
+
+    /**
+     * Writes every user of a role as one JSON array while reading them from the database,
+     * so memory use does not grow with the number of users. Runs in its own transaction,
+     * which has to stay open until the last row is written.
+     */
+    public void writeUsers(Role role, OutputStream out) {
+        try (Stream<UserSummary> users = entityManager.createNamedQuery("User.findSummariesByRole", UserSummary.class)
+                .setParameter("role", role)
+                .setParameter("afterId", 0L)
+                .setHint("org.hibernate.fetchSize", STREAM_FETCH_SIZE)
+                .setHint("org.hibernate.readOnly", true)
+                .getResultStream();
+             JsonGenerator json = Json.createGenerator(out)) {
+            json.writeStartArray();
+            users.forEach(user -> {
+                json.writeStartObject()
+                        .write("id", user.getId())
+                        .write("username", user.getUsername())
+                        .write("email", user.getEmail());
+                if (user.getCompanyName() == null) {
+                    json.writeNull("companyName");
+                } else {
+                    json.write("companyName", user.getCompanyName());
+                }
+                json.write("role", user.getRole().toString())
+                        .writeEnd();
+            });
+            json.writeEnd();
+        }
     }
 
     public boolean isUsernameTaken(String username) {
-        try {
-            entityManager.createNamedQuery("User.findByUsername", User.class)
-                    .setParameter("username", username)
-                    .getSingleResult();
-            return true; // Username exists
-        } catch (NoResultException e) {
-            return false; // Username doesn't exist
+        // Most names being checked are new, and the filter rules those out without a query
+        if (!existenceFilter.mightHaveUsername(username)) {
+            return false;
+        }
+        return entityManager.createNamedQuery("User.countByUsername", Long.class)
+                .setParameter("username", username)
+                .getSingleResult() > 0;
+    }
+
+    private boolean isCompanyTaken(String companyName) {
+        if (!existenceFilter.mightHaveCompany(companyName)) {
+            return false;
+        }
+        return entityManager.createNamedQuery("User.countByCompanyName", Long.class)
+                .setParameter("companyName", companyName)
+                .getSingleResult() > 0;
+    }
+
+    private static boolean violates(Throwable e, String constraint) {
+        for (Throwable cause = e; cause != null; cause = cause.getCause()) {
+            String message = cause.getMessage();
+            if (message != null && message.toLowerCase().contains(constraint)) {
+                return true;
+            }
         }
+        return false;
     }
 
     // Generate JWT token
@@ -1,8 +1,10 @@
 package com.example.auth.utils;
 
 import com.example.auth.model.Role;
+import com.example.auth.service.UserExistenceFilter;
 import jakarta.annotation.PostConstruct;
 import jakarta.annotation.Resource;
+import jakarta.ejb.EJB;
 import jakarta.ejb.Singleton;
 import jakarta.ejb.Startup;
 import jakarta.ejb.Timeout;
@@ -27,6 +29,9 @@ public class DatabaseInitializer {
     @Resource
     private TimerService timerService;
 
+    @EJB
+    private UserExistenceFilter existenceFilter;
+
     private static final String ADMIN_USERNAME = "admin";
     private static final String ADMIN_PASSWORD = "admin123";
     private static final String ADMIN_EMAIL = "admin@fooddelivery.com";
@@ -58,13 +63,13 @@ public class DatabaseInitializer {
 
             if (adminCount == 0) {
                 // Admin doesn't exist, create it
-                String encryptedPassword = Security.encrypt(ADMIN_PASSWORD);
+                String hashedPassword = PasswordHasher.hash(ADMIN_PASSWORD);
 
                 // Create the admin user using JPA entity
                 entityManager.createNativeQuery(
                                 "INSERT INTO users (username, password, email, role) VALUES (?, ?, ?, ?)")
                         .setParameter(1, ADMIN_USERNAME)
-                        .setParameter(2, encryptedPassword)
+                        .setParameter(2, hashedPassword)
                         .setParameter(3, ADMIN_EMAIL)
                         .setParameter(4, Role.ADMIN.toString())
                         .executeUpdate();
@@ -72,7 +77,7 @@ public class DatabaseInitializer {
                 entityManager.createNativeQuery(
                                 "INSERT INTO users (username, password, email, role) VALUES (?, ?, ?, ?)")
                         .setParameter(1, USER_USERNAME)
-                        .setParameter(2, USER_PASSWORD)
+                        .setParameter(2, PasswordHasher.hash(USER_PASSWORD))
                         .setParameter(3, USER_EMAIL)
                         .setParameter(4, Role.CUSTOMER.toString())
                         .executeUpdate();
@@ -80,7 +85,7 @@ public class DatabaseInitializer {
                 entityManager.createNativeQuery(
                                 "INSERT INTO users (username, password, email, role, companyName) VALUES (?, ?, ?, ?,?)")
                         .setParameter(1, RESTAURANT_USERNAME)
-                        .setParameter(2, RESTAURANT_PASSWORD)
+                        .setParameter(2, PasswordHasher.hash(RESTAURANT_PASSWORD))
                         .setParameter(3, RESTAURANT_EMAIL)
                         .setParameter(4, Role.RESTAURANT_REPRESENTATIVE.toString())
                         .setParameter(5, RESTAURANT_NAME)
@@ -92,6 +97,9 @@ public class DatabaseInitializer {
             }
 
             tx.commit();
+
+            // Seeded rows bypass UserService, and the startup warm may have run before the schema existed
+            existenceFilter.warm();
         } catch (Exception e) {
             try {
                 tx.rollback();
@@ -2,25 +2,38 @@ package com.example.auth.utils;
 
 import com.example.auth.model.User;
 
-import javax.crypto.SecretKey;
-import java.nio.charset.StandardCharsets;
+import java.security.Key;
 import java.util.Date;
 
 import io.jsonwebtoken.Claims;
+import io.jsonwebtoken.JwsHeader;
+import io.jsonwebtoken.JwtParser;
 import io.jsonwebtoken.Jwts;
 import io.jsonwebtoken.SignatureAlgorithm;
-import io.jsonwebtoken.security.Keys;
+import io.jsonwebtoken.SigningKeyResolverAdapter;
+import io.jsonwebtoken.security.SignatureException;
 import jakarta.enterprise.context.ApplicationScoped;
 
 @ApplicationScoped
 public class Jwt {
-    // Secret key and expiration defined as constants
-    // In production, these should be in a properties file
-    private static final String JWT_SECRET = "the-most-secure-secret-key-in-hostory";
+    // Keys come from JwtKeyring, see there for rotation and asymmetric signing
     private static final long JWT_EXPIRATION = 86400000; // 24 hours in milliseconds
 
-    private static final SecretKey SECRET_KEY = Keys.hmacShaKeyFor(
-            JWT_SECRET.getBytes(StandardCharsets.UTF_8));
+    // Thread safe, so it is built once; the key is looked up by the token's kid
+    private static final JwtParser PARSER = Jwts.parserBuilder()
+            .setSigningKeyResolver(new SigningKeyResolverAdapter() {
+                // jjwt 0.11 declares the header raw, so the override has to as well
+                @Override
+                @SuppressWarnings("rawtypes")
+                public Key resolveSigningKey(JwsHeader header, Claims claims) {
+                    Key key = JwtKeyring.verificationKey(header.getKeyId());
+                    if (key == null) {
+                        throw new SignatureException("Unknown signing key " + header.getKeyId());
+                    }
+                    return key;
+                }
+            })
+            .build();
 
     public static String generateToken(User user) {
         Date now = new Date();
@@ -37,21 +50,20 @@ public class Jwt {
             claims.put("company", user.getCompanyName());
         }
 
-        // Generate token
+        // Generate token, HS256 for a shared secret or RS256/ES256 for a private key
+        JwtKeyring.SigningKey signing = JwtKeyring.signing();
+        Key signingKey = signing.getKey();
         return Jwts.builder()
+                .setHeaderParam(JwsHeader.KEY_ID, signing.getKid())
                 .setClaims(claims)
                 .setIssuedAt(now)
                 .setExpiration(expiryDate)
-                .signWith(SECRET_KEY, SignatureAlgorithm.HS256)
+                .signWith(signingKey, SignatureAlgorithm.forSigningKey(signingKey))
                 .compact();
     }
 
     public static Claims validateToken(String token) {
-        return Jwts.parserBuilder()
-                .setSigningKey(SECRET_KEY)
-                .build()
-                .parseClaimsJws(token)
-                .getBody();
+        return PARSER.parseClaimsJws(token).getBody();
     }
 
     public static String getUsername(String token) {
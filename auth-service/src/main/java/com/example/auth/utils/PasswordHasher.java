@@ -0,0 +1,107 @@
+package com.example.auth.utils;
+
+import javax.crypto.SecretKeyFactory;
+import javax.crypto.spec.PBEKeySpec;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.util.Base64;
+
+/**
+ * PBKDF2-HMAC-SHA256 password hashes, stored as
+ *
+ *   pbkdf2-sha256$iterations$salt$hash
+ *
+ * with salt and hash in base64. Hashing is deliberately slow, so callers should go through
+ * PasswordHashingService rather than calling this on a request thread. Passwords stored
+ * before hashing was introduced are AES encrypted (see Security); they still verify and
+ * report needsRehash() so they are replaced on the next successful login.
+ */
+public final class PasswordHasher {
+
+    private static final String PREFIX = "pbkdf2-sha256$";
+    private static final String ALGORITHM = "PBKDF2WithHmacSHA256";
+    // Override with -Dpassword.pbkdf2.iterations; existing hashes are upgraded on login when it is raised
+    private static final int ITERATIONS = Integer.getInteger("password.pbkdf2.iterations", 600_000);
+    private static final int SALT_BYTES = 16;
+    private static final int HASH_BITS = 256;
+
+    private static final SecureRandom RANDOM = new SecureRandom();
+
+    private PasswordHasher() {
+    }
+
+    public static String hash(String password) {
+        byte[] salt = new byte[SALT_BYTES];
+        RANDOM.nextBytes(salt);
+        byte[] hash = pbkdf2(password, salt, ITERATIONS);
+        Base64.Encoder encoder = Base64.getEncoder();
+        return PREFIX + ITERATIONS + "$" + encoder.encodeToString(salt) + "$" + encoder.encodeToString(hash);
+    }
+
+    public static boolean verify(String password, String stored) {
+        if (password == null || stored == null) {
+            return false;
+        }
+        if (!stored.startsWith(PREFIX)) {
+            return verifyLegacy(password, stored);
+        }
+
+        String[] parts = stored.substring(PREFIX.length()).split("\\$");
+        if (parts.length != 3) {
+            return false;
+        }
+        Base64.Decoder decoder = Base64.getDecoder();
+        byte[] expected;
+        byte[] actual;
+        try {
+            expected = decoder.decode(parts[2]);
+            actual = pbkdf2(password, decoder.decode(parts[1]), Integer.parseInt(parts[0]));
+        } catch (IllegalArgumentException e) {
+            // Corrupt stored value: bad base64, iteration count or empty salt
+            return false;
+        }
+        return MessageDigest.isEqual(expected, actual);
+    }
+
+    /**
+     * Whether a stored value that just verified should be replaced by a fresh hash.
+     */
+    public static boolean needsRehash(String stored) {
+        if (stored == null || !stored.startsWith(PREFIX)) {
+            return true;
+        }
+        int end = stored.indexOf('$', PREFIX.length());
+        if (end < 0) {
+            return true;
+        }
+        try {
+            return Integer.parseInt(stored.substring(PREFIX.length(), end)) < ITERATIONS;
+        } catch (NumberFormatException e) {
+            return true;
+        }
+    }
+
+    private static boolean verifyLegacy(String password, String stored) {
+        try {
+            return MessageDigest.isEqual(
+                    Security.decrypt(stored).getBytes(StandardCharsets.UTF_8),
+                    password.getBytes(StandardCharsets.UTF_8));
+        } catch (Exception e) {
+            // Not something the old scheme produced either
+            return false;
+        }
+    }
+
+    private static byte[] pbkdf2(String password, byte[] salt, int iterations) {
+        PBEKeySpec spec = new PBEKeySpec(password.toCharArray(), salt, iterations, HASH_BITS);
+        try {
+            return SecretKeyFactory.getInstance(ALGORITHM).generateSecret(spec).getEncoded();
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException(ALGORITHM + " not available", e);
+        } finally {
+            spec.clearPassword();
+        }
+    }
+}
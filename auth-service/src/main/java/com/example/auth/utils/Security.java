@@ -4,18 +4,14 @@ import javax.crypto.Cipher;
 import javax.crypto.spec.SecretKeySpec;
 import java.util.Base64;
 
+/**
+ * The old reversible password encryption. Only kept to verify passwords stored before
+ * PasswordHasher; those are replaced by a hash on the next successful login.
+ */
 public class Security {
     //random key
     private static final String SECRET_KEY = "1234567890123456"; // 16-byte key for AES-128
 
-    public static String encrypt(String plainText) throws Exception {
-        SecretKeySpec key = new SecretKeySpec(SECRET_KEY.getBytes(), "AES");
-        Cipher cipher = Cipher.getInstance("AES");
-        cipher.init(Cipher.ENCRYPT_MODE, key);
-        byte[] encryptedBytes = cipher.doFinal(plainText.getBytes());
-        return Base64.getEncoder().encodeToString(encryptedBytes);
-    }
-
     public static String decrypt(String encryptedText) throws Exception {
         SecretKeySpec key = new SecretKeySpec(SECRET_KEY.getBytes(), "AES");
         Cipher cipher = Cipher.getInstance("AES");
@@ -24,4 +20,4 @@ public class Security {
         byte[] decryptedBytes = cipher.doFinal(decodedBytes);
         return new String(decryptedBytes);
     }
-}
\ No newline at end of file
+}
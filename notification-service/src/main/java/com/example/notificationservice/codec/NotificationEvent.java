@@ -0,0 +1,273 @@
+package com.example.notificationservice.codec;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * Envelope for every message sent to notification-service. The body starts with a format
+ * version byte and an event type byte, followed by the fields of that type in a fixed order:
+ *
+ *   ORDER_STATUS    orderId, userId, status
+ *   PAYMENT_FAILED  orderId, reason
+ *   STOCK_ALERT     dishId, sellerId, quantity, productName, companyName
+ *   LOG             service, severity, message
+ *
+ * Numbers are zig-zag varints and strings a varint byte length followed by UTF-8. Ids and
+ * string lengths are stored plus one so that 0 can stand for null. The same class is kept
+ * in order-service, product-service and notification-service; any change to the layout
+ * needs a new version so older readers reject what they do not understand.
+ */
+public final class NotificationEvent {
+    public static final String CONTENT_TYPE = "application/vnd.notification-event.v1+binary";
+    private static final int VERSION = 1;
+
+    public enum Type {
+        ORDER_STATUS, PAYMENT_FAILED, STOCK_ALERT, LOG
+    }
+
+    private final Type type;
+    private Long orderId;
+    private Long userId;
+    private Long dishId;
+    private int quantity;
+    private String productName;
+    private String companyName;
+    private String service;
+    private String severity;
+    private String text;
+
+    private NotificationEvent(Type type) {
+        this.type = type;
+    }
+
+    public static NotificationEvent orderStatus(Long orderId, String status, Long userId) {
+        NotificationEvent event = new NotificationEvent(Type.ORDER_STATUS);
+        event.orderId = orderId;
+        event.userId = userId;
+        event.text = status;
+        return event;
+    }
+
+    public static NotificationEvent paymentFailed(Long orderId, String reason) {
+        NotificationEvent event = new NotificationEvent(Type.PAYMENT_FAILED);
+        event.orderId = orderId;
+        event.text = reason;
+        return event;
+    }
+
+    public static NotificationEvent stockAlert(Long dishId, String productName, int quantity, String companyName, Long sellerId) {
+        NotificationEvent event = new NotificationEvent(Type.STOCK_ALERT);
+        event.dishId = dishId;
+        event.productName = productName;
+        event.quantity = quantity;
+        event.companyName = companyName;
+        event.userId = sellerId;
+        return event;
+    }
+
+    public static NotificationEvent log(String service, String severity, String message) {
+        NotificationEvent event = new NotificationEvent(Type.LOG);
+        event.service = service;
+        event.severity = severity;
+        event.text = message;
+        return event;
+    }
+
+    public Type getType() { return type; }
+    public Long getOrderId() { return orderId; }
+    // Customer of an order status event, seller of a stock alert
+    public Long getUserId() { return userId; }
+    public Long getDishId() { return dishId; }
+    public int getQuantity() { return quantity; }
+    public String getProductName() { return productName; }
+    public String getCompanyName() { return companyName; }
+    public String getService() { return service; }
+    public String getSeverity() { return severity; }
+    // Status of an order status event, reason of a payment failure, message of a log event
+    public String getText() { return text; }
+
+    public byte[] encode() {
+        Writer writer = new Writer();
+        writer.writeByte(VERSION);
+        writer.writeByte(type.ordinal());
+        switch (type) {
+            case ORDER_STATUS:
+                writer.writeNullableLong(orderId);
+                writer.writeNullableLong(userId);
+                writer.writeString(text);
+                break;
+            case PAYMENT_FAILED:
+                writer.writeNullableLong(orderId);
+                writer.writeString(text);
+                break;
+            case STOCK_ALERT:
+                writer.writeNullableLong(dishId);
+                writer.writeNullableLong(userId);
+                writer.writeVarLong(zigZag(quantity));
+                writer.writeString(productName);
+                writer.writeString(companyName);
+                break;
+            case LOG:
+                writer.writeString(service);
+                writer.writeString(severity);
+                writer.writeString(text);
+                break;
+        }
+        return writer.toByteArray();
+    }
+
+    public static NotificationEvent decode(byte[] body) throws IOException {
+        Reader reader = new Reader(body);
+        int version = reader.readByte();
+        if (version != VERSION) {
+            throw new IOException("Unsupported notification event version " + version);
+        }
+        int ordinal = reader.readByte();
+        if (ordinal >= Type.values().length) {
+            throw new IOException("Unknown notification event type " + ordinal);
+        }
+
+        NotificationEvent event = new NotificationEvent(Type.values()[ordinal]);
+        switch (event.type) {
+            case ORDER_STATUS:
+                event.orderId = reader.readNullableLong();
+                event.userId = reader.readNullableLong();
+                event.text = reader.readString();
+                break;
+            case PAYMENT_FAILED:
+                event.orderId = reader.readNullableLong();
+                event.text = reader.readString();
+                break;
+            case STOCK_ALERT:
+                event.dishId = reader.readNullableLong();
+                event.userId = reader.readNullableLong();
+                event.quantity = (int) unZigZag(reader.readVarLong());
+                event.productName = reader.readString();
+                event.companyName = reader.readString();
+                break;
+            case LOG:
+                event.service = reader.readString();
+                event.severity = reader.readString();
+                event.text = reader.readString();
+                break;
+        }
+        return event;
+    }
+
+    @Override
+    public String toString() {
+        switch (type) {
+            case ORDER_STATUS:
+                return "OrderStatus{orderId=" + orderId + ", status='" + text + "', userId=" + userId + "}";
+            case PAYMENT_FAILED:
+                return "PaymentFailed{orderId=" + orderId + ", reason='" + text + "'}";
+            case STOCK_ALERT:
+                return "StockAlert{dishId=" + dishId + ", productName='" + productName + "', quantity=" + quantity +
+                        ", companyName='" + companyName + "', sellerId=" + userId + "}";
+            default:
+                return "Log{" + service + "_" + severity + ": " + text + "}";
+        }
+    }
+
+    private static long zigZag(long value) {
+        return (value << 1) ^ (value >> 63);
+    }
+
+    private static long unZigZag(long value) {
+        return (value >>> 1) ^ -(value & 1);
+    }
+
+    private static class Writer {
+        private byte[] buffer = new byte[64];
+        private int position;
+
+        void writeByte(int value) {
+            ensureCapacity(1);
+            buffer[position++] = (byte) value;
+        }
+
+        void writeVarLong(long value) {
+            ensureCapacity(10);
+            while ((value & ~0x7FL) != 0) {
+                buffer[position++] = (byte) ((value & 0x7F) | 0x80);
+                value >>>= 7;
+            }
+            buffer[position++] = (byte) value;
+        }
+
+        void writeNullableLong(Long value) {
+            // 0 is null, so a present value is stored shifted by one
+            writeVarLong(value == null ? 0 : zigZag(value) + 1);
+        }
+
+        void writeString(String value) {
+            if (value == null) {
+                writeVarLong(0);
+                return;
+            }
+            byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+            writeVarLong(bytes.length + 1L);
+            ensureCapacity(bytes.length);
+            System.arraycopy(bytes, 0, buffer, position, bytes.length);
+            position += bytes.length;
+        }
+
+        byte[] toByteArray() {
+            return Arrays.copyOf(buffer, position);
+        }
+
+        private void ensureCapacity(int extra) {
+            if (position + extra > buffer.length) {
+                buffer = Arrays.copyOf(buffer, Math.max(buffer.length * 2, position + extra));
+            }
+        }
+    }
+
+    private static class Reader {
+        private final byte[] buffer;
+        private int position;
+
+        Reader(byte[] buffer) {
+            this.buffer = buffer;
+        }
+
+        int readByte() throws IOException {
+            if (position >= buffer.length) {
+                throw new IOException("Truncated notification event");
+            }
+            return buffer[position++] & 0xFF;
+        }
+
+        long readVarLong() throws IOException {
+            long value = 0;
+            for (int shift = 0; shift < 64; shift += 7) {
+                int b = readByte();
+                value |= (long) (b & 0x7F) << shift;
+                if ((b & 0x80) == 0) {
+                    return value;
+                }
+            }
+            throw new IOException("Malformed varint in notification event");
+        }
+
+        Long readNullableLong() throws IOException {
+            long value = readVarLong();
+            return value == 0 ? null : unZigZag(value - 1);
+        }
+
+        String readString() throws IOException {
+            long length = readVarLong();
+            if (length == 0) {
+                return null;
+            }
+            if (length - 1 > buffer.length - position) {
+                throw new IOException("Truncated notification event");
+            }
+            // Decoded straight out of the message body
+            String value = new String(buffer, position, (int) (length - 1), StandardCharsets.UTF_8);
+            position += (int) (length - 1);
+            return value;
+        }
+    }
+}
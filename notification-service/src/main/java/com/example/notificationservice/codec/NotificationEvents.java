@@ -0,0 +1,97 @@
+package com.example.notificationservice.codec;
+
+import com.example.notificationservice.config.RabbitMQConfig;
+import org.springframework.amqp.core.Message;
+import org.springframework.amqp.core.MessageProperties;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Reads a NotificationEvent from an incoming message. Messages from producers that still
+ * send colon-delimited text carry no content type; those are parsed in the old format of
+ * the queue they arrived on, using the outermost colons so a status or reason may contain
+ * colons of its own.
+ */
+public final class NotificationEvents {
+
+    private NotificationEvents() {
+    }
+
+    public static NotificationEvent read(Message message, NotificationEvent.Type legacyType) throws IOException {
+        MessageProperties properties = message.getMessageProperties();
+        if (NotificationEvent.CONTENT_TYPE.equals(properties.getContentType())) {
+            return NotificationEvent.decode(message.getBody());
+        }
+
+        String text = new String(message.getBody(), StandardCharsets.UTF_8);
+        if (RabbitMQConfig.ADMIN_LOG_EXCHANGE.equals(properties.getReceivedExchange())) {
+            return legacyLog(properties.getReceivedRoutingKey(), text);
+        }
+        switch (legacyType) {
+            case ORDER_STATUS:
+                return legacyOrderStatus(text);
+            case PAYMENT_FAILED:
+                return legacyPaymentFailure(text);
+            case STOCK_ALERT:
+                return legacyStockAlert(text);
+            default:
+                throw new IOException("No legacy format for " + legacyType);
+        }
+    }
+
+    // "orderId:status:userId"
+    private static NotificationEvent legacyOrderStatus(String text) throws IOException {
+        int first = text.indexOf(':');
+        int last = text.lastIndexOf(':');
+        if (first < 0 || first == last) {
+            throw new IOException("Invalid order confirmation message format: " + text);
+        }
+        return NotificationEvent.orderStatus(
+                parseLong(text.substring(0, first)),
+                text.substring(first + 1, last),
+                parseLong(text.substring(last + 1)));
+    }
+
+    // "orderId:reason" or "orderId"
+    private static NotificationEvent legacyPaymentFailure(String text) throws IOException {
+        int colon = text.indexOf(':');
+        if (colon < 0) {
+            return NotificationEvent.paymentFailed(parseLong(text), null);
+        }
+        return NotificationEvent.paymentFailed(parseLong(text.substring(0, colon)), text.substring(colon + 1));
+    }
+
+    // "productName:quantity:sellerCompanyName:sellerId"
+    private static NotificationEvent legacyStockAlert(String text) throws IOException {
+        int sellerColon = text.lastIndexOf(':');
+        int companyColon = sellerColon > 0 ? text.lastIndexOf(':', sellerColon - 1) : -1;
+        int quantityColon = companyColon > 0 ? text.lastIndexOf(':', companyColon - 1) : -1;
+        if (quantityColon < 0) {
+            throw new IOException("Invalid stock check message format: " + text);
+        }
+        return NotificationEvent.stockAlert(
+                null,
+                text.substring(0, quantityColon),
+                (int) parseLong(text.substring(quantityColon + 1, companyColon)),
+                text.substring(companyColon + 1, sellerColon),
+                parseLong(text.substring(sellerColon + 1)));
+    }
+
+    // "Service_Severity:message", routed with the key "Service_Severity"
+    private static NotificationEvent legacyLog(String routingKey, String text) {
+        int underscore = routingKey == null ? -1 : routingKey.indexOf('_');
+        String service = underscore < 0 ? routingKey : routingKey.substring(0, underscore);
+        String severity = underscore < 0 ? "" : routingKey.substring(underscore + 1);
+        int colon = text.indexOf(':');
+        return NotificationEvent.log(service, severity, colon < 0 ? text : text.substring(colon + 1));
+    }
+
+    private static long parseLong(String value) throws IOException {
+        try {
+            return Long.parseLong(value.trim());
+        } catch (NumberFormatException e) {
+            throw new IOException("Invalid number '" + value + "' in notification message", e);
+        }
+    }
+}
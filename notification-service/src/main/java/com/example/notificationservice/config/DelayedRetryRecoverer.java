@@ -0,0 +1,80 @@
+package com.example.notificationservice.config;
+
+import org.springframework.amqp.AmqpRejectAndDontRequeueException;
+import org.springframework.amqp.core.Message;
+import org.springframework.amqp.core.MessageDeliveryMode;
+import org.springframework.amqp.core.MessageProperties;
+import org.springframework.amqp.rabbit.core.RabbitOperations;
+import org.springframework.amqp.rabbit.retry.MessageBatchRecoverer;
+
+import java.util.List;
+
+/**
+ * Sends a message whose listener failed to the delay queue of its next attempt, or to the
+ * parking lot once it used up its attempts or was rejected as unreadable. The original
+ * delivery is acked afterwards, so a failing message never holds up its queue. A failed
+ * batch is handled message by message.
+ *
+ * The sends go out on one channel in confirm mode (spring.rabbitmq.publisher-confirm-type=simple)
+ * and recover only returns once the broker confirmed them all. Otherwise it throws, and the
+ * container requeues the original delivery instead of acking it.
+ */
+public class DelayedRetryRecoverer implements MessageBatchRecoverer {
+
+    static final long CONFIRM_TIMEOUT_MILLIS = 5000;
+
+    private final RabbitOperations rabbitOperations;
+
+    public DelayedRetryRecoverer(RabbitOperations rabbitOperations) {
+        this.rabbitOperations = rabbitOperations;
+    }
+
+    @Override
+    public void recover(Message message, Throwable cause) {
+        recover(List.of(message), cause);
+    }
+
+    @Override
+    public void recover(List<Message> messages, Throwable cause) {
+        rabbitOperations.invoke(operations -> {
+            for (Message message : messages) {
+                send(operations, message, cause);
+            }
+            operations.waitForConfirmsOrDie(CONFIRM_TIMEOUT_MILLIS);
+            return null;
+        });
+    }
+
+    private static void send(RabbitOperations operations, Message message, Throwable cause) {
+        MessageProperties properties = message.getMessageProperties();
+        String queue = properties.getConsumerQueue();
+        int attempt = retryCount(properties) + 1;
+        properties.setHeader(RabbitMQConfig.RETRY_COUNT_HEADER, attempt);
+        properties.setDeliveryMode(MessageDeliveryMode.PERSISTENT);
+
+        if (isRejected(cause) || attempt > RabbitMQConfig.RETRY_ATTEMPTS) {
+            System.err.println("Parking message from " + queue + " after " + (attempt - 1) + " retries: " +
+                    (cause != null ? cause.getMessage() : "unknown error"));
+            operations.send(RabbitMQConfig.DEAD_LETTER_EXCHANGE, queue, message);
+        } else {
+            System.err.println("Retrying message from " + queue + " in " +
+                    (RabbitMQConfig.INITIAL_RETRY_DELAY_MILLIS << (attempt - 1)) + " ms: " +
+                    (cause != null ? cause.getMessage() : "unknown error"));
+            operations.send(RabbitMQConfig.RETRY_EXCHANGE, RabbitMQConfig.retryQueue(queue, attempt), message);
+        }
+    }
+
+    static int retryCount(MessageProperties properties) {
+        Object count = properties.getHeader(RabbitMQConfig.RETRY_COUNT_HEADER);
+        return count instanceof Number ? ((Number) count).intValue() : 0;
+    }
+
+    private static boolean isRejected(Throwable cause) {
+        for (Throwable t = cause; t != null; t = t.getCause()) {
+            if (t instanceof AmqpRejectAndDontRequeueException) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
@@ -1,9 +1,17 @@
 package com.example.notificationservice.config;
 
 import org.springframework.amqp.core.*;
+import org.springframework.amqp.rabbit.config.RetryInterceptorBuilder;
+import org.springframework.amqp.rabbit.config.SimpleRabbitListenerContainerFactory;
+import org.springframework.amqp.rabbit.connection.ConnectionFactory;
+import org.springframework.amqp.rabbit.core.RabbitTemplate;
+import org.springframework.boot.autoconfigure.amqp.SimpleRabbitListenerContainerFactoryConfigurer;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 
+import java.util.ArrayList;
+import java.util.List;
+
 @Configuration
 public class RabbitMQConfig {
     // Queue names
@@ -14,20 +22,47 @@ public class RabbitMQConfig {
     // Exchange names
     public static final String PAYMENTS_EXCHANGE = "payments-exchange";
     public static final String ADMIN_LOG_EXCHANGE = "admin-log";
-    
+
+    // Retry and dead-letter layout; has to match QueueTopology in order-service and product-service,
+    // which declare the same queues
+    public static final String DEAD_LETTER_EXCHANGE = "dead-letter";
+    public static final String RETRY_EXCHANGE = "retry";
+    public static final String RETRY_COUNT_HEADER = "x-retry-count";
+    public static final int RETRY_ATTEMPTS = 5;
+    public static final int INITIAL_RETRY_DELAY_MILLIS = 1000;
+    public static final int DELIVERY_LIMIT = 10;
+
+    // Listener container defaults
+    private static final int LISTENER_PREFETCH = 250;
+    private static final int LISTENER_BATCH_SIZE = 50;
+    private static final long LISTENER_RECEIVE_TIMEOUT_MILLIS = 100;
+
+    private static final List<String> QUEUES =
+            List.of(USER_ORDER_CONFIRMATION_QUEUE, PAYMENT_FAILED_QUEUE, SELLER_STOCK_CHECK_QUEUE);
+
     @Bean
     public Queue orderConfirmationQueue() {
-        return QueueBuilder.nonDurable(USER_ORDER_CONFIRMATION_QUEUE).build();
+        return workQueue(USER_ORDER_CONFIRMATION_QUEUE);
     }
     
     @Bean
     public Queue paymentFailedQueue() {
-        return QueueBuilder.nonDurable(PAYMENT_FAILED_QUEUE).build();
+        return workQueue(PAYMENT_FAILED_QUEUE);
     }
 
     @Bean
     public Queue sellerStockCheckQueue() {
-        return QueueBuilder.nonDurable(SELLER_STOCK_CHECK_QUEUE).build();
+        return workQueue(SELLER_STOCK_CHECK_QUEUE);
+    }
+
+    // Durable quorum queue whose rejected or repeatedly redelivered messages go to its parking lot
+    private static Queue workQueue(String name) {
+        return QueueBuilder.durable(name)
+                .quorum()
+                .deadLetterExchange(DEAD_LETTER_EXCHANGE)
+                .deadLetterRoutingKey(name)
+                .deliveryLimit(DELIVERY_LIMIT)
+                .build();
     }
     
     @Bean
@@ -43,6 +78,87 @@ public class RabbitMQConfig {
                 .durable(true)
                 .build();
     }
+
+    @Bean
+    public DirectExchange deadLetterExchange() {
+        return ExchangeBuilder.directExchange(DEAD_LETTER_EXCHANGE)
+                .durable(true)
+                .build();
+    }
+
+    @Bean
+    public DirectExchange retryExchange() {
+        return ExchangeBuilder.directExchange(RETRY_EXCHANGE)
+                .durable(true)
+                .build();
+    }
+
+    /**
+     * Parking lot and delay queues of every queue consumed here. A message waits in the delay
+     * queue of its attempt for 1s, 2s, 4s, ... and is then dead-lettered back to its queue.
+     */
+    @Bean
+    public Declarables retryTopology() {
+        List<Declarable> declarables = new ArrayList<>();
+        for (String queue : QUEUES) {
+            Queue parkingLot = QueueBuilder.durable(parkingLot(queue)).build();
+            declarables.add(parkingLot);
+            declarables.add(BindingBuilder.bind(parkingLot).to(deadLetterExchange()).with(queue));
+
+            for (int attempt = 1; attempt <= RETRY_ATTEMPTS; attempt++) {
+                Queue delay = QueueBuilder.durable(retryQueue(queue, attempt))
+                        .ttl(INITIAL_RETRY_DELAY_MILLIS << (attempt - 1))
+                        .deadLetterExchange("")
+                        .deadLetterRoutingKey(queue)
+                        .build();
+                declarables.add(delay);
+                declarables.add(BindingBuilder.bind(delay).to(retryExchange()).with(delay.getName()));
+            }
+        }
+        return new Declarables(declarables);
+    }
+
+    public static String retryQueue(String queue, int attempt) {
+        return queue + ".retry." + attempt;
+    }
+
+    public static String parkingLot(String queue) {
+        return queue + ".parking-lot";
+    }
+
+    @Bean
+    public DelayedRetryRecoverer delayedRetryRecoverer(RabbitTemplate rabbitTemplate) {
+        return new DelayedRetryRecoverer(rabbitTemplate);
+    }
+
+    /**
+     * Batch listener containers: each consumer takes up to LISTENER_BATCH_SIZE messages at a
+     * time, and the consumers scale between half the cores and all of them. The defaults
+     * below give way to spring.rabbitmq.listener.simple.concurrency, .max-concurrency,
+     * .prefetch and .batch-size when those are set. A message whose listener fails is handed
+     * to the delay queues instead of being requeued.
+     */
+    @Bean
+    public SimpleRabbitListenerContainerFactory rabbitListenerContainerFactory(
+            SimpleRabbitListenerContainerFactoryConfigurer configurer, ConnectionFactory connectionFactory,
+            DelayedRetryRecoverer delayedRetryRecoverer) {
+        int cores = Runtime.getRuntime().availableProcessors();
+        SimpleRabbitListenerContainerFactory factory = new SimpleRabbitListenerContainerFactory();
+        factory.setConcurrentConsumers(Math.max(1, cores / 2));
+        factory.setMaxConcurrentConsumers(cores);
+        factory.setPrefetchCount(LISTENER_PREFETCH);
+        factory.setBatchSize(LISTENER_BATCH_SIZE);
+        configurer.configure(factory, connectionFactory);
+        // Set after configure(), which always applies consumer-batch-enabled
+        factory.setConsumerBatchEnabled(true);
+        // A partial batch is delivered once no message arrived for this long
+        factory.setReceiveTimeout(LISTENER_RECEIVE_TIMEOUT_MILLIS);
+        factory.setAdviceChain(RetryInterceptorBuilder.stateless()
+                .maxAttempts(1)
+                .recoverer(delayedRetryRecoverer)
+                .build());
+        return factory;
+    }
     
     @Bean
     public Binding paymentFailedBinding() {
@@ -65,4 +181,4 @@ public class RabbitMQConfig {
                 .with("Stock_*");
     }
 
-}
\ No newline at end of file
+}
@@ -1,20 +1,147 @@
 package com.example.notificationservice.config;
 
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Lazy;
+import org.springframework.messaging.simp.config.ChannelRegistration;
 import org.springframework.messaging.simp.config.MessageBrokerRegistry;
+import org.springframework.scheduling.TaskScheduler;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
 import org.springframework.web.socket.config.annotation.EnableWebSocketMessageBroker;
 import org.springframework.web.socket.config.annotation.StompEndpointRegistry;
 import org.springframework.web.socket.config.annotation.WebSocketMessageBrokerConfigurer;
+import org.springframework.web.socket.config.annotation.WebSocketTransportRegistration;
 
+/**
+ * STOMP over WebSocket, sized for many concurrent sessions.
+ *
+ * The inbound and outbound channels get pools scaled to the core count instead of the
+ * defaults, and a session whose client does not keep up, i.e. has more than
+ * SEND_BUFFER_LIMIT_BYTES waiting or one send blocked for SEND_TIME_LIMIT_MILLIS, is closed
+ * rather than allowed to hold an outbound thread. Its notifications stay stored and can be
+ * reloaded from the REST API after reconnecting. Heartbeats let both sides notice dead
+ * connections.
+ *
+ * By default the in-memory simple broker is used, which only reaches sessions connected to
+ * this instance. With notification.broker.relay.enabled=true, broker destinations are
+ * relayed to RabbitMQ's STOMP plugin instead, and the instances share their user sessions
+ * through it: each one broadcasts its sessions on USER_REGISTRY_BROADCAST, and a message
+ * for a user with no session here goes out on UNRESOLVED_USER_BROADCAST for the instance
+ * that has one. Any number of instances can then run behind a load balancer. RabbitMQ only
+ * takes /topic, /queue, /exchange and /amq/queue destinations, so in that mode users get
+ * their notifications on /user/topic/notifications instead of /user/notifications.
+ */
 @Configuration
 @EnableWebSocketMessageBroker
 public class WebSocketConfig implements WebSocketMessageBrokerConfigurer {
 
+    private static final int CORES = Runtime.getRuntime().availableProcessors();
+
+    private static final int SEND_TIME_LIMIT_MILLIS = 10_000;
+    private static final int SEND_BUFFER_LIMIT_BYTES = 512 * 1024;
+    private static final int MESSAGE_SIZE_LIMIT_BYTES = 64 * 1024;
+    private static final long HEARTBEAT_MILLIS = 10_000;
+
+    // Destinations notifications are pushed to, below the user prefix
+    public static final String USER_DESTINATION = "/notifications";
+    public static final String RELAY_USER_DESTINATION = "/topic/notifications";
+
+    static final String USER_REGISTRY_BROADCAST = "/topic/simp-user-registry";
+    static final String UNRESOLVED_USER_BROADCAST = "/topic/unresolved-user-destination";
+
+    @Value("${notification.broker.relay.enabled:false}")
+    private boolean relayEnabled;
+    @Value("${notification.broker.relay.host:localhost}")
+    private String relayHost;
+    @Value("${notification.broker.relay.port:61613}")
+    private int relayPort;
+    @Value("${notification.broker.relay.virtual-host:/}")
+    private String relayVirtualHost;
+    @Value("${notification.broker.relay.login:guest}")
+    private String relayLogin;
+    @Value("${notification.broker.relay.passcode:guest}")
+    private String relayPasscode;
+
+    private TaskScheduler messageBrokerTaskScheduler;
+
+    @Autowired
+    public void setMessageBrokerTaskScheduler(@Lazy TaskScheduler messageBrokerTaskScheduler) {
+        this.messageBrokerTaskScheduler = messageBrokerTaskScheduler;
+    }
+
+    public static String userDestination(boolean relayEnabled) {
+        return relayEnabled ? RELAY_USER_DESTINATION : USER_DESTINATION;
+    }
+
     @Override
     public void configureMessageBroker(MessageBrokerRegistry config) {
-        config.enableSimpleBroker("/topic", "/user", "/logs"); // Add "/logs" for log notifications
+        if (relayEnabled) {
+            config.enableStompBrokerRelay("/topic", "/queue", "/exchange", "/amq/queue")
+                    .setRelayHost(relayHost)
+                    .setRelayPort(relayPort)
+                    // Without it the host name is sent as the virtual host, which RabbitMQ rejects
+                    .setVirtualHost(relayVirtualHost)
+                    .setClientLogin(relayLogin)
+                    .setClientPasscode(relayPasscode)
+                    .setSystemLogin(relayLogin)
+                    .setSystemPasscode(relayPasscode)
+                    .setSystemHeartbeatSendInterval(HEARTBEAT_MILLIS)
+                    .setSystemHeartbeatReceiveInterval(HEARTBEAT_MILLIS)
+                    .setUserRegistryBroadcast(USER_REGISTRY_BROADCAST)
+                    .setUserDestinationBroadcast(UNRESOLVED_USER_BROADCAST)
+                    .setTaskScheduler(messageBrokerTaskScheduler);
+            System.out.println("Relaying STOMP destinations to " + relayHost + ":" + relayPort);
+        } else {
+            config.enableSimpleBroker("/topic", "/user", "/logs") // Add "/logs" for log notifications
+                    .setHeartbeatValue(new long[] {HEARTBEAT_MILLIS, HEARTBEAT_MILLIS})
+                    .setTaskScheduler(messageBrokerTaskScheduler);
+        }
         config.setApplicationDestinationPrefixes("/app");
         config.setUserDestinationPrefix("/user");
+        // The outbound pool is shared by all sessions; keep each session's frames in order
+        config.setPreservePublishOrder(true);
+    }
+
+    @Override
+    public void configureClientInboundChannel(ChannelRegistration registration) {
+        registration.taskExecutor()
+                .corePoolSize(CORES * 2)
+                .maxPoolSize(CORES * 4)
+                .queueCapacity(10_000)
+                .keepAliveSeconds(60);
+    }
+
+    @Override
+    public void configureClientOutboundChannel(ChannelRegistration registration) {
+        registration.taskExecutor()
+                .corePoolSize(CORES * 2)
+                .maxPoolSize(CORES * 4)
+                .queueCapacity(10_000)
+                .keepAliveSeconds(60);
+    }
+
+    @Override
+    public void configureWebSocketTransport(WebSocketTransportRegistration registration) {
+        registration.setSendTimeLimit(SEND_TIME_LIMIT_MILLIS)
+                .setSendBufferSizeLimit(SEND_BUFFER_LIMIT_BYTES)
+                .setMessageSizeLimit(MESSAGE_SIZE_LIMIT_BYTES);
+    }
+
+    /**
+     * Runs NotificationPusher's per-user drain tasks. Its queue holds at most one task per
+     * user with notifications waiting, so it is left unbounded.
+     */
+    @Bean
+    public ThreadPoolTaskExecutor notificationPushExecutor() {
+        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        executor.setCorePoolSize(CORES);
+        executor.setMaxPoolSize(CORES);
+        executor.setThreadNamePrefix("notification-push-");
+        executor.setWaitForTasksToCompleteOnShutdown(true);
+        executor.setAwaitTerminationSeconds(5);
+        return executor;
     }
 
     @Override
@@ -0,0 +1,59 @@
+package com.example.notificationservice.listener;
+
+import com.example.notificationservice.model.Notification;
+import com.example.notificationservice.service.NotificationService;
+import org.springframework.amqp.core.Message;
+import org.springframework.amqp.rabbit.retry.MessageRecoverer;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Turns a batch of messages into notifications and delivers them with one database write.
+ * A message that cannot be turned into notifications goes to the recoverer on its own, so
+ * it neither holds back the rest of the batch nor gets them delivered twice.
+ */
+@Component
+public class NotificationBatchProcessor {
+
+    @FunctionalInterface
+    public interface Collector {
+        void collect(Message message, List<Notification> notifications) throws Exception;
+    }
+
+    private final NotificationService notificationService;
+    private final MessageRecoverer recoverer;
+
+    public NotificationBatchProcessor(NotificationService notificationService, MessageRecoverer recoverer) {
+        this.notificationService = notificationService;
+        this.recoverer = recoverer;
+    }
+
+    public void process(List<Message> messages, Collector collector) {
+        List<Notification> notifications = new ArrayList<>();
+        List<Message> collected = new ArrayList<>(messages.size());
+        for (Message message : messages) {
+            int before = notifications.size();
+            try {
+                collector.collect(message, notifications);
+                collected.add(message);
+            } catch (Exception e) {
+                notifications.subList(before, notifications.size()).clear();
+                recoverer.recover(message, e);
+            }
+        }
+        if (notifications.isEmpty()) {
+            return;
+        }
+
+        try {
+            notificationService.sendToUsers(notifications);
+        } catch (Exception e) {
+            System.err.println("Failed to deliver " + notifications.size() + " notification(s): " + e.getMessage());
+            for (Message message : collected) {
+                recoverer.recover(message, e);
+            }
+        }
+    }
+}
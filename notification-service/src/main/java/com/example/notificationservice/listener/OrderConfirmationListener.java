@@ -1,57 +1,81 @@
 package com.example.notificationservice.listener;
 
+import com.example.notificationservice.codec.NotificationEvent;
+import com.example.notificationservice.codec.NotificationEvents;
 import com.example.notificationservice.model.Notification;
 import com.example.notificationservice.service.NotificationService;
+import org.springframework.amqp.AmqpRejectAndDontRequeueException;
+import org.springframework.amqp.core.Message;
 import org.springframework.amqp.rabbit.annotation.RabbitListener;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 
+import java.io.IOException;
+import java.util.List;
+
 @Service
 public class OrderConfirmationListener {
     
     private final NotificationService notificationService;
+    private final NotificationBatchProcessor batchProcessor;
     
     @Autowired
-    public OrderConfirmationListener(NotificationService notificationService) {
+    public OrderConfirmationListener(NotificationService notificationService, NotificationBatchProcessor batchProcessor) {
         this.notificationService = notificationService;
+        this.batchProcessor = batchProcessor;
     }
     
     @RabbitListener(queues = "user-order-confirmation")
-    public void handleOrderConfirmation(String message) {
-        System.out.println("Order Confirmation: " + message);
-        
-        // Parse the message - expecting format: "orderId:status:userId" from NotificationSender.sendOrderConfirmation
-        String[] parts = message.split(":");
-        if (parts.length >= 3) {
-            try {
-                Long orderId = Long.parseLong(parts[0]);
-                String status = parts[1];
-                Long userId = Long.parseLong(parts[2]);
-                
-                // Send notification to customer
-                Notification customerNotification = notificationService.createOrderStatusNotification(
-                    orderId.toString(), status, userId);
-                notificationService.sendToUser(customerNotification, userId);
-
-                // If order status is "Failed", send a log message to admin
-                if ("Failed".equalsIgnoreCase(status)) {
-                    notificationService.sendLogMessage(
-                        "Order",
-                        "Error",
-                        String.format("Order %s has failed for user %d", orderId, userId),
-                        1L
-                    );
-                }
-
-                Notification AdminNotification = notificationService.createOrderStatusNotification(
-                    orderId.toString(), status, 1L); // Assuming 1L is the admin user ID
-                notificationService.sendToUser(AdminNotification, 1L);
-                
-            } catch (NumberFormatException e) {
-                System.err.println("Error parsing order confirmation message: " + e.getMessage());
-            }
-        } else {
-            System.err.println("Invalid order confirmation message format: " + message);
+    public void handleOrderConfirmations(List<Message> messages) {
+        batchProcessor.process(messages, this::collect);
+    }
+
+    private void collect(Message message, List<Notification> notifications) {
+        NotificationEvent event;
+        try {
+            event = NotificationEvents.read(message, NotificationEvent.Type.ORDER_STATUS);
+        } catch (IOException e) {
+            // Parked rather than retried, reading it again will not help
+            throw new AmqpRejectAndDontRequeueException("Error parsing order confirmation message: " + e.getMessage(), e);
+        }
+        System.out.println("Order Confirmation: " + event);
+
+        // Order service logs are routed to this queue as well
+        if (event.getType() == NotificationEvent.Type.LOG) {
+            addIfPresent(notifications,
+                    notificationService.createLogNotification(event.getService(), event.getSeverity(), event.getText(), 1L));
+            return;
+        }
+        if (event.getType() != NotificationEvent.Type.ORDER_STATUS || event.getOrderId() == null || event.getUserId() == null) {
+            System.err.println("Invalid order confirmation message format: " + event);
+            return;
+        }
+
+        Long orderId = event.getOrderId();
+        String status = event.getText();
+        Long userId = event.getUserId();
+
+        // Send notification to customer
+        notifications.add(notificationService.createOrderStatusNotification(
+            orderId.toString(), status, userId));
+
+        // If order status is "Failed", send a log message to admin
+        if ("Failed".equalsIgnoreCase(status)) {
+            addIfPresent(notifications, notificationService.createLogNotification(
+                "Order",
+                "Error",
+                String.format("Order %s has failed for user %d", orderId, userId),
+                1L
+            ));
+        }
+
+        notifications.add(notificationService.createOrderStatusNotification(
+            orderId.toString(), status, 1L)); // Assuming 1L is the admin user ID
+    }
+
+    private static void addIfPresent(List<Notification> notifications, Notification notification) {
+        if (notification != null) {
+            notifications.add(notification);
         }
     }
-}
\ No newline at end of file
+}
@@ -1,73 +1,61 @@
 package com.example.notificationservice.listener;
 
+import com.example.notificationservice.codec.NotificationEvent;
+import com.example.notificationservice.codec.NotificationEvents;
 import com.example.notificationservice.model.Notification;
 import com.example.notificationservice.service.NotificationService;
+import org.springframework.amqp.AmqpRejectAndDontRequeueException;
+import org.springframework.amqp.core.Message;
 import org.springframework.amqp.rabbit.annotation.RabbitListener;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 
+import java.io.IOException;
+import java.util.List;
+
 @Service
 public class PaymentFailureListener {
     
     private final NotificationService notificationService;
+    private final NotificationBatchProcessor batchProcessor;
     private static final Long ADMIN_USER_ID = 1L; // Default admin user ID
     
     @Autowired
-    public PaymentFailureListener(NotificationService notificationService) {
+    public PaymentFailureListener(NotificationService notificationService, NotificationBatchProcessor batchProcessor) {
         this.notificationService = notificationService;
+        this.batchProcessor = batchProcessor;
     }    
     
     @RabbitListener(queues = "#{paymentFailedQueue.name}")
-    public void handlePaymentFailure(String message) {
-        System.out.println("Payment Failure Notification: " + message);
-        
+    public void handlePaymentFailures(List<Message> messages) {
+        batchProcessor.process(messages, this::collect);
+    }
+
+    private void collect(Message message, List<Notification> notifications) {
+        NotificationEvent event;
         try {
-            String orderId;
-            String reason;
-            // parse expected format: "orderId:reason" or "orderId"
-            // Check if the message contains a colon (for any format)
-            if (message.contains(":")) {
-                // Split the message
-                String[] parts = message.split(":", 2);
+            event = NotificationEvents.read(message, NotificationEvent.Type.PAYMENT_FAILED);
+        } catch (IOException e) {
+            // Parked rather than retried, reading it again will not help
+            throw new AmqpRejectAndDontRequeueException("Error parsing payment failure message: " + e.getMessage(), e);
+        }
 
-                // Format: "orderId:reason"
-                if (parts.length == 2) {
-                    orderId = parts[0];
-                    reason = parts[1];
-                    System.out.println("Using format 'orderId:reason'");
-                
+        try {
+            System.out.println("Payment Failure Notification: " + event);
 
-            
-                    // Always send notification to admin
-                    Notification adminNotification = notificationService.createPaymentFailedNotification(
-                        orderId, reason, ADMIN_USER_ID);
-                    notificationService.sendToUser(adminNotification, ADMIN_USER_ID);
-                }
-            } else {
-                // Fallback to default format: "orderId"
-                orderId = message;
-                reason = "Payment failed for order ID: " + orderId;
-                System.out.println("Using default format 'orderId'");
-                
-                // Create and send notification to admin
-                Notification adminNotification = notificationService.createPaymentFailedNotification(
-                    orderId, reason, ADMIN_USER_ID);
-                notificationService.sendToUser(adminNotification, ADMIN_USER_ID);
-            }
+            String orderId = String.valueOf(event.getOrderId());
+            String reason = event.getText() != null ? event.getText() : "Payment failed for order ID: " + orderId;
 
+            // Always send notification to admin
+            notifications.add(notificationService.createPaymentFailedNotification(
+                orderId, reason, ADMIN_USER_ID));
         } catch (Exception e) {
             System.err.println("Error processing payment failure notification: " + e.getMessage());
             e.printStackTrace();
-            
+
             // Try to send at least a basic admin notification about the error
-            try {
-                Notification errorNotification = notificationService.createPaymentFailedNotification(
-                    "unknown", "Error processing payment failure: " + e.getMessage(), ADMIN_USER_ID);
-                notificationService.sendToUser(errorNotification, ADMIN_USER_ID);
-            } catch (Exception ignored) {
-                // Last resort logging
-                System.err.println("Failed to send error notification: " + ignored.getMessage());
-            }
+            notifications.add(notificationService.createPaymentFailedNotification(
+                "unknown", "Error processing payment failure: " + e.getMessage(), ADMIN_USER_ID));
         }
     }
-}
\ No newline at end of file
+}
@@ -1,71 +1,90 @@
 package com.example.notificationservice.listener;
 
+import com.example.notificationservice.codec.NotificationEvent;
+import com.example.notificationservice.codec.NotificationEvents;
 import com.example.notificationservice.model.Notification;
 import com.example.notificationservice.service.NotificationService;
+import org.springframework.amqp.AmqpRejectAndDontRequeueException;
+import org.springframework.amqp.core.Message;
 import org.springframework.amqp.rabbit.annotation.RabbitListener;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 
+import java.io.IOException;
+import java.util.List;
+
 @Service
 public class StockCheckListener {
     
     private final NotificationService notificationService;
+    private final NotificationBatchProcessor batchProcessor;
     
 
     
     @Autowired
-    public StockCheckListener(NotificationService notificationService) {
+    public StockCheckListener(NotificationService notificationService, NotificationBatchProcessor batchProcessor) {
         this.notificationService = notificationService;
+        this.batchProcessor = batchProcessor;
     }
     
     @RabbitListener(queues = "seller-stock-check")
-    public void handleStockCheck(String message) {
-        System.out.println("Stock check notification: " + message);
+    public void handleStockChecks(List<Message> messages) {
+        batchProcessor.process(messages, this::collect);
+    }
 
-        // Parse the message - expecting format: "productName:quantity:sellerCompanyName[:sellerId]"
-        String[] parts = message.split(":");
-        if (parts.length >= 3) {
-            try {                
-                String productName = parts[0];
-                int quantity = Integer.parseInt(parts[1]);
-                String sellerCompanyName = parts[2];
-                Long sellerId = Long.parseLong(parts[3]);
+    private void collect(Message message, List<Notification> notifications) {
+        NotificationEvent event;
+        try {
+            event = NotificationEvents.read(message, NotificationEvent.Type.STOCK_ALERT);
+        } catch (IOException e) {
+            // Parked rather than retried, reading it again will not help
+            throw new AmqpRejectAndDontRequeueException("Error parsing stock check message: " + e.getMessage(), e);
+        }
+        System.out.println("Stock check notification: " + event);
 
-                // Create stock alert notification
-                Notification notification = notificationService.createStockAlertNotification(
-                    productName, 
-                    quantity,
-                    sellerId
-                );
-                
-                // Send directly to the seller
-                notificationService.sendToUser(notification, sellerId);
+        // Stock_* logs from the admin log exchange arrive here too
+        if (event.getType() == NotificationEvent.Type.LOG) {
+            Notification log = notificationService.createLogNotification(
+                event.getService(), event.getSeverity(), event.getText(), 1L);
+            if (log != null) {
+                notifications.add(log);
+            }
+            return;
+        }
+        if (event.getType() != NotificationEvent.Type.STOCK_ALERT || event.getUserId() == null) {
+            System.err.println("Invalid stock check message format: " + event);
+            return;
+        }
 
-                // If stock is critically low (less than 5), send to admin
-                if (quantity < 5) {
-                    // Log system message for admin
-                    notificationService.sendLogMessage(
-                        "Stock",
-                        "Error",
-                        String.format("CRITICAL: Product '%s' from %s has very low stock: %d units remaining", 
-                            productName, sellerCompanyName, quantity),
-                        1L
-                    );
+        String productName = event.getProductName();
+        int quantity = event.getQuantity();
+        String sellerCompanyName = event.getCompanyName();
+        Long sellerId = event.getUserId();
 
-                    // Create admin notification
-                    Notification adminNotification = notificationService.createStockAlertNotification(
-                        productName,
-                        quantity,
-                        1L // Assuming 1L is the admin user ID
-                    );
-                    notificationService.sendToUser(adminNotification, 1L);
-                }
-                
-            } catch (NumberFormatException e) {
-                System.err.println("Error parsing stock check message: " + e.getMessage());
-            }
-        } else {
-            System.err.println("Invalid stock check message format: " + message);
+        // Create stock alert notification, sent directly to the seller
+        notifications.add(notificationService.createStockAlertNotification(
+            productName, 
+            quantity,
+            sellerId
+        ));
+
+        // If stock is critically low (less than 5), send to admin
+        if (quantity < 5) {
+            // Log system message for admin
+            notifications.add(notificationService.createLogNotification(
+                "Stock",
+                "Error",
+                String.format("CRITICAL: Product '%s' from %s has very low stock: %d units remaining", 
+                    productName, sellerCompanyName, quantity),
+                1L
+            ));
+
+            // Create admin notification
+            notifications.add(notificationService.createStockAlertNotification(
+                productName,
+                quantity,
+                1L // Assuming 1L is the admin user ID
+            ));
         }
     }
 }
@@ -4,13 +4,18 @@ import jakarta.persistence.Entity;
 import jakarta.persistence.Id;
 import jakarta.persistence.Table;
 import jakarta.persistence.Column;
+import jakarta.persistence.PostLoad;
+import jakarta.persistence.PostPersist;
 import jakarta.persistence.PrePersist;
+import jakarta.persistence.Transient;
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import org.springframework.data.domain.Persistable;
 import java.time.LocalDateTime;
 import java.util.UUID;
 
 @Entity
 @Table(name = "notifications")
-public class Notification {
+public class Notification implements Persistable<String> {
     @Id
     private String id;
     
@@ -30,6 +35,10 @@ public class Notification {
     
     @Column(nullable = false)
     private boolean read;
+
+    // The id is assigned up front, so without this every save would look the row up before inserting it
+    @Transient
+    private boolean isNew = true;
     
     public Notification() {
         this.id = UUID.randomUUID().toString();
@@ -97,6 +106,18 @@ public class Notification {
         this.userId = userId;
     }
 
+    @Override
+    @JsonIgnore
+    public boolean isNew() {
+        return isNew;
+    }
+
+    @PostLoad
+    @PostPersist
+    void markNotNew() {
+        this.isNew = false;
+    }
+
     public boolean isRead() {
         return read;
     }
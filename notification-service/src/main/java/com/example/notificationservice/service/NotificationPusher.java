@@ -0,0 +1,193 @@
+package com.example.notificationservice.service;
+
+import com.example.notificationservice.config.WebSocketConfig;
+import com.example.notificationservice.model.Notification;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.messaging.simp.SimpMessagingTemplate;
+import org.springframework.stereotype.Component;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+
+/**
+ * Pushes stored notifications to their users' WebSocket sessions on the push executor,
+ * so a slow client never holds up the RabbitMQ listener that produced its notifications.
+ *
+ * Each user with undelivered notifications has a ring buffer of
+ * notification.push.queue-capacity (default 64) entries, drained in order by one task at a
+ * time. A status update for an order that is still waiting in the buffer replaces the
+ * waiting one, so a burst of updates reaches the client as a single frame. A user whose
+ * buffer overflows loses what was buffered and gets a "resync" notification instead,
+ * telling the client to reload its unread notifications from the REST API; nothing is
+ * lost, since every notification is stored before it is pushed.
+ */
+@Component
+public class NotificationPusher {
+
+    static final String RESYNC_TYPE = "resync";
+
+    // Frames sent for one user before the task yields to other users
+    private static final int DRAIN_BATCH = 32;
+
+    private final SimpMessagingTemplate messagingTemplate;
+    private final Executor executor;
+    private final int capacity;
+    private final String destination;
+
+    private final Map<Long, Outbox> outboxes = new ConcurrentHashMap<>();
+
+    // Guarded by its own monitor
+    private static class Outbox {
+        final Long userId;
+        final Notification[] ring;
+        int head;
+        int size;
+        // Notifications were dropped since the last frame, the client has to resync
+        boolean overflowed;
+        boolean draining;
+        boolean retired;
+
+        Outbox(Long userId, int capacity) {
+            this.userId = userId;
+            this.ring = new Notification[capacity];
+        }
+
+        void offer(Notification notification) {
+            String key = coalescingKey(notification);
+            if (key != null) {
+                for (int i = 0; i < size; i++) {
+                    int index = (head + i) % ring.length;
+                    if (key.equals(coalescingKey(ring[index]))) {
+                        ring[index] = notification;
+                        return;
+                    }
+                }
+            }
+            if (size == ring.length) {
+                System.err.println("Push queue of user " + userId + " overflowed, dropping " + size +
+                        " notification(s) and asking the client to resync");
+                Arrays.fill(ring, null);
+                head = 0;
+                size = 0;
+                overflowed = true;
+            }
+            ring[(head + size) % ring.length] = notification;
+            size++;
+        }
+
+        Notification poll() {
+            if (size == 0) {
+                return null;
+            }
+            Notification notification = ring[head];
+            ring[head] = null;
+            head = (head + 1) % ring.length;
+            size--;
+            return notification;
+        }
+    }
+
+    public NotificationPusher(SimpMessagingTemplate messagingTemplate,
+                              @Qualifier("notificationPushExecutor") Executor executor,
+                              @Value("${notification.push.queue-capacity:64}") int capacity,
+                              @Value("${notification.broker.relay.enabled:false}") boolean relayEnabled) {
+        this.messagingTemplate = messagingTemplate;
+        this.executor = executor;
+        this.capacity = capacity;
+        this.destination = WebSocketConfig.userDestination(relayEnabled);
+    }
+
+    public void push(List<Notification> notifications) {
+        for (Notification notification : notifications) {
+            push(notification);
+        }
+    }
+
+    public void push(Notification notification) {
+        while (true) {
+            Outbox outbox = outboxes.computeIfAbsent(notification.getUserId(), id -> new Outbox(id, capacity));
+            boolean start;
+            synchronized (outbox) {
+                if (outbox.retired) {
+                    continue;
+                }
+                outbox.offer(notification);
+                start = !outbox.draining;
+                outbox.draining = true;
+            }
+            if (start) {
+                schedule(outbox);
+            }
+            return;
+        }
+    }
+
+    private void schedule(Outbox outbox) {
+        try {
+            executor.execute(() -> drain(outbox));
+        } catch (RejectedExecutionException e) {
+            // Shutting down; the notifications are stored and the client loads them on reconnect
+            System.err.println("Push executor rejected notifications of user " + outbox.userId + ": " + e.getMessage());
+            synchronized (outbox) {
+                outbox.draining = false;
+                retire(outbox);
+            }
+        }
+    }
+
+    private void drain(Outbox outbox) {
+        for (int sent = 0; sent < DRAIN_BATCH; sent++) {
+            Notification next;
+            synchronized (outbox) {
+                if (outbox.overflowed) {
+                    outbox.overflowed = false;
+                    next = resyncNotice(outbox.userId);
+                } else {
+                    next = outbox.poll();
+                }
+                if (next == null) {
+                    outbox.draining = false;
+                    retire(outbox);
+                    return;
+                }
+            }
+            send(outbox.userId, next);
+        }
+        // Let other users' frames in before sending more of this one's
+        schedule(outbox);
+    }
+
+    // Caller holds the outbox monitor
+    private void retire(Outbox outbox) {
+        if (outbox.size == 0 && !outbox.overflowed) {
+            outbox.retired = true;
+            outboxes.remove(outbox.userId, outbox);
+        }
+    }
+
+    private void send(Long userId, Notification notification) {
+        try {
+            messagingTemplate.convertAndSendToUser(userId.toString(), destination, notification);
+        } catch (Exception e) {
+            System.err.println("Failed to push notification to user " + userId + ": " + e.getMessage());
+        }
+    }
+
+    private static Notification resyncNotice(Long userId) {
+        return new Notification(RESYNC_TYPE, "Notifications missed",
+                "Some notifications could not be delivered in time, reload them", userId);
+    }
+
+    /**
+     * Notifications with the same key replace each other while they wait; only order status
+     * updates have one, and their title names the order.
+     */
+    static String coalescingKey(Notification notification) {
+        return "order".equals(notification.getType()) ? notification.getTitle() : null;
+    }
+}
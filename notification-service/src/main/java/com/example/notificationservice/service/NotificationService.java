@@ -8,6 +8,8 @@ import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.messaging.simp.SimpMessagingTemplate;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
 
 import java.util.List;
 
@@ -17,22 +19,42 @@ public class NotificationService {
 
     private final SimpMessagingTemplate messagingTemplate;
     private final NotificationRepository notificationRepository;
+    private final NotificationPusher notificationPusher;
     
     @Autowired
     public NotificationService(SimpMessagingTemplate messagingTemplate, 
-                             NotificationRepository notificationRepository) {
+                             NotificationRepository notificationRepository,
+                             NotificationPusher notificationPusher) {
         this.messagingTemplate = messagingTemplate;
         this.notificationRepository = notificationRepository;
+        this.notificationPusher = notificationPusher;
     }
 
     public void sendToUser(Notification notification, Long userId) {
         notification.setUserId(userId);
-        notificationRepository.save(notification);
-        messagingTemplate.convertAndSendToUser(
-            userId.toString(),
-            "/notifications",
-            notification
-        );
+        sendToUsers(List.of(notification));
+    }
+
+    /**
+     * Stores the notifications with one batched insert and, once that commits, queues each
+     * for the push to its user.
+     */
+    public void sendToUsers(List<Notification> notifications) {
+        notificationRepository.saveAll(notifications);
+        afterCommit(() -> notificationPusher.push(notifications));
+    }
+
+    private static void afterCommit(Runnable action) {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            action.run();
+            return;
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                action.run();
+            }
+        });
     }
 
     public List<Notification> getNotificationsByUserId(Long userId) {
@@ -68,17 +90,24 @@ public class NotificationService {
     
 
     public void sendLogMessage(String service, String severity, String message, Long userId) {
-        if (severity.equals("Error")) {
-            Notification notification = new Notification(
-                "error",
-                service + " Error",
-                message,
-                userId
-            );
+        Notification notification = createLogNotification(service, severity, message, userId);
+        if (notification != null) {
             sendToUser(notification, userId);
         }
+    }
+
+    public Notification createLogNotification(String service, String severity, String message, Long userId) {
         // Only Error severity notifications are sent to users
         // Other severities are just logged in the system
+        if (!"Error".equals(severity)) {
+            return null;
+        }
+        return new Notification(
+            "error",
+            service + " Error",
+            message,
+            userId
+        );
     }
 
     public Notification createStockAlertNotification(String productName, int quantity, Long userId) {
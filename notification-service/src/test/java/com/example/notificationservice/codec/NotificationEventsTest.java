@@ -0,0 +1,88 @@
+package com.example.notificationservice.codec;
+
+import com.example.notificationservice.config.RabbitMQConfig;
+import org.junit.jupiter.api.Test;
+import org.springframework.amqp.core.Message;
+import org.springframework.amqp.core.MessageProperties;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class NotificationEventsTest {
+
+    @Test
+    void readsBinaryEnvelope() throws IOException {
+        NotificationEvent sent = NotificationEvent.orderStatus(42L, "canceled: minimum charge not met", 7L);
+        MessageProperties properties = new MessageProperties();
+        properties.setContentType(NotificationEvent.CONTENT_TYPE);
+
+        NotificationEvent event = NotificationEvents.read(new Message(sent.encode(), properties),
+                NotificationEvent.Type.ORDER_STATUS);
+
+        assertEquals(NotificationEvent.Type.ORDER_STATUS, event.getType());
+        assertEquals(42L, event.getOrderId());
+        assertEquals("canceled: minimum charge not met", event.getText());
+        assertEquals(7L, event.getUserId());
+    }
+
+    @Test
+    void stockAlertRoundTrips() throws IOException {
+        NotificationEvent event = NotificationEvent.decode(
+                NotificationEvent.stockAlert(5L, "Pasta: large", 3, "Acme", 9L).encode());
+
+        assertEquals("Pasta: large", event.getProductName());
+        assertEquals(3, event.getQuantity());
+        assertEquals("Acme", event.getCompanyName());
+        assertEquals(9L, event.getUserId());
+    }
+
+    @Test
+    void legacyStatusMayContainColons() throws IOException {
+        NotificationEvent event = NotificationEvents.read(legacy("12:canceled: out of stock:3", null),
+                NotificationEvent.Type.ORDER_STATUS);
+
+        assertEquals(12L, event.getOrderId());
+        assertEquals("canceled: out of stock", event.getText());
+        assertEquals(3L, event.getUserId());
+    }
+
+    @Test
+    void legacyPaymentFailureWithoutReason() throws IOException {
+        NotificationEvent event = NotificationEvents.read(legacy("12", null), NotificationEvent.Type.PAYMENT_FAILED);
+
+        assertEquals(12L, event.getOrderId());
+        assertNull(event.getText());
+    }
+
+    @Test
+    void legacyLogIsRecognisedByExchange() throws IOException {
+        NotificationEvent event = NotificationEvents.read(legacy("Order_Warning:Order 5 canceled", "Order_Warning"),
+                NotificationEvent.Type.ORDER_STATUS);
+
+        assertEquals(NotificationEvent.Type.LOG, event.getType());
+        assertEquals("Order", event.getService());
+        assertEquals("Warning", event.getSeverity());
+        assertEquals("Order 5 canceled", event.getText());
+    }
+
+    @Test
+    void rejectsUnknownVersion() {
+        byte[] body = NotificationEvent.paymentFailed(1L, "x").encode();
+        body[0] = 2;
+
+        assertThrows(IOException.class, () -> NotificationEvent.decode(body));
+    }
+
+    private static Message legacy(String text, String logRoutingKey) {
+        MessageProperties properties = new MessageProperties();
+        if (logRoutingKey != null) {
+            properties.setReceivedExchange(RabbitMQConfig.ADMIN_LOG_EXCHANGE);
+            properties.setReceivedRoutingKey(logRoutingKey);
+        }
+        return new Message(text.getBytes(StandardCharsets.UTF_8), properties);
+    }
+}
@@ -0,0 +1,101 @@
+package com.example.notificationservice.config;
+
+import org.junit.jupiter.api.Test;
+import org.mockito.InOrder;
+import org.springframework.amqp.AmqpRejectAndDontRequeueException;
+import org.springframework.amqp.AmqpTimeoutException;
+import org.springframework.amqp.core.Message;
+import org.springframework.amqp.core.MessageProperties;
+import org.springframework.amqp.rabbit.core.RabbitOperations;
+import org.springframework.amqp.rabbit.support.ListenerExecutionFailedException;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.inOrder;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class DelayedRetryRecovererTest {
+
+    private static final String QUEUE = RabbitMQConfig.USER_ORDER_CONFIRMATION_QUEUE;
+
+    private final RabbitOperations template = mock(RabbitOperations.class);
+    private final DelayedRetryRecoverer recoverer = new DelayedRetryRecoverer(template);
+
+    DelayedRetryRecovererTest() {
+        // Runs the callback against the same mock, as if it were the template's dedicated channel
+        when(template.invoke(any())).thenAnswer(invocation ->
+                invocation.<RabbitOperations.OperationsCallback<?>>getArgument(0).doInRabbit(template));
+    }
+
+    @Test
+    void firstFailureGoesToTheFirstDelayQueue() {
+        Message message = message(null);
+
+        recoverer.recover(message, new IllegalStateException("database down"));
+
+        verify(template).send(eq(RabbitMQConfig.RETRY_EXCHANGE), eq(QUEUE + ".retry.1"), any(Message.class));
+        assertEquals(1, DelayedRetryRecoverer.retryCount(message.getMessageProperties()));
+    }
+
+    @Test
+    void laterFailuresWaitLonger() {
+        Message message = message(2);
+
+        recoverer.recover(message, new IllegalStateException("database down"));
+
+        verify(template).send(eq(RabbitMQConfig.RETRY_EXCHANGE), eq(QUEUE + ".retry.3"), any(Message.class));
+    }
+
+    @Test
+    void exhaustedMessageIsParked() {
+        recoverer.recover(message(RabbitMQConfig.RETRY_ATTEMPTS), new IllegalStateException("database down"));
+
+        verify(template).send(eq(RabbitMQConfig.DEAD_LETTER_EXCHANGE), eq(QUEUE), any(Message.class));
+    }
+
+    @Test
+    void rejectedMessageIsParkedRightAway() {
+        Message message = message(null);
+        Throwable cause = new ListenerExecutionFailedException("listener failed",
+                new AmqpRejectAndDontRequeueException("unreadable"), message);
+
+        recoverer.recover(message, cause);
+
+        verify(template).send(eq(RabbitMQConfig.DEAD_LETTER_EXCHANGE), eq(QUEUE), any(Message.class));
+    }
+
+    @Test
+    void batchIsConfirmedOnceAfterAllSends() {
+        recoverer.recover(List.of(message(null), message(1)), new IllegalStateException("database down"));
+
+        InOrder order = inOrder(template);
+        order.verify(template).send(eq(RabbitMQConfig.RETRY_EXCHANGE), eq(QUEUE + ".retry.1"), any(Message.class));
+        order.verify(template).send(eq(RabbitMQConfig.RETRY_EXCHANGE), eq(QUEUE + ".retry.2"), any(Message.class));
+        order.verify(template).waitForConfirmsOrDie(DelayedRetryRecoverer.CONFIRM_TIMEOUT_MILLIS);
+    }
+
+    @Test
+    void unconfirmedRetryFailsSoTheOriginalIsRequeued() {
+        doThrow(new AmqpTimeoutException("no confirm")).when(template).waitForConfirmsOrDie(anyLong());
+
+        assertThrows(AmqpTimeoutException.class,
+                () -> recoverer.recover(message(null), new IllegalStateException("database down")));
+    }
+
+    private static Message message(Integer retries) {
+        MessageProperties properties = new MessageProperties();
+        properties.setConsumerQueue(QUEUE);
+        if (retries != null) {
+            properties.setHeader(RabbitMQConfig.RETRY_COUNT_HEADER, retries);
+        }
+        return new Message(new byte[] {1, 2, 3}, properties);
+    }
+}
@@ -0,0 +1,80 @@
+package com.example.notificationservice.config;
+
+import com.example.notificationservice.model.Notification;
+import com.example.notificationservice.service.NotificationPusher;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.annotation.DirtiesContext;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.time.Duration;
+import java.util.function.Predicate;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+
+/**
+ * Runs the service in relay mode against StompBrokerStandIn in place of RabbitMQ's STOMP plugin.
+ */
+@SpringBootTest
+@DirtiesContext
+class StompBrokerRelayTest {
+
+    private static final Duration TIMEOUT = Duration.ofSeconds(10);
+
+    private static StompBrokerStandIn broker;
+
+    @Autowired
+    private NotificationPusher notificationPusher;
+
+    @DynamicPropertySource
+    static void relayToStandIn(DynamicPropertyRegistry registry) {
+        try {
+            broker = new StompBrokerStandIn();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        registry.add("notification.broker.relay.enabled", () -> "true");
+        registry.add("notification.broker.relay.port", broker::getPort);
+    }
+
+    @AfterAll
+    static void stopBroker() throws IOException {
+        broker.close();
+    }
+
+    @Test
+    void instanceSharesItsUsersThroughTheBroker() throws InterruptedException {
+        StompBrokerStandIn.Frame connect = broker.await(command("CONNECT"), TIMEOUT);
+        assertNotNull(connect);
+        assertEquals("/", connect.header("host"));
+        assertNotNull(broker.await(subscribe(WebSocketConfig.USER_REGISTRY_BROADCAST), TIMEOUT));
+        assertNotNull(broker.await(subscribe(WebSocketConfig.UNRESOLVED_USER_BROADCAST), TIMEOUT));
+    }
+
+    @Test
+    void notificationForUserOfAnotherInstanceIsBroadcast() throws InterruptedException {
+        assertNotNull(broker.await(subscribe(WebSocketConfig.UNRESOLVED_USER_BROADCAST), TIMEOUT));
+
+        notificationPusher.push(new Notification("order", "Order 5 Status Update", "DELIVERED", 99L));
+
+        StompBrokerStandIn.Frame send = broker.await(command("SEND")
+                .and(f -> WebSocketConfig.UNRESOLVED_USER_BROADCAST.equals(f.header("destination")))
+                .and(f -> f.body().contains("DELIVERED")), TIMEOUT);
+        assertNotNull(send);
+        assertEquals("/user/99" + WebSocketConfig.RELAY_USER_DESTINATION, send.header("simpOrigDestination"));
+    }
+
+    private static Predicate<StompBrokerStandIn.Frame> command(String command) {
+        return f -> command.equals(f.command());
+    }
+
+    private static Predicate<StompBrokerStandIn.Frame> subscribe(String destination) {
+        return command("SUBSCRIBE").and(f -> destination.equals(f.header("destination")));
+    }
+}
@@ -0,0 +1,188 @@
+package com.example.notificationservice.config;
+
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Predicate;
+
+/**
+ * Just enough of a STOMP 1.2 broker to stand in for RabbitMQ's STOMP plugin in tests: it
+ * accepts any login, and delivers every SEND to the subscriptions of exactly its
+ * destination, the sender's own included. Every frame received is kept for assertions.
+ */
+class StompBrokerStandIn implements Closeable {
+
+    record Frame(String command, Map<String, String> headers, String body) {
+        String header(String name) {
+            return headers.get(name);
+        }
+    }
+
+    private record Subscription(Socket socket, String id, String destination) {
+    }
+
+    private final ServerSocket server;
+    private final ExecutorService threads = Executors.newCachedThreadPool();
+    private final List<Frame> received = new CopyOnWriteArrayList<>();
+    private final List<Subscription> subscriptions = new CopyOnWriteArrayList<>();
+    private final AtomicLong messageIds = new AtomicLong();
+
+    StompBrokerStandIn() throws IOException {
+        server = new ServerSocket(0, 50, InetAddress.getLoopbackAddress());
+        threads.execute(this::accept);
+    }
+
+    int getPort() {
+        return server.getLocalPort();
+    }
+
+    /**
+     * The first frame received that matches, waiting for it up to the timeout; null if none came.
+     */
+    Frame await(Predicate<Frame> matcher, Duration timeout) throws InterruptedException {
+        long deadline = System.nanoTime() + timeout.toNanos();
+        do {
+            for (Frame frame : received) {
+                if (matcher.test(frame)) {
+                    return frame;
+                }
+            }
+            Thread.sleep(20);
+        } while (System.nanoTime() < deadline);
+        return null;
+    }
+
+    private void accept() {
+        while (!server.isClosed()) {
+            try {
+                Socket socket = server.accept();
+                threads.execute(() -> serve(socket));
+            } catch (IOException e) {
+                return;
+            }
+        }
+    }
+
+    private void serve(Socket socket) {
+        try (socket) {
+            InputStream in = socket.getInputStream();
+            while (true) {
+                Frame frame = read(in);
+                if (frame == null) {
+                    return;
+                }
+                received.add(frame);
+                switch (frame.command()) {
+                    case "CONNECT", "STOMP" ->
+                            write(socket, "CONNECTED", Map.of("version", "1.2", "heart-beat", "0,0"), "");
+                    case "SUBSCRIBE" ->
+                            subscriptions.add(new Subscription(socket, frame.header("id"), frame.header("destination")));
+                    case "UNSUBSCRIBE" ->
+                            subscriptions.removeIf(s -> s.socket() == socket && s.id().equals(frame.header("id")));
+                    case "SEND" -> deliver(frame);
+                    case "DISCONNECT" -> {
+                        if (frame.header("receipt") != null) {
+                            write(socket, "RECEIPT", Map.of("receipt-id", frame.header("receipt")), "");
+                        }
+                        return;
+                    }
+                    default -> {
+                    }
+                }
+            }
+        } catch (IOException e) {
+            // Connection closed
+        } finally {
+            subscriptions.removeIf(s -> s.socket() == socket);
+        }
+    }
+
+    private void deliver(Frame send) throws IOException {
+        for (Subscription subscription : subscriptions) {
+            if (subscription.destination().equals(send.header("destination"))) {
+                Map<String, String> headers = new LinkedHashMap<>(send.headers());
+                headers.remove("content-length");
+                headers.put("subscription", subscription.id());
+                headers.put("message-id", String.valueOf(messageIds.incrementAndGet()));
+                write(subscription.socket(), "MESSAGE", headers, send.body());
+            }
+        }
+    }
+
+    private static Frame read(InputStream in) throws IOException {
+        // Skip heart-beats between frames
+        int b;
+        do {
+            b = in.read();
+            if (b < 0) {
+                return null;
+            }
+        } while (b == '\n' || b == '\r');
+
+        ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+        buffer.write(b);
+        String command = readLine(in, buffer);
+        Map<String, String> headers = new LinkedHashMap<>();
+        String line;
+        while (!(line = readLine(in, new ByteArrayOutputStream())).isEmpty()) {
+            int colon = line.indexOf(':');
+            // The first occurrence of a repeated header wins
+            headers.putIfAbsent(line.substring(0, colon), line.substring(colon + 1));
+        }
+        ByteArrayOutputStream body = new ByteArrayOutputStream();
+        while ((b = in.read()) > 0) {
+            body.write(b);
+        }
+        if (b < 0) {
+            return null;
+        }
+        return new Frame(command, headers, body.toString(StandardCharsets.UTF_8));
+    }
+
+    private static String readLine(InputStream in, ByteArrayOutputStream line) throws IOException {
+        int b;
+        while ((b = in.read()) != '\n') {
+            if (b < 0) {
+                throw new IOException("Connection closed mid-frame");
+            }
+            if (b != '\r') {
+                line.write(b);
+            }
+        }
+        return line.toString(StandardCharsets.UTF_8);
+    }
+
+    private static void write(Socket socket, String command, Map<String, String> headers, String body) throws IOException {
+        StringBuilder frame = new StringBuilder(command).append('\n');
+        headers.forEach((name, value) -> frame.append(name).append(':').append(value).append('\n'));
+        byte[] bodyBytes = body.getBytes(StandardCharsets.UTF_8);
+        frame.append("content-length:").append(bodyBytes.length).append("\n\n");
+        OutputStream out = socket.getOutputStream();
+        synchronized (socket) {
+            out.write(frame.toString().getBytes(StandardCharsets.UTF_8));
+            out.write(bodyBytes);
+            out.write(0);
+            out.flush();
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        server.close();
+        threads.shutdownNow();
+    }
+}
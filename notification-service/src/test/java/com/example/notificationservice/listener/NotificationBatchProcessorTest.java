@@ -0,0 +1,80 @@
+package com.example.notificationservice.listener;
+
+import com.example.notificationservice.model.Notification;
+import com.example.notificationservice.service.NotificationService;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.amqp.core.Message;
+import org.springframework.amqp.core.MessageProperties;
+import org.springframework.amqp.rabbit.retry.MessageRecoverer;
+
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+class NotificationBatchProcessorTest {
+
+    private final NotificationService notificationService = mock(NotificationService.class);
+    private final MessageRecoverer recoverer = mock(MessageRecoverer.class);
+    private final NotificationBatchProcessor processor = new NotificationBatchProcessor(notificationService, recoverer);
+
+    @Test
+    void wholeBatchIsStoredAtOnce() {
+        processor.process(List.of(message("a"), message("b"), message("c")), NotificationBatchProcessorTest::twoCopies);
+
+        ArgumentCaptor<List<Notification>> stored = listCaptor();
+        verify(notificationService, times(1)).sendToUsers(stored.capture());
+        assertEquals(6, stored.getValue().size());
+        verify(recoverer, never()).recover(any(Message.class), any());
+    }
+
+    @Test
+    void failingMessageIsRecoveredAloneWithoutItsPartialNotifications() {
+        Message bad = message("bad");
+
+        processor.process(List.of(message("a"), bad, message("b")), (message, notifications) -> {
+            twoCopies(message, notifications);
+            if (message == bad) {
+                throw new IllegalStateException("unreadable");
+            }
+        });
+
+        ArgumentCaptor<List<Notification>> stored = listCaptor();
+        verify(notificationService).sendToUsers(stored.capture());
+        assertEquals(4, stored.getValue().size());
+        verify(recoverer).recover(eq(bad), any(IllegalStateException.class));
+    }
+
+    @Test
+    void failedStoreRecoversEveryCollectedMessage() {
+        doThrow(new IllegalStateException("database down")).when(notificationService).sendToUsers(anyList());
+
+        processor.process(List.of(message("a"), message("b")), NotificationBatchProcessorTest::twoCopies);
+
+        verify(recoverer, times(2)).recover(any(Message.class), any(IllegalStateException.class));
+    }
+
+    private static void twoCopies(Message message, List<Notification> notifications) {
+        String body = new String(message.getBody(), StandardCharsets.UTF_8);
+        notifications.add(new Notification("info", body, body, 2L));
+        notifications.add(new Notification("info", body, body, 1L));
+    }
+
+    @SuppressWarnings("unchecked")
+    private static ArgumentCaptor<List<Notification>> listCaptor() {
+        return ArgumentCaptor.forClass(List.class);
+    }
+
+    private static Message message(String body) {
+        return new Message(body.getBytes(StandardCharsets.UTF_8), new MessageProperties());
+    }
+}
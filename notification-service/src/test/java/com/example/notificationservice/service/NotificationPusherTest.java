@@ -0,0 +1,89 @@
+package com.example.notificationservice.service;
+
+import com.example.notificationservice.config.WebSocketConfig;
+import com.example.notificationservice.model.Notification;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.messaging.simp.SimpMessagingTemplate;
+
+import java.util.ArrayDeque;
+import java.util.List;
+import java.util.Queue;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+class NotificationPusherTest {
+
+    private static final Long USER = 7L;
+
+    private final SimpMessagingTemplate template = mock(SimpMessagingTemplate.class);
+    // Tasks run only when the test says so, as if the push threads were busy until then
+    private final Queue<Runnable> tasks = new ArrayDeque<>();
+    private final NotificationPusher pusher = new NotificationPusher(template, tasks::add, 4, false);
+
+    @Test
+    void pushesInOrderOffTheCallingThread() {
+        Notification first = stock("a");
+        Notification second = stock("b");
+
+        pusher.push(List.of(first, second));
+        verify(template, never()).convertAndSendToUser(any(), any(), any());
+
+        runTasks();
+        assertEquals(List.of(first, second), sent(2));
+    }
+
+    @Test
+    void burstOfOrderUpdatesIsCoalesced() {
+        Notification stock = stock("a");
+        Notification delivered = order(42L, "DELIVERED");
+
+        pusher.push(order(42L, "PROCESSING"));
+        pusher.push(stock);
+        pusher.push(order(42L, "DELIVERING"));
+        pusher.push(delivered);
+        runTasks();
+
+        assertEquals(List.of(delivered, stock), sent(2));
+    }
+
+    @Test
+    void overflowDropsTheBufferAndAsksForResync() {
+        for (int i = 0; i < 5; i++) {
+            pusher.push(stock("n" + i));
+        }
+        runTasks();
+
+        List<Notification> sent = sent(2);
+        assertEquals(NotificationPusher.RESYNC_TYPE, sent.get(0).getType());
+        assertEquals("n4", sent.get(1).getMessage());
+    }
+
+    private void runTasks() {
+        Runnable task;
+        while ((task = tasks.poll()) != null) {
+            task.run();
+        }
+    }
+
+    private List<Notification> sent(int count) {
+        ArgumentCaptor<Object> payloads = ArgumentCaptor.forClass(Object.class);
+        verify(template, times(count)).convertAndSendToUser(eq(USER.toString()),
+                eq(WebSocketConfig.USER_DESTINATION), payloads.capture());
+        return payloads.getAllValues().stream().map(Notification.class::cast).toList();
+    }
+
+    private static Notification stock(String message) {
+        return new Notification("stock", "Low Stock Alert", message, USER);
+    }
+
+    private static Notification order(Long orderId, String status) {
+        return new Notification("order", "Order " + orderId + " Status Update", status, USER);
+    }
+}
@@ -0,0 +1,41 @@
+package com.example.orderservice;
+
+import com.example.orderservice.utils.AuthContext;
+import com.example.orderservice.utils.Jwt;
+import io.jsonwebtoken.JwtException;
+import jakarta.annotation.Priority;
+import jakarta.inject.Inject;
+import jakarta.ws.rs.Priorities;
+import jakarta.ws.rs.container.ContainerRequestContext;
+import jakarta.ws.rs.container.ContainerRequestFilter;
+import jakarta.ws.rs.core.HttpHeaders;
+import jakarta.ws.rs.ext.Provider;
+
+import java.io.IOException;
+
+/**
+ * Verifies the bearer token once per request and hands the claims to the resources through
+ * AuthContext. Requests without a valid token are let through with an empty context; the
+ * resources decide whether they need one.
+ */
+@Provider
+@Priority(Priorities.AUTHENTICATION)
+public class JwtFilter implements ContainerRequestFilter {
+
+    @Inject
+    private AuthContext authContext;
+
+    @Override
+    public void filter(ContainerRequestContext requestContext) throws IOException {
+        String authHeader = requestContext.getHeaderString(HttpHeaders.AUTHORIZATION);
+        if (authHeader == null || !authHeader.startsWith("Bearer ")) {
+            return;
+        }
+        String token = authHeader.substring("Bearer ".length());
+        try {
+            authContext.set(token, Jwt.validateToken(token));
+        } catch (JwtException | IllegalArgumentException e) {
+            System.err.println("\u001B[31m Rejected token: " + e.getMessage() + " \u001B[0m");
+        }
+    }
+}
@@ -0,0 +1,16 @@
+package com.example.orderservice.codec;
+
+import java.io.IOException;
+
+/**
+ * Turns message DTOs into AMQP message bodies and back. The codec that wrote a body is named
+ * by the content-type property of the message, so the consumer can pick the matching one.
+ */
+public interface MessageCodec {
+
+    String contentType();
+
+    byte[] encode(Object value) throws IOException;
+
+    <T> T decode(byte[] body, Class<T> type) throws IOException;
+}
@@ -0,0 +1,228 @@
+package com.example.orderservice.config;
+
+import com.rabbitmq.client.AMQP;
+import com.rabbitmq.client.Channel;
+import com.rabbitmq.client.Connection;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentNavigableMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Fixed pool of publisher channels in confirm mode. A caller borrows a channel for the
+ * duration of one basicPublish, so concurrent publishers never share a channel.
+ *
+ * Confirms are handled asynchronously. At most maxOutstanding messages may be awaiting
+ * a confirm at any time; messages that are nacked, or that were in flight on a channel
+ * that closed, are kept in memory and published again by retryFailed().
+ */
+public class PublisherChannelPool {
+
+    private static final long BORROW_TIMEOUT_MILLIS = 5000;
+    private static final int MAX_ATTEMPTS = 5;
+
+    private final Connection connection;
+    private final BlockingQueue<PooledChannel> idle;
+    private final List<PooledChannel> all = new ArrayList<>();
+    private final Semaphore outstanding;
+    private final Queue<OutgoingMessage> failed = new ConcurrentLinkedQueue<>();
+
+    public static class OutgoingMessage {
+        final String exchange;
+        final String routingKey;
+        final AMQP.BasicProperties properties;
+        final byte[] body;
+        int attempts;
+
+        public OutgoingMessage(String exchange, String routingKey, AMQP.BasicProperties properties, byte[] body) {
+            this.exchange = exchange;
+            this.routingKey = routingKey;
+            this.properties = properties;
+            this.body = body;
+        }
+    }
+
+    private class PooledChannel {
+        Channel channel;
+        // Sequence numbers restart with every channel, so each channel gets its own map
+        ConcurrentNavigableMap<Long, OutgoingMessage> unconfirmed;
+
+        PooledChannel() throws IOException {
+            open();
+        }
+
+        void open() throws IOException {
+            ConcurrentNavigableMap<Long, OutgoingMessage> pending = new ConcurrentSkipListMap<>();
+            channel = connection.createChannel();
+            channel.confirmSelect();
+            channel.addConfirmListener(
+                    (deliveryTag, multiple) -> settle(pending, deliveryTag, multiple, true),
+                    (deliveryTag, multiple) -> settle(pending, deliveryTag, multiple, false));
+            channel.addShutdownListener(cause -> {
+                // Whatever was still unconfirmed on this channel may never have reached the broker
+                settle(pending, Long.MAX_VALUE, true, false);
+            });
+            unconfirmed = pending;
+        }
+    }
+
+    public PublisherChannelPool(Connection connection, int size, int maxOutstanding) throws IOException {
+        this.connection = connection;
+        this.idle = new ArrayBlockingQueue<>(size);
+        this.outstanding = new Semaphore(maxOutstanding);
+        for (int i = 0; i < size; i++) {
+            PooledChannel pooled = new PooledChannel();
+            all.add(pooled);
+            idle.add(pooled);
+        }
+    }
+
+    public void publish(String exchange, String routingKey, AMQP.BasicProperties properties, byte[] body) throws IOException {
+        send(new OutgoingMessage(exchange, routingKey, properties, body));
+    }
+
+    /**
+     * Publishes the messages on one channel and blocks until the broker has confirmed all of
+     * them. Nothing is retried here: on a nack or timeout the channel is closed and the
+     * caller is expected to publish the whole batch again.
+     */
+    public void publishConfirmed(List<OutgoingMessage> messages, long timeoutMillis) throws IOException {
+        PooledChannel pooled;
+        try {
+            pooled = idle.poll(BORROW_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while waiting for a publisher channel", e);
+        }
+        if (pooled == null) {
+            throw new IOException("No publisher channel available");
+        }
+
+        try {
+            if (!pooled.channel.isOpen()) {
+                pooled.open();
+            }
+            for (OutgoingMessage message : messages) {
+                pooled.channel.basicPublish(message.exchange, message.routingKey, message.properties, message.body);
+            }
+            // Closes the channel on a nack or timeout
+            pooled.channel.waitForConfirmsOrDie(timeoutMillis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while waiting for publisher confirms", e);
+        } catch (TimeoutException e) {
+            throw new IOException("Timed out waiting for publisher confirms", e);
+        } finally {
+            idle.add(pooled);
+        }
+    }
+
+    /**
+     * Publishes again every message that was nacked or lost with its channel.
+     */
+    public void retryFailed() {
+        int pending = failed.size();
+        for (int i = 0; i < pending; i++) {
+            OutgoingMessage message = failed.poll();
+            if (message == null) {
+                return;
+            }
+            if (message.attempts >= MAX_ATTEMPTS) {
+                System.err.println("\u001B[31m Dropping message to " + message.exchange + "/" + message.routingKey +
+                        " after " + message.attempts + " attempts \u001B[0m");
+                continue;
+            }
+            try {
+                send(message);
+            } catch (IOException e) {
+                failed.add(message);
+                System.err.println("\u001B[31m Retry of unconfirmed message failed: " + e.getMessage() + " \u001B[0m");
+                return;
+            }
+        }
+    }
+
+    private void send(OutgoingMessage message) throws IOException {
+        try {
+            if (!outstanding.tryAcquire(BORROW_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS)) {
+                throw new IOException("Too many messages awaiting publisher confirms");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while waiting for publisher confirms", e);
+        }
+
+        PooledChannel pooled;
+        try {
+            pooled = idle.poll(BORROW_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            pooled = null;
+        }
+        if (pooled == null) {
+            outstanding.release();
+            throw new IOException("No publisher channel available");
+        }
+
+        long sequence = -1;
+        try {
+            if (!pooled.channel.isOpen()) {
+                pooled.open();
+            }
+            message.attempts++;
+            sequence = pooled.channel.getNextPublishSeqNo();
+            pooled.unconfirmed.put(sequence, message);
+            pooled.channel.basicPublish(message.exchange, message.routingKey, message.properties, message.body);
+        } catch (IOException | RuntimeException e) {
+            // Release the window slot unless a confirm or shutdown listener already settled it
+            if (sequence < 0 || pooled.unconfirmed.remove(sequence) != null) {
+                outstanding.release();
+            }
+            throw e;
+        } finally {
+            idle.add(pooled);
+        }
+    }
+
+    private void settle(ConcurrentNavigableMap<Long, OutgoingMessage> unconfirmed, long deliveryTag,
+                        boolean multiple, boolean ack) {
+        Map<Long, OutgoingMessage> settled = multiple
+                ? unconfirmed.headMap(deliveryTag, true)
+                : unconfirmed.subMap(deliveryTag, true, deliveryTag, true);
+
+        for (Long sequence : new ArrayList<>(settled.keySet())) {
+            OutgoingMessage message = unconfirmed.remove(sequence);
+            if (message == null) {
+                continue;
+            }
+            outstanding.release();
+            if (!ack) {
+                failed.add(message);
+            }
+        }
+    }
+
+    public void close() {
+        for (PooledChannel pooled : all) {
+            try {
+                if (pooled.channel.isOpen()) {
+                    // Give in-flight messages a chance to be confirmed before closing
+                    pooled.channel.waitForConfirms(BORROW_TIMEOUT_MILLIS);
+                    pooled.channel.close();
+                }
+            } catch (Exception e) {
+                System.err.println("\u001B[31m Failed to close publisher channel: " + e.getMessage() + " \u001B[0m");
+            }
+        }
+    }
+}
@@ -0,0 +1,119 @@
+package com.example.orderservice.config;
+
+import com.rabbitmq.client.AMQP;
+import com.rabbitmq.client.Channel;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Layout shared by every work queue between the services. A queue is a durable quorum queue,
+ * so its backlog survives a broker restart, and comes with:
+ *
+ *   queue.retry.1 .. queue.retry.N  delay queues; a message waits there for its TTL (1s, 2s,
+ *                                   4s, ...) and is then dead-lettered back onto the queue
+ *   queue.parking-lot               where messages end up that cannot be processed: rejected
+ *                                   ones, ones redelivered more than DELIVERY_LIMIT times and
+ *                                   ones that used up their retries
+ *
+ * A consumer that fails on a message hands it to retry() and acks it, so the message never
+ * blocks the queue while it waits. The same class is kept in order-service and
+ * product-service, and notification-service declares its queues with the same arguments;
+ * RabbitMQ refuses to redeclare a queue with different ones, so any change here has to be
+ * made everywhere and the affected queues deleted.
+ */
+public final class QueueTopology {
+
+    public static final String DEAD_LETTER_EXCHANGE = "dead-letter";
+    public static final String RETRY_EXCHANGE = "retry";
+    public static final String RETRY_COUNT_HEADER = "x-retry-count";
+
+    public static final int RETRY_ATTEMPTS = 5;
+    public static final int INITIAL_RETRY_DELAY_MILLIS = 1000;
+    public static final int DELIVERY_LIMIT = 10;
+
+    private static final int PERSISTENT = 2;
+
+    private QueueTopology() {
+    }
+
+    /**
+     * Declares the queue with its parking lot and delay queues, and the exchanges they use.
+     */
+    public static void declare(Channel channel, String queue) throws IOException {
+        channel.exchangeDeclare(DEAD_LETTER_EXCHANGE, "direct", true);
+        channel.exchangeDeclare(RETRY_EXCHANGE, "direct", true);
+
+        channel.queueDeclare(queue, true, false, false, queueArguments(queue));
+
+        channel.queueDeclare(parkingLot(queue), true, false, false, null);
+        channel.queueBind(parkingLot(queue), DEAD_LETTER_EXCHANGE, queue);
+
+        for (int attempt = 1; attempt <= RETRY_ATTEMPTS; attempt++) {
+            channel.queueDeclare(retryQueue(queue, attempt), true, false, false, retryQueueArguments(queue, attempt));
+            channel.queueBind(retryQueue(queue, attempt), RETRY_EXCHANGE, retryQueue(queue, attempt));
+        }
+    }
+
+    public static Map<String, Object> queueArguments(String queue) {
+        Map<String, Object> arguments = new HashMap<>();
+        arguments.put("x-queue-type", "quorum");
+        arguments.put("x-dead-letter-exchange", DEAD_LETTER_EXCHANGE);
+        arguments.put("x-dead-letter-routing-key", queue);
+        arguments.put("x-delivery-limit", DELIVERY_LIMIT);
+        return arguments;
+    }
+
+    public static Map<String, Object> retryQueueArguments(String queue, int attempt) {
+        Map<String, Object> arguments = new HashMap<>();
+        arguments.put("x-message-ttl", retryDelayMillis(attempt));
+        // The default exchange routes straight back to the queue
+        arguments.put("x-dead-letter-exchange", "");
+        arguments.put("x-dead-letter-routing-key", queue);
+        return arguments;
+    }
+
+    public static int retryDelayMillis(int attempt) {
+        return INITIAL_RETRY_DELAY_MILLIS << (attempt - 1);
+    }
+
+    public static String retryQueue(String queue, int attempt) {
+        return queue + ".retry." + attempt;
+    }
+
+    public static String parkingLot(String queue) {
+        return queue + ".parking-lot";
+    }
+
+    /**
+     * Schedules another attempt at a message that failed, or parks it once it used up its
+     * attempts. The caller acks the original delivery only once the broker has confirmed
+     * this publish, so the message is not lost when the publish fails.
+     */
+    public static void retry(Channel channel, String queue, AMQP.BasicProperties properties, byte[] body) throws IOException {
+        int attempt = retryCount(properties) + 1;
+
+        Map<String, Object> headers = new HashMap<>();
+        if (properties.getHeaders() != null) {
+            headers.putAll(properties.getHeaders());
+        }
+        headers.put(RETRY_COUNT_HEADER, attempt);
+        AMQP.BasicProperties retried = properties.builder()
+                .headers(headers)
+                .deliveryMode(PERSISTENT)
+                .build();
+
+        if (attempt > RETRY_ATTEMPTS) {
+            System.err.println("\u001B[31m Parking message on " + queue + " after " + RETRY_ATTEMPTS + " retries \u001B[0m");
+            channel.basicPublish(DEAD_LETTER_EXCHANGE, queue, retried, body);
+        } else {
+            channel.basicPublish(RETRY_EXCHANGE, retryQueue(queue, attempt), retried, body);
+        }
+    }
+
+    public static int retryCount(AMQP.BasicProperties properties) {
+        Object count = properties.getHeaders() == null ? null : properties.getHeaders().get(RETRY_COUNT_HEADER);
+        return count instanceof Number ? ((Number) count).intValue() : 0;
+    }
+}
@@ -1,26 +1,44 @@
 package com.example.orderservice.config;
 
-import com.example.orderservice.dto.StockCheckRequest;
-import com.example.orderservice.dto.StockConfirmationResponse;
+import com.example.orderservice.codec.MessageCodecs;
 import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import jakarta.annotation.PostConstruct;
 import jakarta.annotation.PreDestroy;
+import jakarta.annotation.Resource;
+import jakarta.ejb.ConcurrencyManagement;
+import jakarta.ejb.ConcurrencyManagementType;
 import jakarta.ejb.Singleton;
 import jakarta.ejb.Startup;
+import com.rabbitmq.client.AMQP;
 import com.rabbitmq.client.Channel;
 import com.rabbitmq.client.Connection;
 import com.rabbitmq.client.ConnectionFactory;
 
 import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.TimeoutException;
 
 @Singleton
 @Startup
+@ConcurrencyManagement(ConcurrencyManagementType.BEAN)
 public class RabbitMQConfig {
     private Connection connection;
     private Channel channel;
+    private PublisherChannelPool publisherPool;
+    private ScheduledFuture<?> retryTask;
+
+    @Resource(lookup = "java:comp/DefaultManagedScheduledExecutorService")
+    private ScheduledExecutorService scheduler;
+
+    @Resource(lookup = "java:comp/DefaultManagedExecutorService")
+    private ExecutorService consumerExecutor;
     private final ObjectMapper objectMapper = new ObjectMapper();
+    private final MessageCodecs codecs = new MessageCodecs(objectMapper);
 
     public static final String ORDER_STOCK_CHECK_QUEUE = "order-stock-check";
     public static final String STOCK_CONFIRMATION_QUEUE = "stock-confirmation";
@@ -29,6 +47,16 @@ public class RabbitMQConfig {
     public static final String PAYMENTS_EXCHANGE = "payments-exchange";
     public static final String ADMIN_LOG_EXCHANGE = "admin-log";
 
+    // Publisher pool sizing; override with -Drabbitmq.publisher.channels / -Drabbitmq.publisher.max-unconfirmed
+    private static final int PUBLISHER_CHANNELS =
+            Integer.getInteger("rabbitmq.publisher.channels", Runtime.getRuntime().availableProcessors());
+    private static final int MAX_UNCONFIRMED = Integer.getInteger("rabbitmq.publisher.max-unconfirmed", 1000);
+    private static final long RETRY_INTERVAL_SECONDS = 1;
+
+    // AMQP message types of batched messages; messages without a type carry a single order
+    public static final String STOCK_CHECK_BATCH_TYPE = "StockCheckBatch";
+    public static final String STOCK_CONFIRMATION_BATCH_TYPE = "StockConfirmationBatch";
+
     @PostConstruct
     public void init() {
         try {
@@ -41,18 +69,19 @@ public class RabbitMQConfig {
             factory.setUsername("guest");
             factory.setPassword("guest");
 
-            connection = factory.newConnection();
+            // Consumer callbacks run on the managed executor instead of unmanaged client threads
+            connection = factory.newConnection(consumerExecutor);
             channel = connection.createChannel();
 
             // Declare exchanges
             channel.exchangeDeclare(PAYMENTS_EXCHANGE, "direct", true);
             channel.exchangeDeclare(ADMIN_LOG_EXCHANGE, "topic", true);
 
-            // Declare queues
-            channel.queueDeclare(ORDER_STOCK_CHECK_QUEUE, false, false, false, null);
-            channel.queueDeclare(STOCK_CONFIRMATION_QUEUE, false, false, false, null);
-            channel.queueDeclare(USER_ORDER_CONFIRMATION_QUEUE, false, false, false, null);
-            channel.queueDeclare(PAYMENT_FAILED_QUEUE, false, false, false, null);
+            // Durable queues, each with its delay queues and parking lot
+            QueueTopology.declare(channel, ORDER_STOCK_CHECK_QUEUE);
+            QueueTopology.declare(channel, STOCK_CONFIRMATION_QUEUE);
+            QueueTopology.declare(channel, USER_ORDER_CONFIRMATION_QUEUE);
+            QueueTopology.declare(channel, PAYMENT_FAILED_QUEUE);
 
             // Bind payment failure queue to exchange
             channel.queueBind(PAYMENT_FAILED_QUEUE, PAYMENTS_EXCHANGE, "PaymentFailed");
@@ -60,6 +89,11 @@ public class RabbitMQConfig {
             // Bind admin log queue to exchange with routing pattern for errors
             channel.queueBind(USER_ORDER_CONFIRMATION_QUEUE, ADMIN_LOG_EXCHANGE, "Order_*");
 
+            // Publishing goes through its own channels so it never shares the consumer channel
+            publisherPool = new PublisherChannelPool(connection, PUBLISHER_CHANNELS, MAX_UNCONFIRMED);
+            retryTask = scheduler.scheduleWithFixedDelay(publisherPool::retryFailed,
+                    RETRY_INTERVAL_SECONDS, RETRY_INTERVAL_SECONDS, TimeUnit.SECONDS);
+
             System.out.println("\u001B[33m === RABBITMQ CONFIG INITIALIZED SUCCESSFULLY === \u001B[0m");
 
         } catch (IOException | TimeoutException e) {
@@ -72,13 +106,45 @@ public class RabbitMQConfig {
         return channel;
     }
 
+    /**
+     * A new channel on the shared connection, for consumers that need their own prefetch.
+     */
+    public Channel createChannel() throws IOException {
+        return connection.createChannel();
+    }
+
+    /**
+     * Publishes on a pooled confirm-mode channel. Safe to call from any number of threads.
+     */
+    public void publish(String exchange, String routingKey, AMQP.BasicProperties properties, byte[] body) throws IOException {
+        publisherPool.publish(exchange, routingKey, properties, body);
+    }
+
+    /**
+     * Publishes a batch and waits until the broker has confirmed every message in it.
+     */
+    public void publishConfirmed(List<PublisherChannelPool.OutgoingMessage> messages, long timeoutMillis) throws IOException {
+        publisherPool.publishConfirmed(messages, timeoutMillis);
+    }
+
     public ObjectMapper getObjectMapper() {
         return objectMapper;
     }
 
+    public MessageCodecs getCodecs() {
+        return codecs;
+    }
+
     @PreDestroy
     public void cleanup() {
         try {
+            if (retryTask != null) {
+                retryTask.cancel(false);
+            }
+            if (publisherPool != null) {
+                publisherPool.retryFailed();
+                publisherPool.close();
+            }
             if (channel != null && channel.isOpen()) {
                 channel.close();
             }
@@ -3,6 +3,7 @@ package com.example.orderservice.controller;
 import com.example.orderservice.model.Cart;
 import com.example.orderservice.model.OrderDish;
 import com.example.orderservice.service.CartService;
+import com.example.orderservice.utils.AuthContext;
 import com.example.orderservice.utils.Roles;
 import jakarta.ejb.EJB;
 import jakarta.enterprise.context.RequestScoped;
@@ -21,18 +22,19 @@ public class CartController {
     @Inject
     private CartService cartService;
 
+    @Inject
+    private AuthContext auth;
+
     @GET
     @Path("/get")
-    public Response getCart(@HeaderParam("Authorization") String authHeader) {
-        if (authHeader == null || !authHeader.startsWith("Bearer ")) {
+    public Response getCart() {
+        if (!auth.isAuthenticated()) {
             return Response.status(Response.Status.UNAUTHORIZED)
                     .entity("Valid authentication token required").build();
         }
 
-        String token = authHeader.substring("Bearer ".length());
-
         try {
-            cartService.initializeCart(token);
+            cartService.initializeCart();
             Cart cart = cartService.getCurrentCart();
             return Response.ok(cart).build();
         } catch (Exception e) {
@@ -43,16 +45,14 @@ public class CartController {
 
     @GET
     @Path("/dishes")
-    public Response getCartDishes(@HeaderParam("Authorization") String authHeader) {
-        if (authHeader == null || !authHeader.startsWith("Bearer ")) {
+    public Response getCartDishes() {
+        if (!auth.isAuthenticated()) {
             return Response.status(Response.Status.UNAUTHORIZED)
                     .entity("Valid authentication token required").build();
         }
 
-        String token = authHeader.substring("Bearer ".length());
-
         try {
-            cartService.initializeCart(token);
+            cartService.initializeCart();
             Cart cart = cartService.getCurrentCart();
             List<OrderDish> dishes = cart.getDishes();
             return Response.ok(dishes).build();
@@ -65,27 +65,23 @@ public class CartController {
     @POST
     @Path("/add")
     public Response addToCart(
-            @HeaderParam("Authorization") String authHeader,
             @QueryParam("productId") Long productId, @QueryParam("quantity") int quantity,
             @QueryParam("dishName") String dishName,
             @QueryParam("dishPrice") double dishPrice,
             @QueryParam("companyName") String companyName) {
-        if (authHeader == null || !authHeader.startsWith("Bearer ")) {
+        if (!auth.isAuthenticated()) {
             return Response.status(Response.Status.UNAUTHORIZED)
                     .entity("Valid authentication token required").build();
         }
 
-        String token = authHeader.substring("Bearer ".length());
-
         if (productId == null) {
             return Response.status(Response.Status.BAD_REQUEST)
                     .entity("Product ID is required").build();
         }
 
         try {
-            cartService.initializeCart(token);
+            cartService.initializeCart();
             cartService.addProductsToCart(productId, quantity, dishName, dishPrice, companyName);
-            cartService.persistCart();
             return Response.ok("Product added to cart").build();
         } catch (Exception e) {
             return Response.status(Response.Status.INTERNAL_SERVER_ERROR)
@@ -95,16 +91,14 @@ public class CartController {
 
     @DELETE
     @Path("/clear")
-    public Response clearCart(@HeaderParam("Authorization") String authHeader) {
-        if (authHeader == null || !authHeader.startsWith("Bearer ")) {
+    public Response clearCart() {
+        if (!auth.isAuthenticated()) {
             return Response.status(Response.Status.UNAUTHORIZED)
                     .entity("Valid authentication token required").build();
         }
 
-        String token = authHeader.substring("Bearer ".length());
-
         try {
-            cartService.initializeCart(token);
+            cartService.initializeCart();
             cartService.clearCart();
             return Response.ok("Cart cleared").build();
         } catch (Exception e) {
@@ -116,22 +110,19 @@ public class CartController {
     @DELETE
     @Path("/remove")
     public Response removeFromCart(
-            @HeaderParam("Authorization") String authHeader,
             @QueryParam("productId") Long productId) {
 
-        if (authHeader == null || !authHeader.startsWith("Bearer ")) {
+        if (!auth.isAuthenticated()) {
             return Response.status(Response.Status.UNAUTHORIZED)
                     .entity("Valid authentication token required").build();
         }
-        String token = authHeader.substring("Bearer ".length());
         if (productId == null) {
             return Response.status(Response.Status.BAD_REQUEST)
                     .entity("Product ID is required").build();
         }
         try {
-            cartService.initializeCart(token);
+            cartService.initializeCart();
             cartService.removeProductFromCart(productId);
-            cartService.persistCart();
             return Response.ok("Product removed from cart").build();
         } catch (Exception e) {
             return Response.status(Response.Status.INTERNAL_SERVER_ERROR)
@@ -142,24 +133,20 @@ public class CartController {
     @PUT
     @Path("/update")
     public Response updateCart(
-            @HeaderParam("Authorization") String authHeader,
             @QueryParam("productId") Long productId, @QueryParam("quantity") int quantity) {
-        if (authHeader == null || !authHeader.startsWith("Bearer ")) {
+        if (!auth.isAuthenticated()) {
             return Response.status(Response.Status.UNAUTHORIZED)
                     .entity("Valid authentication token required").build();
         }
 
-        String token = authHeader.substring("Bearer ".length());
-
         if (productId == null) {
             return Response.status(Response.Status.BAD_REQUEST)
                     .entity("Product ID is required").build();
         }
 
         try {
-            cartService.initializeCart(token);
+            cartService.initializeCart();
             cartService.updateDishInCart(productId, quantity);
-            cartService.persistCart();
             return Response.ok("Cart updated").build();
         } catch (Exception e) {
             return Response.status(Response.Status.INTERNAL_SERVER_ERROR)
@@ -169,16 +156,14 @@ public class CartController {
 
     @POST
     @Path("/save")
-    public Response saveCart(@HeaderParam("Authorization") String authHeader) {
-        if (authHeader == null || !authHeader.startsWith("Bearer ")) {
+    public Response saveCart() {
+        if (!auth.isAuthenticated()) {
             return Response.status(Response.Status.UNAUTHORIZED)
                     .entity("Valid authentication token required").build();
         }
 
-        String token = authHeader.substring("Bearer ".length());
-
         try {
-            cartService.initializeCart(token);
+            cartService.initializeCart();
             cartService.persistCart();
             return Response.ok("Cart saved to database").build();
         } catch (Exception e) {
@@ -1,14 +1,17 @@
 package com.example.orderservice.controller;
 
 import com.example.orderservice.dto.CompanyOrderDTO;
+import com.example.orderservice.dto.CompanyOrderQuery;
 import com.example.orderservice.model.Order;
 import com.example.orderservice.service.OrderService;
+import com.example.orderservice.utils.AuthContext;
 import jakarta.ejb.EJB;
 import jakarta.inject.Inject;
 import jakarta.ws.rs.*;
 import jakarta.ws.rs.core.MediaType;
 import jakarta.ws.rs.core.Response;
 
+import java.time.LocalDateTime;
 import java.util.List;
 
 @Path("/orders")
@@ -18,18 +21,19 @@ public class OrderController {
     @Inject
     private OrderService orderService;
 
+    @Inject
+    private AuthContext auth;
+
     @POST
     @Path("/confirm")
-    public Response confirmOrder(@HeaderParam("Authorization") String authHeader) {
-        if (authHeader == null || !authHeader.startsWith("Bearer ")) {
+    public Response confirmOrder() {
+        if (!auth.isAuthenticated()) {
             return Response.status(Response.Status.UNAUTHORIZED)
                     .entity("Valid authentication token required").build();
         }
 
-        String token = authHeader.substring("Bearer ".length());
-
         try {
-            Order order = orderService.createOrderFromCart(token);
+            Order order = orderService.createOrderFromCart();
             return Response.status(Response.Status.CREATED).entity(order).build();
         } catch (IllegalStateException e) {
             return Response.status(Response.Status.BAD_REQUEST).entity(e.getMessage()).build();
@@ -42,9 +46,8 @@ public class OrderController {
     @GET
     @Path("/getOrder")
     public Response getOrder(
-            @HeaderParam("Authorization") String authHeader,
             @QueryParam("id") Long orderId) {
-        if (authHeader == null || !authHeader.startsWith("Bearer ")) {
+        if (!auth.isAuthenticated()) {
             return Response.status(Response.Status.UNAUTHORIZED)
                     .entity("Valid authentication token required").build();
         }
@@ -63,16 +66,14 @@ public class OrderController {
 
     @GET
     @Path("/getOrders")
-    public Response getOrders(@HeaderParam("Authorization") String authHeader) {
-        if (authHeader == null || !authHeader.startsWith("Bearer ")) {
+    public Response getOrders() {
+        if (!auth.isAuthenticated()) {
             return Response.status(Response.Status.UNAUTHORIZED)
                     .entity("Valid authentication token required").build();
         }
 
-        String token = authHeader.substring("Bearer ".length());
-
         try {
-            List<Order> orders = orderService.getOrders(token);
+            List<Order> orders = orderService.getOrders();
             if (orders.isEmpty()) {
                 return Response.status(Response.Status.OK)
                         .entity("No orders found for this user").build();
@@ -86,16 +87,29 @@ public class OrderController {
 
     @GET
     @Path("/byCompany")
-    public Response getOrdersByCompany(@HeaderParam("Authorization") String authHeader) {
-        if (authHeader == null || !authHeader.startsWith("Bearer ")) {
+    public Response getOrdersByCompany(@BeanParam CompanyOrderQuery query) {
+        if (!auth.isAuthenticated()) {
             return Response.status(Response.Status.UNAUTHORIZED)
                     .entity("Valid authentication token required").build();
         }
 
-        String token = authHeader.substring("Bearer ".length());
-
         try {
-            List<CompanyOrderDTO> orders = orderService.getOrdersByCompany(token);
+            if (!query.isUnpaged()) {
+                long beforeId;
+                LocalDateTime from;
+                LocalDateTime to;
+                try {
+                    beforeId = query.getBeforeId();
+                    from = query.getFromTime();
+                    to = query.getToTime();
+                } catch (IllegalArgumentException e) {
+                    return Response.status(Response.Status.BAD_REQUEST).entity(e.getMessage()).build();
+                }
+                return Response.ok(orderService.getCompanyOrderPage(beforeId, from, to,
+                        query.getEffectiveLimit())).build();
+            }
+
+            List<CompanyOrderDTO> orders = orderService.getOrdersByCompany();
 
             if (orders.isEmpty()) {
                 return Response.status(Response.Status.OK)
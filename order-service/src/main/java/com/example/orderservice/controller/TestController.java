@@ -1,6 +1,7 @@
 package com.example.orderservice.controller;
 
 import com.example.orderservice.messaging.NotificationSender;
+import com.example.orderservice.messaging.OutboxRelay;
 import jakarta.inject.Inject;
 import jakarta.ws.rs.*;
 import jakarta.ws.rs.core.MediaType;
@@ -14,6 +15,9 @@ public class TestController {
     @Inject
     private NotificationSender notificationSender;
 
+    @Inject
+    private OutboxRelay outboxRelay;
+
     @POST
     @Path("/payment-failure")
     public Response testPaymentFailure(
@@ -31,4 +35,10 @@ public class TestController {
                     .entity("Error sending notification: " + e.getMessage()).build();
         }
     }
+
+    @GET
+    @Path("/outbox-metrics")
+    public Response outboxMetrics() {
+        return Response.ok(outboxRelay.getMetrics()).build();
+    }
 }
@@ -0,0 +1,24 @@
+package com.example.orderservice.dto;
+
+import java.util.List;
+
+public class CompanyOrderPage {
+    private List<CompanyOrderDTO> orders;
+    // Pass as cursor to get the next page; null on the last page
+    private String nextCursor;
+
+    public CompanyOrderPage() {
+    }
+
+    public CompanyOrderPage(List<CompanyOrderDTO> orders, String nextCursor) {
+        this.orders = orders;
+        this.nextCursor = nextCursor;
+    }
+
+    // Getters and setters
+    public List<CompanyOrderDTO> getOrders() { return orders; }
+    public void setOrders(List<CompanyOrderDTO> orders) { this.orders = orders; }
+
+    public String getNextCursor() { return nextCursor; }
+    public void setNextCursor(String nextCursor) { this.nextCursor = nextCursor; }
+}
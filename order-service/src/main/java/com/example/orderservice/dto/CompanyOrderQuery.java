@@ -0,0 +1,95 @@
+package com.example.orderservice.dto;
+
+import jakarta.ws.rs.QueryParam;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeParseException;
+
+/**
+ * Paging and date filters of /orders/byCompany, bound with @BeanParam. Pages go from the
+ * newest order back; the cursor is the nextCursor of the previous page. from and to take an
+ * ISO date or date-time; from is inclusive, to is exclusive, and a plain date as to includes
+ * that whole day.
+ */
+public class CompanyOrderQuery {
+    public static final int DEFAULT_LIMIT = 50;
+    public static final int MAX_LIMIT = 500;
+
+    @QueryParam("limit")
+    private Integer limit;
+
+    @QueryParam("cursor")
+    private String cursor;
+
+    @QueryParam("from")
+    private String from;
+
+    @QueryParam("to")
+    private String to;
+
+    /**
+     * True when no parameter was given, in which case the endpoint keeps returning the plain
+     * list of all the company's orders.
+     */
+    public boolean isUnpaged() {
+        return limit == null && cursor == null && from == null && to == null;
+    }
+
+    public int getEffectiveLimit() {
+        if (limit == null || limit <= 0) {
+            return DEFAULT_LIMIT;
+        }
+        return Math.min(limit, MAX_LIMIT);
+    }
+
+    /**
+     * Id below which the page starts, Long.MAX_VALUE for the first page.
+     */
+    public long getBeforeId() {
+        if (cursor == null || cursor.isEmpty()) {
+            return Long.MAX_VALUE;
+        }
+        try {
+            return Long.parseLong(cursor);
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Invalid cursor");
+        }
+    }
+
+    public LocalDateTime getFromTime() {
+        return parse(from, false);
+    }
+
+    public LocalDateTime getToTime() {
+        return parse(to, true);
+    }
+
+    private static LocalDateTime parse(String value, boolean endOfDay) {
+        if (value == null || value.isEmpty()) {
+            return null;
+        }
+        try {
+            if (value.length() == 10) {
+                LocalDate date = LocalDate.parse(value);
+                return endOfDay ? date.plusDays(1).atStartOfDay() : date.atStartOfDay();
+            }
+            return LocalDateTime.parse(value);
+        } catch (DateTimeParseException e) {
+            throw new IllegalArgumentException("Invalid date " + value);
+        }
+    }
+
+    // Getters and setters
+    public Integer getLimit() { return limit; }
+    public void setLimit(Integer limit) { this.limit = limit; }
+
+    public String getCursor() { return cursor; }
+    public void setCursor(String cursor) { this.cursor = cursor; }
+
+    public String getFrom() { return from; }
+    public void setFrom(String from) { this.from = from; }
+
+    public String getTo() { return to; }
+    public void setTo(String to) { this.to = to; }
+}
@@ -0,0 +1,20 @@
+package com.example.orderservice.dto;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.List;
+
+public class StockCheckBatch implements Serializable {
+    private List<StockCheckRequest> requests = new ArrayList<>();
+
+    // Default constructor for serialization
+    public StockCheckBatch() {}
+
+    public StockCheckBatch(List<StockCheckRequest> requests) {
+        this.requests = requests;
+    }
+
+    // Getters and setters
+    public List<StockCheckRequest> getRequests() { return requests; }
+    public void setRequests(List<StockCheckRequest> requests) { this.requests = requests; }
+}
@@ -0,0 +1,20 @@
+package com.example.orderservice.dto;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.List;
+
+public class StockConfirmationBatch implements Serializable {
+    private List<StockConfirmationResponse> responses = new ArrayList<>();
+
+    // Default constructor for serialization
+    public StockConfirmationBatch() {}
+
+    public StockConfirmationBatch(List<StockConfirmationResponse> responses) {
+        this.responses = responses;
+    }
+
+    // Getters and setters
+    public List<StockConfirmationResponse> getResponses() { return responses; }
+    public void setResponses(List<StockConfirmationResponse> responses) { this.responses = responses; }
+}
@@ -1,12 +1,13 @@
 package com.example.orderservice.messaging;
 
+import com.example.orderservice.codec.NotificationEvent;
 import com.example.orderservice.config.RabbitMQConfig;
-import com.rabbitmq.client.Channel;
+import com.example.orderservice.repository.OutboxRepository;
+import com.rabbitmq.client.AMQP;
 import jakarta.ejb.Stateless;
 import jakarta.inject.Inject;
 
 import java.io.IOException;
-import java.nio.charset.StandardCharsets;
 
 /**
  * Service for sending notifications via RabbitMQ
@@ -16,55 +17,61 @@ public class NotificationSender {
 
     @Inject
     private RabbitMQConfig rabbitMQConfig;
+
+    @Inject
+    private OutboxRepository outboxRepository;
+
+    private static final AMQP.BasicProperties NOTIFICATION_EVENT_PROPERTIES = new AMQP.BasicProperties.Builder()
+            .contentType(NotificationEvent.CONTENT_TYPE)
+            .build();
     
 
     public void sendOrderConfirmation(Long orderId, String status, Long userId) {
-        try {
-            String message = orderId + ":" + status + ":" + userId;
+        NotificationEvent event = NotificationEvent.orderStatus(orderId, status, userId);
 
-            rabbitMQConfig.getChannel().basicPublish(
-                    "",
-                    RabbitMQConfig.USER_ORDER_CONFIRMATION_QUEUE,  // Use the correct queue
-                    null,
-                    message.getBytes(StandardCharsets.UTF_8)
-            );
-            
-            System.out.println("Sent order confirmation: " + message);
-        } catch (IOException e) {
-            System.err.println("Failed to send order confirmation: " + e.getMessage());
-        }
+        // Published by the outbox relay once the caller's transaction commits
+        outboxRepository.enqueue(
+                "",
+                RabbitMQConfig.USER_ORDER_CONFIRMATION_QUEUE,  // Use the correct queue
+                null,
+                NotificationEvent.CONTENT_TYPE,
+                event.encode()
+        );
+
+        System.out.println("Queued order confirmation: " + event);
     }
 
     public void sendPaymentFailure(Long orderId, String reason) {
-        try {
-            String message = orderId + ":" + reason;
+        NotificationEvent event = NotificationEvent.paymentFailed(orderId, reason);
 
-            rabbitMQConfig.getChannel().basicPublish(
-                    RabbitMQConfig.PAYMENTS_EXCHANGE,
-                    "PaymentFailed",
-                    null,
-                    message.getBytes(StandardCharsets.UTF_8)
-            );
-            
-            System.out.println("Sent payment failure notification: " + message);
-        } catch (IOException e) {
-            System.err.println("Failed to send payment failure notification: " + e.getMessage());
-        }
+        outboxRepository.enqueue(
+                RabbitMQConfig.PAYMENTS_EXCHANGE,
+                "PaymentFailed",
+                null,
+                NotificationEvent.CONTENT_TYPE,
+                event.encode()
+        );
+
+        System.out.println("Queued payment failure notification: " + event);
     }
 
+    /**
+     * Log messages skip the outbox: they are published straight away and must not be
+     * rolled back together with a failing transaction.
+     */
     public void sendLogMessage(String service, String severity, String message) {
         try {
             String routingKey = service + "_" + severity;
-            String logMessage = routingKey + ":" + message;
+            NotificationEvent event = NotificationEvent.log(service, severity, message);
 
-            rabbitMQConfig.getChannel().basicPublish(
+            rabbitMQConfig.publish(
                 RabbitMQConfig.ADMIN_LOG_EXCHANGE,  // Exchange
                 routingKey,  // Routing key
-                null,
-                logMessage.getBytes(StandardCharsets.UTF_8)
+                NOTIFICATION_EVENT_PROPERTIES,
+                event.encode()
             );
             
-            System.out.println("Sent log message: " + logMessage);
+            System.out.println("Sent log message: " + event);
         } catch (IOException e) {
             System.err.println("Failed to send log message: " + e.getMessage());
         }
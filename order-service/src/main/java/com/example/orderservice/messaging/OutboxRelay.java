@@ -0,0 +1,197 @@
+package com.example.orderservice.messaging;
+
+import com.example.orderservice.codec.MessageCodec;
+import com.example.orderservice.config.PublisherChannelPool;
+import com.example.orderservice.config.RabbitMQConfig;
+import com.example.orderservice.dto.StockCheckBatch;
+import com.example.orderservice.dto.StockCheckRequest;
+import com.example.orderservice.model.OutboxMessage;
+import com.example.orderservice.repository.OutboxRepository;
+import com.rabbitmq.client.AMQP;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import jakarta.annotation.Resource;
+import jakarta.ejb.ConcurrencyManagement;
+import jakarta.ejb.ConcurrencyManagementType;
+import jakarta.ejb.Singleton;
+import jakarta.ejb.Startup;
+import jakarta.inject.Inject;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Drains the outbox table to RabbitMQ. Each run takes up to a batch of the oldest rows,
+ * publishes them on one channel, waits for the broker to confirm them and only then deletes
+ * the rows. A crash or broker failure in between leaves the rows in place, so every message
+ * is delivered at least once. A row that cannot be published while the rest can is parked
+ * after a few runs (see OutboxRepository.relayBatch).
+ *
+ * Stock checks of the same batch are sent together as one StockCheckBatch message.
+ */
+@Singleton
+@Startup
+@ConcurrencyManagement(ConcurrencyManagementType.BEAN)
+public class OutboxRelay {
+
+    // Override with -Doutbox.relay.interval.ms / -Doutbox.relay.batch.size / -Dstock.check.batch.size
+    private static final long INTERVAL_MILLIS = Long.getLong("outbox.relay.interval.ms", 50);
+    private static final int BATCH_SIZE = Integer.getInteger("outbox.relay.batch.size", 500);
+    private static final int STOCK_CHECKS_PER_MESSAGE = Integer.getInteger("stock.check.batch.size", 100);
+    private static final long CONFIRM_TIMEOUT_MILLIS = 5000;
+    private static final long METRICS_INTERVAL_SECONDS = 60;
+
+    @Inject
+    private OutboxRepository outboxRepository;
+
+    @Inject
+    private RabbitMQConfig rabbitMQConfig;
+
+    @Resource(lookup = "java:comp/DefaultManagedScheduledExecutorService")
+    private ScheduledExecutorService scheduler;
+
+    private ScheduledFuture<?> relayTask;
+    private ScheduledFuture<?> metricsTask;
+
+    private final AtomicLong relayedMessages = new AtomicLong();
+    private final AtomicLong publishedMessages = new AtomicLong();
+    private final AtomicLong relayedBatches = new AtomicLong();
+    private final AtomicLong failedBatches = new AtomicLong();
+    private final AtomicLong relayNanos = new AtomicLong();
+    private long lastReportedMessages;
+
+    @PostConstruct
+    public void start() {
+        relayTask = scheduler.scheduleWithFixedDelay(this::drain, INTERVAL_MILLIS, INTERVAL_MILLIS, TimeUnit.MILLISECONDS);
+        metricsTask = scheduler.scheduleAtFixedRate(this::reportMetrics,
+                METRICS_INTERVAL_SECONDS, METRICS_INTERVAL_SECONDS, TimeUnit.SECONDS);
+    }
+
+    /**
+     * Relays batches until the outbox holds less than a full batch.
+     */
+    public void drain() {
+        try {
+            int relayed;
+            do {
+                long start = System.nanoTime();
+                relayed = outboxRepository.relayBatch(BATCH_SIZE, this::publish);
+                if (relayed > 0) {
+                    relayNanos.addAndGet(System.nanoTime() - start);
+                    relayedMessages.addAndGet(relayed);
+                    relayedBatches.incrementAndGet();
+                }
+            } while (relayed == BATCH_SIZE);
+        } catch (Exception e) {
+            // The rows stay in the outbox and are picked up by the next run
+            failedBatches.incrementAndGet();
+            System.err.println("\u001B[31m Outbox relay failed: " + e.getMessage() + " \u001B[0m");
+        }
+    }
+
+    private void publish(List<OutboxMessage> batch) throws IOException {
+        List<PublisherChannelPool.OutgoingMessage> outgoing = new ArrayList<>();
+        List<StockCheckRequest> stockChecks = new ArrayList<>();
+
+        for (OutboxMessage message : batch) {
+            if (isStockCheck(message)) {
+                // Rows keep the codec they were written with, so a codec switch never strands them
+                MessageCodec codec = rabbitMQConfig.getCodecs().forContentType(message.getContentType());
+                try {
+                    stockChecks.add(codec.decode(message.getPayload(), StockCheckRequest.class));
+                } catch (IOException e) {
+                    // Not a broker failure: the row itself is unusable, so the outbox parks it
+                    throw new IllegalArgumentException("Unreadable stock check in outbox message " +
+                            message.getId() + ": " + e.getMessage(), e);
+                }
+                continue;
+            }
+            AMQP.BasicProperties properties = null;
+            if (message.getMessageType() != null || message.getContentType() != null) {
+                properties = new AMQP.BasicProperties.Builder()
+                        .type(message.getMessageType())
+                        .contentType(message.getContentType())
+                        .build();
+            }
+            outgoing.add(new PublisherChannelPool.OutgoingMessage(
+                    message.getExchange(), message.getRoutingKey(), properties, message.getPayload()));
+        }
+
+        for (int from = 0; from < stockChecks.size(); from += STOCK_CHECKS_PER_MESSAGE) {
+            List<StockCheckRequest> chunk = stockChecks.subList(from, Math.min(from + STOCK_CHECKS_PER_MESSAGE, stockChecks.size()));
+            outgoing.add(stockCheckMessage(chunk));
+        }
+
+        rabbitMQConfig.publishConfirmed(outgoing, CONFIRM_TIMEOUT_MILLIS);
+        publishedMessages.addAndGet(outgoing.size());
+    }
+
+    private static boolean isStockCheck(OutboxMessage message) {
+        return message.getMessageType() == null
+                && message.getExchange().isEmpty()
+                && RabbitMQConfig.ORDER_STOCK_CHECK_QUEUE.equals(message.getRoutingKey());
+    }
+
+    private PublisherChannelPool.OutgoingMessage stockCheckMessage(List<StockCheckRequest> requests) throws IOException {
+        MessageCodec codec = rabbitMQConfig.getCodecs().preferred();
+
+        // A lone request is still sent as a plain StockCheckRequest
+        if (requests.size() == 1) {
+            AMQP.BasicProperties properties = new AMQP.BasicProperties.Builder()
+                    .contentType(codec.contentType())
+                    .build();
+            return new PublisherChannelPool.OutgoingMessage("", RabbitMQConfig.ORDER_STOCK_CHECK_QUEUE, properties,
+                    codec.encode(requests.get(0)));
+        }
+        AMQP.BasicProperties properties = new AMQP.BasicProperties.Builder()
+                .type(RabbitMQConfig.STOCK_CHECK_BATCH_TYPE)
+                .contentType(codec.contentType())
+                .build();
+        return new PublisherChannelPool.OutgoingMessage("", RabbitMQConfig.ORDER_STOCK_CHECK_QUEUE, properties,
+                codec.encode(new StockCheckBatch(new ArrayList<>(requests))));
+    }
+
+    /**
+     * Relay counters since startup, for monitoring.
+     */
+    public Map<String, Object> getMetrics() {
+        long messages = relayedMessages.get();
+        long batches = relayedBatches.get();
+        double seconds = relayNanos.get() / 1_000_000_000.0;
+
+        Map<String, Object> metrics = new LinkedHashMap<>();
+        metrics.put("relayedMessages", messages);
+        metrics.put("publishedMessages", publishedMessages.get());
+        metrics.put("relayedBatches", batches);
+        metrics.put("failedBatches", failedBatches.get());
+        metrics.put("averageBatchSize", batches == 0 ? 0.0 : (double) messages / batches);
+        metrics.put("messagesPerSecond", seconds == 0 ? 0.0 : messages / seconds);
+        return metrics;
+    }
+
+    private void reportMetrics() {
+        long messages = relayedMessages.get();
+        if (messages == lastReportedMessages) {
+            return;
+        }
+        lastReportedMessages = messages;
+        System.out.println("\u001B[36m Outbox relay: " + getMetrics() + " \u001B[0m");
+    }
+
+    @PreDestroy
+    public void stop() {
+        if (metricsTask != null) {
+            metricsTask.cancel(false);
+        }
+        if (relayTask != null) {
+            relayTask.cancel(false);
+        }
+    }
+}
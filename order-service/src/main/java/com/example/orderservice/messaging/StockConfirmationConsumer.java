@@ -0,0 +1,198 @@
+package com.example.orderservice.messaging;
+
+import com.example.orderservice.codec.MessageCodec;
+import com.example.orderservice.config.QueueTopology;
+import com.example.orderservice.config.RabbitMQConfig;
+import com.example.orderservice.dto.StockConfirmationBatch;
+import com.example.orderservice.dto.StockConfirmationResponse;
+import com.example.orderservice.repository.ProcessedMessageRepository;
+import com.example.orderservice.service.OrderService;
+import com.rabbitmq.client.Channel;
+import com.rabbitmq.client.Delivery;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import jakarta.annotation.Resource;
+import jakarta.ejb.ConcurrencyManagement;
+import jakarta.ejb.ConcurrencyManagementType;
+import jakarta.ejb.Singleton;
+import jakarta.ejb.Startup;
+import jakarta.inject.Inject;
+
+import java.io.IOException;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Consumes the stock confirmations product-service sends back, acking each message only
+ * once the order changes it carries are committed. A crash in between redelivers it, and a
+ * message that fails is retried after a growing delay and then parked (see QueueTopology).
+ *
+ * Redeliveries are recognised by message id: ids acked recently are kept in memory, and
+ * every id is recorded in the processed_messages table in the same transaction as the order
+ * changes, so a copy that arrives after a restart or at another instance is skipped as well.
+ * Order transitions are also guarded by the current status, which covers messages without
+ * an id. That makes it safe to run several consumers, here and in other instances.
+ */
+@Singleton
+@Startup
+@ConcurrencyManagement(ConcurrencyManagementType.BEAN)
+public class StockConfirmationConsumer {
+
+    // Override with -Dstock.confirmation.consumers / -Dstock.confirmation.prefetch
+    private static final int CONSUMERS = Integer.getInteger("stock.confirmation.consumers", 2);
+    private static final int PREFETCH = Integer.getInteger("stock.confirmation.prefetch", 50);
+    // Message ids remembered in memory; older ones are still found in the table
+    private static final int RECENT_IDS = Integer.getInteger("stock.confirmation.recent-ids", 10000);
+    // How long processed_messages rows are kept, well beyond any redelivery
+    private static final long RETENTION_HOURS = Long.getLong("processed.messages.retention.hours", 24);
+    // Override with -Dstock.confirmation.confirm-timeout.ms
+    private static final long CONFIRM_TIMEOUT_MILLIS = Long.getLong("stock.confirmation.confirm-timeout.ms", 5000);
+
+    @Inject
+    private RabbitMQConfig rabbitMQConfig;
+
+    @Inject
+    private OrderService orderService;
+
+    @Inject
+    private ProcessedMessageRepository processedMessageRepository;
+
+    @Resource(lookup = "java:comp/DefaultManagedScheduledExecutorService")
+    private ScheduledExecutorService scheduler;
+
+    private final List<Channel> channels = new ArrayList<>();
+    private ScheduledFuture<?> cleanupTask;
+
+    private final Map<String, Boolean> recentIds = Collections.synchronizedMap(
+            new LinkedHashMap<>(1024, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<String, Boolean> eldest) {
+                    return size() > RECENT_IDS;
+                }
+            });
+
+    @PostConstruct
+    public void start() {
+        try {
+            System.out.println("\u001B[33m Setting up consumer for queue: " + RabbitMQConfig.STOCK_CONFIRMATION_QUEUE + " \u001B[0m");
+            for (int i = 0; i < CONSUMERS; i++) {
+                channels.add(startConsumer());
+            }
+            System.out.println("\u001B[32m Started " + CONSUMERS + " stock confirmation consumer(s) with prefetch " +
+                    PREFETCH + " \u001B[0m");
+        } catch (IOException e) {
+            System.err.println("\u001B[31m Failed to set up RabbitMQ consumer: " + e.getMessage() + " \u001B[0m");
+            throw new RuntimeException("Failed to set up RabbitMQ consumer", e);
+        }
+        cleanupTask = scheduler.scheduleWithFixedDelay(this::deleteExpired, 1, 1, TimeUnit.HOURS);
+    }
+
+    private Channel startConsumer() throws IOException {
+        Channel channel = rabbitMQConfig.createChannel();
+        channel.basicQos(PREFETCH);
+        // Retries are confirmed before the original is acked, so a lost retry means a redelivery
+        channel.confirmSelect();
+        channel.basicConsume(RabbitMQConfig.STOCK_CONFIRMATION_QUEUE, false,
+                (consumerTag, delivery) -> handle(channel, delivery),
+                consumerTag -> System.err.println("\u001B[31m Consumer cancelled: " + consumerTag + " \u001B[0m"));
+        return channel;
+    }
+
+    private void handle(Channel channel, Delivery delivery) throws IOException {
+        long deliveryTag = delivery.getEnvelope().getDeliveryTag();
+        String messageId = delivery.getProperties().getMessageId();
+        String contentType = delivery.getProperties().getContentType();
+        System.out.println("\u001B[34m Received stock confirmation message " + messageId + ": " + delivery.getBody().length +
+                " bytes of " + (contentType != null ? contentType : "application/json") + " \u001B[0m");
+
+        if (messageId != null && recentIds.containsKey(messageId)) {
+            System.out.println("\u001B[33m Stock confirmation " + messageId + " was already processed \u001B[0m");
+            channel.basicAck(deliveryTag, false);
+            return;
+        }
+
+        List<StockConfirmationResponse> responses;
+        try {
+            // Decode straight from the body with the codec the sender used
+            MessageCodec codec = rabbitMQConfig.getCodecs().forContentType(contentType);
+            if (RabbitMQConfig.STOCK_CONFIRMATION_BATCH_TYPE.equals(delivery.getProperties().getType())) {
+                responses = codec.decode(delivery.getBody(), StockConfirmationBatch.class).getResponses();
+            } else {
+                responses = List.of(codec.decode(delivery.getBody(), StockConfirmationResponse.class));
+            }
+        } catch (Exception e) {
+            // Reading it again will not go any better; rejecting dead-letters it to the parking lot
+            System.err.println("\u001B[31m Parking unreadable stock confirmation: " + e.getMessage() + " \u001B[0m");
+            channel.basicReject(deliveryTag, false);
+            return;
+        }
+
+        try {
+            if (!orderService.applyStockConfirmations(messageId, responses)) {
+                System.out.println("\u001B[33m Stock confirmation " + messageId + " was already processed \u001B[0m");
+            }
+            if (messageId != null) {
+                recentIds.put(messageId, Boolean.TRUE);
+            }
+            channel.basicAck(deliveryTag, false);
+        } catch (Exception e) {
+            // Nothing was committed; try again after a delay without holding up the queue
+            System.err.println("\u001B[31m Failed to process stock confirmation " + messageId + ": " + e.getMessage() + " \u001B[0m");
+            QueueTopology.retry(channel, RabbitMQConfig.STOCK_CONFIRMATION_QUEUE, delivery.getProperties(), delivery.getBody());
+            if (awaitConfirms(channel)) {
+                channel.basicAck(deliveryTag, false);
+            } else {
+                channel.basicNack(deliveryTag, false, true);
+            }
+        }
+    }
+
+    private static boolean awaitConfirms(Channel channel) {
+        try {
+            if (channel.waitForConfirms(CONFIRM_TIMEOUT_MILLIS)) {
+                return true;
+            }
+            System.err.println("\u001B[31m Broker rejected a stock confirmation retry, requeueing the message \u001B[0m");
+        } catch (TimeoutException e) {
+            System.err.println("\u001B[31m Stock confirmation retry not confirmed in time, requeueing the message \u001B[0m");
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        return false;
+    }
+
+    private void deleteExpired() {
+        try {
+            int deleted = processedMessageRepository.deleteBefore(LocalDateTime.now().minusHours(RETENTION_HOURS));
+            if (deleted > 0) {
+                System.out.println("\u001B[36m Removed " + deleted + " expired processed message id(s) \u001B[0m");
+            }
+        } catch (Exception e) {
+            System.err.println("\u001B[31m Failed to remove expired processed message ids: " + e.getMessage() + " \u001B[0m");
+        }
+    }
+
+    @PreDestroy
+    public void stop() {
+        if (cleanupTask != null) {
+            cleanupTask.cancel(false);
+        }
+        for (Channel channel : channels) {
+            try {
+                if (channel.isOpen()) {
+                    channel.close();
+                }
+            } catch (Exception e) {
+                System.err.println("\u001B[31m Failed to close consumer channel: " + e.getMessage() + " \u001B[0m");
+            }
+        }
+    }
+}
@@ -1,6 +1,8 @@
 package com.example.orderservice.model;
 
 import jakarta.persistence.*;
+import org.hibernate.annotations.BatchSize;
+
 import java.io.Serializable;
 import java.util.ArrayList;
 import java.util.List;
@@ -16,8 +18,14 @@ public class Cart implements Serializable {
     @Column(nullable = false)
     private Long userId;
 
-    @OneToMany(cascade = CascadeType.ALL, fetch = FetchType.EAGER, orphanRemoval = true)
+    // Lets CartStore notice that another instance wrote the cart since it was read
+    @Version
+    private long version;
+
+    // CartRepository fetches it with the cart, since the cart lives on detached in the session
+    @OneToMany(cascade = CascadeType.ALL, fetch = FetchType.LAZY, orphanRemoval = true)
     @JoinColumn(name = "cart_id")
+    @BatchSize(size = 50)
     private List<OrderDish> dishes = new ArrayList<>();
 
     public Cart() {
@@ -30,6 +38,8 @@ public class Cart implements Serializable {
     public Long getUserId() { return userId; }
     public void setUserId(Long userId) { this.userId = userId; }
 
+    public long getVersion() { return version; }
+    public void setVersion(long version) { this.version = version; }
 
     public List<OrderDish> getDishes() { return dishes; }
     public void setDishes(List<OrderDish> dishes) { this.dishes = dishes; }
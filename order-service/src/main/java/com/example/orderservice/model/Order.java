@@ -1,6 +1,8 @@
 package com.example.orderservice.model;
 
 import jakarta.persistence.*;
+import org.hibernate.annotations.BatchSize;
+
 import java.time.LocalDateTime;
 import java.util.ArrayList;
 import java.util.List;
@@ -14,10 +16,14 @@ import java.util.List;
                 query = "SELECT o FROM Order o WHERE o.status = :status"),
         @NamedQuery(name = "Order.findById",
                 query = "SELECT o FROM Order o WHERE o.id = :id"),
-        @NamedQuery(name = "Order.findByCompanyName",
-                query = "SELECT o FROM Order o JOIN o.dishes d WHERE d.companyName = :companyName")
+        @NamedQuery(name = "Order.transition",
+                query = "UPDATE Order o SET o.status = :to WHERE o.id = :id AND o.status = :from")
 })
+// Fetch plan for reads that hand the order, dishes included, to the client
+@NamedEntityGraph(name = Order.WITH_DISHES, attributeNodes = @NamedAttributeNode("dishes"))
 public class Order {
+    public static final String WITH_DISHES = "Order.withDishes";
+
     @Id
     @GeneratedValue(strategy = GenerationType.IDENTITY)
     private Long id;
@@ -25,8 +31,10 @@ public class Order {
     @Column(nullable = false)
     private Long userId;
 
-    @OneToMany(cascade = CascadeType.ALL, fetch = FetchType.EAGER, orphanRemoval = true)
+    // Loaded through the WITH_DISHES graph where needed; anything else touching it loads many orders' dishes at once
+    @OneToMany(cascade = CascadeType.ALL, fetch = FetchType.LAZY, orphanRemoval = true)
     @JoinColumn(name = "order_id")
+    @BatchSize(size = 50)
     private List<OrderDish> dishes = new ArrayList<>();
 
     @Enumerated(EnumType.STRING)
@@ -3,7 +3,10 @@ package com.example.orderservice.model;
 import jakarta.persistence.*;
 
 @Entity
-@Table(name = "order_dishes")
+@Table(name = "order_dishes", indexes = {
+        // Company order listings start from a restaurant's dish lines
+        @Index(name = "idx_order_dishes_company", columnList = "companyName")
+})
 public class OrderDish {
     @Id
     @GeneratedValue(strategy = GenerationType.IDENTITY)
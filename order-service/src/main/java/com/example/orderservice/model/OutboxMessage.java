@@ -0,0 +1,90 @@
+package com.example.orderservice.model;
+
+import jakarta.persistence.*;
+import java.time.LocalDateTime;
+
+/**
+ * A message waiting to be published to RabbitMQ. Rows are written in the same transaction
+ * as the state change they announce and removed by the relay once the broker confirms them.
+ * A row that keeps failing on its own is parked: it stays in the table for inspection but
+ * is no longer relayed.
+ */
+@Entity
+@Table(name = "outbox")
+@NamedQueries({
+        @NamedQuery(name = "OutboxMessage.findOldest",
+                query = "SELECT m FROM OutboxMessage m WHERE m.parked = false ORDER BY m.id"),
+        @NamedQuery(name = "OutboxMessage.deleteByIds",
+                query = "DELETE FROM OutboxMessage m WHERE m.id IN :ids")
+})
+public class OutboxMessage {
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    @Column(nullable = false)
+    private String exchange;
+
+    @Column(nullable = false)
+    private String routingKey;
+
+    // AMQP type property, null for plain messages
+    private String messageType;
+
+    // AMQP content-type property, null for plain text
+    private String contentType;
+
+    @Lob
+    @Column(nullable = false)
+    private byte[] payload;
+
+    @Column(nullable = false)
+    private LocalDateTime createdAt;
+
+    // Relay runs in which this row failed while others got through
+    @Column(nullable = false)
+    private int attempts;
+
+    @Column(nullable = false)
+    private boolean parked;
+
+    public OutboxMessage() {
+    }
+
+    public OutboxMessage(String exchange, String routingKey, String messageType, String contentType, byte[] payload) {
+        this.exchange = exchange;
+        this.routingKey = routingKey;
+        this.messageType = messageType;
+        this.contentType = contentType;
+        this.payload = payload;
+        this.createdAt = LocalDateTime.now();
+    }
+
+    // Getters and setters
+    public Long getId() { return id; }
+    public void setId(Long id) { this.id = id; }
+
+    public String getExchange() { return exchange; }
+    public void setExchange(String exchange) { this.exchange = exchange; }
+
+    public String getRoutingKey() { return routingKey; }
+    public void setRoutingKey(String routingKey) { this.routingKey = routingKey; }
+
+    public String getMessageType() { return messageType; }
+    public void setMessageType(String messageType) { this.messageType = messageType; }
+
+    public String getContentType() { return contentType; }
+    public void setContentType(String contentType) { this.contentType = contentType; }
+
+    public byte[] getPayload() { return payload; }
+    public void setPayload(byte[] payload) { this.payload = payload; }
+
+    public LocalDateTime getCreatedAt() { return createdAt; }
+    public void setCreatedAt(LocalDateTime createdAt) { this.createdAt = createdAt; }
+
+    public int getAttempts() { return attempts; }
+    public void setAttempts(int attempts) { this.attempts = attempts; }
+
+    public boolean isParked() { return parked; }
+    public void setParked(boolean parked) { this.parked = parked; }
+}
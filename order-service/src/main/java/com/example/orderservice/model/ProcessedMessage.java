@@ -0,0 +1,37 @@
+package com.example.orderservice.model;
+
+import jakarta.persistence.*;
+import java.time.LocalDateTime;
+
+/**
+ * Id of a consumed message whose effects were committed. Rows are written in the same
+ * transaction as those effects, so a redelivered copy of the message is recognised, and
+ * removed once they are older than any redelivery could be.
+ */
+@Entity
+@Table(name = "processed_messages", indexes = {
+        @Index(name = "idx_processed_messages_processed_at", columnList = "processedAt")
+})
+@NamedQueries({
+        @NamedQuery(name = "ProcessedMessage.deleteBefore",
+                query = "DELETE FROM ProcessedMessage m WHERE m.processedAt < :before")
+})
+public class ProcessedMessage {
+    @Id
+    @Column(length = 64)
+    private String messageId;
+
+    @Column(nullable = false)
+    private LocalDateTime processedAt;
+
+    public ProcessedMessage() {
+    }
+
+    public ProcessedMessage(String messageId) {
+        this.messageId = messageId;
+        this.processedAt = LocalDateTime.now();
+    }
+
+    public String getMessageId() { return messageId; }
+    public LocalDateTime getProcessedAt() { return processedAt; }
+}
@@ -15,7 +15,7 @@ public class CartRepository implements Serializable {
 
     public Cart findByUserId(Long userId) {
         try {
-            return entityManager.createQuery("SELECT c FROM Cart c WHERE c.userId = :userId", Cart.class)
+            return entityManager.createQuery("SELECT c FROM Cart c LEFT JOIN FETCH c.dishes WHERE c.userId = :userId", Cart.class)
                     .setParameter("userId", userId)
                     .getSingleResult();
         } catch (NoResultException e) {
@@ -29,6 +29,8 @@ public class CartRepository implements Serializable {
         } else {
             cart = entityManager.merge(cart);
         }
+        // Surfaces a stale version here and puts the new version and dish ids on the returned cart
+        entityManager.flush();
         return cart;
     }
 
@@ -3,15 +3,17 @@ package com.example.orderservice.repository;
 import com.example.orderservice.dto.CompanyOrderDTO;
 import com.example.orderservice.model.Order;
 import com.example.orderservice.model.OrderDish;
+import com.example.orderservice.model.OrderStatus;
 import jakarta.ejb.Stateless;
 import jakarta.persistence.EntityManager;
 import jakarta.persistence.PersistenceContext;
 import jakarta.persistence.TypedQuery;
 
+import java.time.LocalDateTime;
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.stream.Collectors;
 
 @Stateless
 public class OrderRepository {
@@ -22,6 +24,14 @@ public class OrderRepository {
         return entityManager.find(Order.class, id);
     }
 
+    /**
+     * The order with its dishes loaded in the same select, for returning it to clients.
+     */
+    public Order findWithDishes(Long id) {
+        return entityManager.find(Order.class, id,
+                Map.of("jakarta.persistence.fetchgraph", entityManager.getEntityGraph(Order.WITH_DISHES)));
+    }
+
     public Order save(Order order) {
         if (order.getId() == null) {
             entityManager.persist(order);
@@ -31,40 +41,104 @@ public class OrderRepository {
         return order;
     }
 
-    public List<CompanyOrderDTO> findByCompanyName(String companyName) {
-        // First, get all orders that have at least one dish from the company
-        TypedQuery<Order> query = entityManager.createNamedQuery("Order.findByCompanyName", Order.class)
-                .setParameter("companyName", companyName);
+    /**
+     * Moves the order from one status to another in a single update. Returns false, changing
+     * nothing, when the order is no longer in the expected status.
+     */
+    public boolean transition(Long id, OrderStatus from, OrderStatus to) {
+        return entityManager.createNamedQuery("Order.transition")
+                .setParameter("id", id)
+                .setParameter("from", from)
+                .setParameter("to", to)
+                .executeUpdate() == 1;
+    }
 
-        List<Order> orders = query.getResultList();
+    public List<CompanyOrderDTO> findByCompanyName(String companyName) {
+        return findCompanyOrders(companyName, Long.MAX_VALUE, null, null, 0);
+    }
 
-        // Transform Order entities to CompanyOrderDTOs with only relevant dishes
-        List<CompanyOrderDTO> dtos = new ArrayList<>();
+    /**
+     * Orders containing dishes of the company, newest first, each with only that company's
+     * dishes. Built from two projection queries, one for the orders and one for their dish
+     * lines, so no Order entity and no other company's dishes are loaded.
+     *
+     * @param beforeId   only orders with a smaller id, for keyset paging
+     * @param from       inclusive lower bound on createdAt, or null
+     * @param to         exclusive upper bound on createdAt, or null
+     * @param maxResults page size, 0 for all
+     */
+    public List<CompanyOrderDTO> findCompanyOrders(String companyName, long beforeId, LocalDateTime from,
+                                                   LocalDateTime to, int maxResults) {
+        List<String> conditions = new ArrayList<>();
+        conditions.add("d.companyName = :companyName");
+        if (from != null) {
+            conditions.add("o.createdAt >= :from");
+        }
+        if (to != null) {
+            conditions.add("o.createdAt < :to");
+        }
+        String where = String.join(" AND ", conditions);
 
-        for (Order order : orders) {
-            CompanyOrderDTO dto = new CompanyOrderDTO(
-                    order.getId(),
-                    order.getUserId(),
-                    order.getStatus(),
-                    order.getCreatedAt(),
-                    companyName
-            );
+        TypedQuery<Object[]> orderQuery = entityManager.createQuery(
+                "SELECT DISTINCT o.id, o.userId, o.status, o.createdAt " +
+                        "FROM Order o JOIN o.dishes d WHERE " + where + " AND o.id < :beforeId ORDER BY o.id DESC",
+                Object[].class);
+        bind(orderQuery, companyName, from, to).setParameter("beforeId", beforeId);
+        if (maxResults > 0) {
+            orderQuery.setMaxResults(maxResults);
+        }
+        List<CompanyOrderDTO> orders = new ArrayList<>();
+        for (Object[] row : orderQuery.getResultList()) {
+            orders.add(new CompanyOrderDTO((Long) row[0], (Long) row[1], (OrderStatus) row[2],
+                    (LocalDateTime) row[3], companyName));
+        }
+        if (orders.isEmpty()) {
+            return orders;
+        }
 
-            // Filter dishes to include only those from this company
-            List<OrderDish> companyDishes = order.getDishes().stream()
-                    .filter(dish -> companyName.equals(dish.getCompanyName()))
-                    .collect(Collectors.toList());
+        // The page is a contiguous id range of the matching orders, so the same filters over
+        // that range select exactly its dish lines
+        TypedQuery<Object[]> lineQuery = entityManager.createQuery(
+                "SELECT o.id, d.id, d.dishId, d.name, d.companyName, d.price, d.quantity " +
+                        "FROM Order o JOIN o.dishes d WHERE " + where + " AND o.id BETWEEN :lastId AND :firstId",
+                Object[].class);
+        bind(lineQuery, companyName, from, to)
+                .setParameter("firstId", orders.get(0).getId())
+                .setParameter("lastId", orders.get(orders.size() - 1).getId());
 
-            dto.setCompanyDishes(companyDishes);
-            dtos.add(dto);
+        Map<Long, CompanyOrderDTO> byId = new HashMap<>();
+        for (CompanyOrderDTO order : orders) {
+            byId.put(order.getId(), order);
+        }
+        for (Object[] row : lineQuery.getResultList()) {
+            OrderDish dish = new OrderDish((Long) row[2], (String) row[3], (String) row[4], (Double) row[5], (Integer) row[6]);
+            dish.setId((Long) row[1]);
+            byId.get((Long) row[0]).getCompanyDishes().add(dish);
         }
+        return orders;
+    }
 
-        return dtos;
+    private static <T> TypedQuery<T> bind(TypedQuery<T> query, String companyName, LocalDateTime from, LocalDateTime to) {
+        query.setParameter("companyName", companyName);
+        if (from != null) {
+            query.setParameter("from", from);
+        }
+        if (to != null) {
+            query.setParameter("to", to);
+        }
+        return query;
     }
-    
+
     public List<Order> findByUserId(Long userId) {
         TypedQuery<Order> query = entityManager.createNamedQuery("Order.findByUserId", Order.class)
-                .setParameter("userId", userId);
+                .setParameter("userId", userId)
+                .setHint("jakarta.persistence.fetchgraph", entityManager.getEntityGraph(Order.WITH_DISHES));
+        return query.getResultList();
+    }
+
+    public List<Order> findByStatus(OrderStatus status) {
+        TypedQuery<Order> query = entityManager.createNamedQuery("Order.findByStatus", Order.class)
+                .setParameter("status", status);
         return query.getResultList();
     }
 }
\ No newline at end of file
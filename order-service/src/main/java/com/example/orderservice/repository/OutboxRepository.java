@@ -0,0 +1,118 @@
+package com.example.orderservice.repository;
+
+import com.example.orderservice.model.OutboxMessage;
+import jakarta.ejb.Stateless;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.LockModeType;
+import jakarta.persistence.PersistenceContext;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+@Stateless
+public class OutboxRepository {
+    // Hibernate's lock timeout value for SKIP LOCKED
+    private static final int SKIP_LOCKED = -2;
+    // Override with -Doutbox.relay.max-attempts
+    private static final int MAX_ATTEMPTS = Integer.getInteger("outbox.relay.max-attempts", 5);
+
+    @PersistenceContext
+    private EntityManager entityManager;
+
+    public interface BatchPublisher {
+        void publish(List<OutboxMessage> batch) throws IOException;
+    }
+
+    /**
+     * Stores a message in the caller's transaction, so it is only published if that transaction commits.
+     */
+    public void enqueue(String exchange, String routingKey, String messageType, String contentType, byte[] payload) {
+        entityManager.persist(new OutboxMessage(exchange, routingKey, messageType, contentType, payload));
+    }
+
+    /**
+     * Hands the oldest pending messages to the publisher and deletes them once it returns.
+     * The rows stay locked meanwhile so a relay on another instance skips them.
+     *
+     * If the batch fails, its rows are published one at a time, so the ones that can be
+     * relayed still are. A row that fails while others get through, or that the publisher
+     * rejects as unusable (any exception other than IOException), has its attempts counted
+     * and is parked after MAX_ATTEMPTS, so one bad row cannot hold up the outbox. When every
+     * row fails with an IOException the broker is taken to be unavailable: nothing is
+     * counted and the exception is rethrown, and the rows are picked up again on the next run.
+     *
+     * @return the number of messages relayed
+     */
+    public int relayBatch(int maxMessages, BatchPublisher publisher) throws IOException {
+        List<OutboxMessage> batch = entityManager.createNamedQuery("OutboxMessage.findOldest", OutboxMessage.class)
+                .setMaxResults(maxMessages)
+                .setLockMode(LockModeType.PESSIMISTIC_WRITE)
+                .setHint("jakarta.persistence.lock.timeout", SKIP_LOCKED)
+                .getResultList();
+
+        if (batch.isEmpty()) {
+            return 0;
+        }
+
+        List<OutboxMessage> relayed;
+        try {
+            publisher.publish(batch);
+            relayed = batch;
+        } catch (IOException | RuntimeException e) {
+            relayed = relayOneByOne(batch, publisher, e);
+        }
+
+        if (!relayed.isEmpty()) {
+            List<Long> ids = new ArrayList<>(relayed.size());
+            for (OutboxMessage message : relayed) {
+                ids.add(message.getId());
+            }
+            entityManager.createNamedQuery("OutboxMessage.deleteByIds")
+                    .setParameter("ids", ids)
+                    .executeUpdate();
+        }
+        return relayed.size();
+    }
+
+    private List<OutboxMessage> relayOneByOne(List<OutboxMessage> batch, BatchPublisher publisher,
+                                              Exception batchFailure) throws IOException {
+        List<OutboxMessage> relayed = new ArrayList<>();
+        Map<OutboxMessage, Exception> failed = new LinkedHashMap<>();
+        boolean rejected = false;
+        for (OutboxMessage message : batch) {
+            try {
+                publisher.publish(List.of(message));
+                relayed.add(message);
+            } catch (IOException | RuntimeException e) {
+                failed.put(message, e);
+                rejected |= !(e instanceof IOException);
+            }
+        }
+
+        if (relayed.isEmpty() && !rejected) {
+            // Nothing got through; the broker is unavailable rather than any one row at fault
+            if (batchFailure instanceof IOException) {
+                throw (IOException) batchFailure;
+            }
+            throw (RuntimeException) batchFailure;
+        }
+
+        for (Map.Entry<OutboxMessage, Exception> failure : failed.entrySet()) {
+            if (relayed.isEmpty() && failure.getValue() instanceof IOException) {
+                continue;
+            }
+            OutboxMessage message = failure.getKey();
+            message.setAttempts(message.getAttempts() + 1);
+            if (message.getAttempts() >= MAX_ATTEMPTS) {
+                message.setParked(true);
+                System.err.println("\u001B[31m Parking outbox message " + message.getId() + " to " +
+                        message.getExchange() + "/" + message.getRoutingKey() + " after " + message.getAttempts() +
+                        " failed attempts: " + failure.getValue().getMessage() + " \u001B[0m");
+            }
+        }
+        return relayed;
+    }
+}
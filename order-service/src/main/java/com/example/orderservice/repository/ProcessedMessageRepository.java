@@ -0,0 +1,33 @@
+package com.example.orderservice.repository;
+
+import com.example.orderservice.model.ProcessedMessage;
+import jakarta.ejb.Stateless;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.PersistenceContext;
+
+import java.time.LocalDateTime;
+
+@Stateless
+public class ProcessedMessageRepository {
+    @PersistenceContext
+    private EntityManager entityManager;
+
+    public boolean isProcessed(String messageId) {
+        return entityManager.find(ProcessedMessage.class, messageId) != null;
+    }
+
+    /**
+     * Records the message in the caller's transaction. Flushed right away, so a consumer that
+     * recorded the same message first makes this fail and the caller's transaction roll back.
+     */
+    public void record(String messageId) {
+        entityManager.persist(new ProcessedMessage(messageId));
+        entityManager.flush();
+    }
+
+    public int deleteBefore(LocalDateTime before) {
+        return entityManager.createNamedQuery("ProcessedMessage.deleteBefore")
+                .setParameter("before", before)
+                .executeUpdate();
+    }
+}
@@ -1,124 +1,53 @@
 package com.example.orderservice.service;
 
 import com.example.orderservice.model.Cart;
-import com.example.orderservice.model.OrderDish;
-import com.example.orderservice.repository.CartRepository;
-import com.example.orderservice.utils.Jwt;
-import jakarta.annotation.PreDestroy;
+import com.example.orderservice.utils.AuthContext;
 import jakarta.enterprise.context.SessionScoped;
 import jakarta.inject.Inject;
 import jakarta.inject.Named;
 import java.io.Serializable;
 
+/**
+ * The session's view of its user's cart. The cart itself lives in CartStore, which also
+ * takes care of writing it back.
+ */
 @Named
 @SessionScoped
 public class CartService implements Serializable {
     private static final long serialVersionUID = 1L;
 
     @Inject
-    private CartRepository cartRepository;
+    private CartStore cartStore;
 
-    private Cart currentCart;
-    private Long currentUserId;
-    private boolean isDirty = false;
-
-    public void initializeCart(String token) {
-        // Extract userId from JWT token
-        Long userId = Jwt.getUserId(token);
-
-        // If the user is the same, keep using the existing cart
-        if (this.currentUserId != null && this.currentUserId.equals(userId) && this.currentCart != null) {
-            forceRefreshCart();
-            return;
-        }
+    @Inject
+    private AuthContext auth;
 
-        this.currentUserId = userId;
+    private Long currentUserId;
 
-        // Try to load existing cart from database
-        Cart existingCart = cartRepository.findByUserId(userId);
-        if (existingCart != null) {
-            this.currentCart = existingCart;
-        } else {
-            // Create a new in-memory cart
-            this.currentCart = new Cart();
-            this.currentCart.setUserId(userId);
-        }
-        this.isDirty = false;
+    public void initializeCart() {
+        // User of the current request's token
+        this.currentUserId = auth.getUserId();
     }
 
     public Cart getCurrentCart() {
-        if (this.currentCart == null) {
-            throw new IllegalStateException("Cart not initialized. Call initializeCart first.");
-        }
-        return this.currentCart;
+        return cartStore.get(requireUserId());
     }
 
     public void addProductsToCart(Long productId, int quantity, String dishName, double dishPrice, String companyName) {
-        if (this.currentCart == null) {
-            throw new IllegalStateException("Cart not initialized. Call initializeCart first.");
-        }
-
-        forceRefreshCart();
-
-        // Check if dish already exists in cart
-        boolean dishExists = false;
-        for (OrderDish dish : this.currentCart.getDishes()) {
-            if (dish.getDishId().equals(productId)) {
-                // Update quantity if dish already exists
-                dish.setQuantity(dish.getQuantity() + quantity);
-                dishExists = true;
-                break;
-            }
-        }
-
-        // If dish doesn't exist, add new one
-        if (!dishExists) {
-            OrderDish newDish = new OrderDish(productId, dishName, companyName, dishPrice, quantity);
-            this.currentCart.addDish(newDish);
-        }
-
-        this.isDirty = true;
+        cartStore.addDish(requireUserId(), productId, quantity, dishName, dishPrice, companyName);
     }
 
     public void removeProductFromCart(Long productId) {
-        if (this.currentCart == null) {
-            throw new IllegalStateException("Cart not initialized. Call initializeCart first.");
-        }
-
-        forceRefreshCart();
-        this.currentCart.removeDish(productId);
-        this.isDirty = true;
+        cartStore.removeDish(requireUserId(), productId);
     }
 
     public void updateDishInCart(Long productId, int quantity) {
-        if (this.currentCart == null) {
-            throw new IllegalStateException("Cart not initialized. Call initializeCart first.");
-        }
-
-        forceRefreshCart();
-
-        for (OrderDish dish : this.currentCart.getDishes()) {
-            if (dish.getDishId().equals(productId)) {
-                dish.setQuantity(quantity);
-                this.isDirty = true;
-                break;
-            }
-        }
-    }
-
-    public void forceRefreshCart() {
-        if (this.currentUserId != null) {
-            Cart refreshedCart = cartRepository.findByUserId(this.currentUserId);
-            if (refreshedCart != null) {
-                this.currentCart = refreshedCart;
-            }
-        }
+        cartStore.updateDish(requireUserId(), productId, quantity);
     }
 
     public void clearCart() {
-        if (this.currentCart != null) {
-            this.currentCart.getDishes().clear();
-            this.isDirty = true;
+        if (this.currentUserId != null) {
+            cartStore.clear(this.currentUserId);
         }
     }
 
@@ -127,26 +56,20 @@ public class CartService implements Serializable {
     }
 
     /**
-     * Persists the cart to database
+     * Persists the cart to database now rather than with the next scheduled flush
      */
     public Cart persistCart() {
-        if (this.currentCart != null && this.isDirty) {
-            this.currentCart = cartRepository.save(this.currentCart);
-            this.isDirty = false;
+        if (this.currentUserId == null) {
+            return null;
         }
-        return this.currentCart;
+        cartStore.flush(this.currentUserId);
+        return cartStore.get(this.currentUserId);
     }
 
-    @PreDestroy
-    public void cleanup() {
-        // Optionally persist cart when session ends
-        if (isDirty && currentCart != null) {
-            try {
-                persistCart();
-            } catch (Exception e) {
-                // Log the exception
-                System.err.println("Failed to persist cart during cleanup: " + e.getMessage());
-            }
+    private Long requireUserId() {
+        if (this.currentUserId == null) {
+            throw new IllegalStateException("Cart not initialized. Call initializeCart first.");
         }
+        return this.currentUserId;
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,296 @@
+package com.example.orderservice.service;
+
+import com.example.orderservice.model.Cart;
+import com.example.orderservice.model.OrderDish;
+import com.example.orderservice.repository.CartRepository;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import jakarta.annotation.Resource;
+import jakarta.ejb.ConcurrencyManagement;
+import jakarta.ejb.ConcurrencyManagementType;
+import jakarta.ejb.Singleton;
+import jakarta.ejb.TransactionAttribute;
+import jakarta.ejb.TransactionAttributeType;
+import jakarta.inject.Inject;
+import jakarta.persistence.OptimisticLockException;
+import org.hibernate.StaleStateException;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+/**
+ * The carts of active users, kept in memory as the copy every read and edit goes to.
+ *
+ * Edits are written back behind the caller: the first unsaved edit schedules a flush
+ * -Dcart.flush.delay.ms (default 500) later, so a burst of edits costs one write. The
+ * database is read when a cart is first used, and again only when a flush finds that the
+ * stored version moved on because another instance wrote the cart. The stored cart is then
+ * re-read and the unsaved edits are applied to it once more. Clean carts are dropped after
+ * -Dcart.store.idle.ms (default 30 minutes) without use.
+ */
+@Singleton
+@ConcurrencyManagement(ConcurrencyManagementType.BEAN)
+@TransactionAttribute(TransactionAttributeType.NOT_SUPPORTED)
+public class CartStore {
+
+    private static final long FLUSH_DELAY_MILLIS = Long.getLong("cart.flush.delay.ms", 500);
+    private static final long IDLE_MILLIS = Long.getLong("cart.store.idle.ms", TimeUnit.MINUTES.toMillis(30));
+    private static final long RETRY_DELAY_MILLIS = 5000;
+    private static final long EVICTION_INTERVAL_SECONDS = 60;
+
+    @Inject
+    private CartRepository cartRepository;
+
+    @Resource(lookup = "java:comp/DefaultManagedScheduledExecutorService")
+    private ScheduledExecutorService scheduler;
+
+    private final Map<Long, Entry> carts = new ConcurrentHashMap<>();
+    private ScheduledFuture<?> evictionTask;
+
+    // Guarded by its own monitor
+    private static class Entry {
+        final Long userId;
+        boolean loaded;
+        boolean evicted;
+        // Stored cart with the pending edits applied
+        Cart cart;
+        // Edits not yet known to be stored, oldest first
+        final List<Consumer<Cart>> pending = new ArrayList<>();
+        boolean flushScheduled;
+        boolean flushing;
+        long lastUsed;
+
+        Entry(Long userId) {
+            this.userId = userId;
+        }
+    }
+
+    public CartStore() {
+    }
+
+    // Lets tests run the store on a plain executor and an in-memory repository
+    CartStore(ScheduledExecutorService scheduler, CartRepository cartRepository) {
+        this.scheduler = scheduler;
+        this.cartRepository = cartRepository;
+    }
+
+    @PostConstruct
+    public void start() {
+        evictionTask = scheduler.scheduleAtFixedRate(this::evictIdle,
+                EVICTION_INTERVAL_SECONDS, EVICTION_INTERVAL_SECONDS, TimeUnit.SECONDS);
+    }
+
+    /**
+     * A copy of the user's cart, including edits that are not stored yet.
+     */
+    public Cart get(Long userId) {
+        while (true) {
+            Entry entry = carts.computeIfAbsent(userId, Entry::new);
+            synchronized (entry) {
+                if (entry.evicted) {
+                    continue;
+                }
+                load(entry);
+                return copy(entry.cart);
+            }
+        }
+    }
+
+    public void addDish(Long userId, Long dishId, int quantity, String name, double price, String companyName) {
+        edit(userId, cart -> {
+            for (OrderDish dish : cart.getDishes()) {
+                if (dish.getDishId().equals(dishId)) {
+                    dish.setQuantity(dish.getQuantity() + quantity);
+                    return;
+                }
+            }
+            cart.addDish(new OrderDish(dishId, name, companyName, price, quantity));
+        });
+    }
+
+    public void removeDish(Long userId, Long dishId) {
+        edit(userId, cart -> cart.removeDish(dishId));
+    }
+
+    public void updateDish(Long userId, Long dishId, int quantity) {
+        edit(userId, cart -> {
+            for (OrderDish dish : cart.getDishes()) {
+                if (dish.getDishId().equals(dishId)) {
+                    dish.setQuantity(quantity);
+                    return;
+                }
+            }
+        });
+    }
+
+    public void clear(Long userId) {
+        edit(userId, cart -> cart.getDishes().clear());
+    }
+
+    /**
+     * Stores the user's pending edits now instead of waiting for the scheduled flush.
+     */
+    public void flush(Long userId) {
+        Entry entry = carts.get(userId);
+        if (entry == null) {
+            return;
+        }
+        synchronized (entry) {
+            while (entry.flushing) {
+                try {
+                    entry.wait();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+            }
+        }
+        flush(entry);
+    }
+
+    private void edit(Long userId, Consumer<Cart> edit) {
+        while (true) {
+            Entry entry = carts.computeIfAbsent(userId, Entry::new);
+            synchronized (entry) {
+                if (entry.evicted) {
+                    continue;
+                }
+                load(entry);
+                edit.accept(entry.cart);
+                entry.pending.add(edit);
+                scheduleFlush(entry, FLUSH_DELAY_MILLIS);
+                return;
+            }
+        }
+    }
+
+    private void load(Entry entry) {
+        entry.lastUsed = System.currentTimeMillis();
+        if (entry.loaded) {
+            return;
+        }
+        Cart stored = cartRepository.findByUserId(entry.userId);
+        entry.cart = stored != null ? copy(stored) : newCart(entry.userId);
+        entry.loaded = true;
+    }
+
+    private void scheduleFlush(Entry entry, long delayMillis) {
+        if (!entry.flushScheduled) {
+            entry.flushScheduled = true;
+            scheduler.schedule(() -> flush(entry), delayMillis, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    private void flush(Entry entry) {
+        Cart snapshot;
+        int sent;
+        synchronized (entry) {
+            entry.flushScheduled = false;
+            // A running flush schedules another one for whatever it did not send
+            if (entry.flushing || entry.pending.isEmpty()) {
+                return;
+            }
+            entry.flushing = true;
+            snapshot = copy(entry.cart);
+            sent = entry.pending.size();
+        }
+
+        Cart stored = null;
+        boolean conflict = false;
+        try {
+            stored = cartRepository.save(snapshot);
+        } catch (Exception e) {
+            conflict = isVersionConflict(e);
+            if (!conflict) {
+                System.err.println("\u001B[31m Failed to store cart of user " + entry.userId + ": " +
+                        e.getMessage() + " \u001B[0m");
+            }
+        }
+        if (conflict) {
+            try {
+                Cart reloaded = cartRepository.findByUserId(entry.userId);
+                stored = reloaded != null ? reloaded : newCart(entry.userId);
+                sent = 0;
+                System.out.println("\u001B[33m Cart of user " + entry.userId +
+                        " changed elsewhere, applying unsaved edits to the stored cart \u001B[0m");
+            } catch (Exception e) {
+                System.err.println("\u001B[31m Failed to reload cart of user " + entry.userId + ": " +
+                        e.getMessage() + " \u001B[0m");
+            }
+        }
+
+        synchronized (entry) {
+            entry.flushing = false;
+            if (stored != null) {
+                // Rebase on what is stored now: edits it already holds are done, the rest apply on top
+                entry.pending.subList(0, sent).clear();
+                Cart rebased = copy(stored);
+                for (Consumer<Cart> edit : entry.pending) {
+                    edit.accept(rebased);
+                }
+                entry.cart = rebased;
+            }
+            if (!entry.pending.isEmpty()) {
+                scheduleFlush(entry, stored != null ? FLUSH_DELAY_MILLIS : RETRY_DELAY_MILLIS);
+            }
+            entry.notifyAll();
+        }
+    }
+
+    private static boolean isVersionConflict(Throwable e) {
+        for (Throwable cause = e; cause != null; cause = cause.getCause()) {
+            if (cause instanceof OptimisticLockException || cause instanceof StaleStateException) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private void evictIdle() {
+        long idleSince = System.currentTimeMillis() - IDLE_MILLIS;
+        for (Entry entry : carts.values()) {
+            synchronized (entry) {
+                if (entry.lastUsed < idleSince && entry.pending.isEmpty() && !entry.flushing) {
+                    entry.evicted = true;
+                    carts.remove(entry.userId, entry);
+                }
+            }
+        }
+    }
+
+    private static Cart newCart(Long userId) {
+        Cart cart = new Cart();
+        cart.setUserId(userId);
+        return cart;
+    }
+
+    private static Cart copy(Cart cart) {
+        Cart copy = new Cart();
+        copy.setId(cart.getId());
+        copy.setUserId(cart.getUserId());
+        copy.setVersion(cart.getVersion());
+        for (OrderDish dish : cart.getDishes()) {
+            OrderDish dishCopy = new OrderDish(dish.getDishId(), dish.getName(), dish.getCompanyName(),
+                    dish.getPrice(), dish.getQuantity());
+            dishCopy.setId(dish.getId());
+            copy.addDish(dishCopy);
+        }
+        return copy;
+    }
+
+    @PreDestroy
+    public void stop() {
+        if (evictionTask != null) {
+            evictionTask.cancel(false);
+        }
+        for (Long userId : carts.keySet()) {
+            flush(userId);
+        }
+    }
+}
@@ -0,0 +1,87 @@
+package com.example.orderservice.service;
+
+import com.example.orderservice.model.Order;
+import com.example.orderservice.model.OrderStatus;
+import com.example.orderservice.repository.OrderRepository;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.Resource;
+import jakarta.ejb.Lock;
+import jakarta.ejb.LockType;
+import jakarta.ejb.Singleton;
+import jakarta.ejb.Startup;
+import jakarta.inject.Inject;
+
+import java.util.List;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Drives confirmed orders through PENDING -> BEING_DELIVERED -> DELIVERED without
+ * blocking the caller. Each transition is persisted as soon as it happens and the
+ * final one is fired from the container's managed scheduler.
+ */
+@Singleton
+@Startup
+@Lock(LockType.READ)
+public class DeliveryScheduler {
+
+    static final long DELIVERY_DELAY_MILLIS = 7000;
+
+    @Resource(lookup = "java:comp/DefaultManagedScheduledExecutorService")
+    private ScheduledExecutorService scheduler;
+
+    @Inject
+    private OrderRepository orderRepository;
+
+    private long deliveryDelayMillis = DELIVERY_DELAY_MILLIS;
+
+    public DeliveryScheduler() {
+    }
+
+    // Lets tests run the lifecycle on a plain executor with a short delay
+    DeliveryScheduler(ScheduledExecutorService scheduler, OrderRepository orderRepository, long deliveryDelayMillis) {
+        this.scheduler = scheduler;
+        this.orderRepository = orderRepository;
+        this.deliveryDelayMillis = deliveryDelayMillis;
+    }
+
+    @PostConstruct
+    public void resumeDeliveries() {
+        // Orders that were on their way when the service stopped still need to arrive
+        try {
+            List<Order> inFlight = orderRepository.findByStatus(OrderStatus.BEING_DELIVERED);
+            for (Order order : inFlight) {
+                scheduleCompletion(order.getId());
+            }
+            if (!inFlight.isEmpty()) {
+                System.out.println("\u001B[33m Resumed delivery of " + inFlight.size() + " order(s) \u001B[0m");
+            }
+        } catch (Exception e) {
+            System.err.println("\u001B[31m Failed to resume deliveries: " + e.getMessage() + " \u001B[0m");
+        }
+    }
+
+    /**
+     * Schedules the completion of an order the caller has already marked as being delivered.
+     * Returns immediately.
+     */
+    public void deliveryStarted(Long orderId) {
+        scheduleCompletion(orderId);
+    }
+
+    private void scheduleCompletion(Long orderId) {
+        scheduler.schedule(() -> completeDelivery(orderId), deliveryDelayMillis, TimeUnit.MILLISECONDS);
+    }
+
+    void completeDelivery(Long orderId) {
+        try {
+            if (!orderRepository.transition(orderId, OrderStatus.BEING_DELIVERED, OrderStatus.DELIVERED)) {
+                // Canceled or already delivered in the meantime
+                return;
+            }
+            System.out.println("\u001B[32m Order " + orderId + " updated to DELIVERED \u001B[0m");
+        } catch (Exception e) {
+            System.err.println("\u001B[31m Failed to complete delivery of order " + orderId + ": " + e.getMessage() + " \u001B[0m");
+        }
+    }
+}
@@ -1,7 +1,9 @@
 package com.example.orderservice.service;
 
+import com.example.orderservice.codec.MessageCodec;
 import com.example.orderservice.config.RabbitMQConfig;
 import com.example.orderservice.dto.CompanyOrderDTO;
+import com.example.orderservice.dto.CompanyOrderPage;
 import com.example.orderservice.dto.StockCheckRequest;
 import com.example.orderservice.dto.StockConfirmationResponse;
 import com.example.orderservice.messaging.NotificationSender;
@@ -10,17 +12,18 @@ import com.example.orderservice.model.Order;
 import com.example.orderservice.model.OrderDish;
 import com.example.orderservice.model.OrderStatus;
 import com.example.orderservice.repository.OrderRepository;
-import com.example.orderservice.utils.Jwt;
+import com.example.orderservice.repository.OutboxRepository;
+import com.example.orderservice.repository.ProcessedMessageRepository;
+import com.example.orderservice.utils.AuthContext;
+import com.example.orderservice.utils.Transactions;
 import com.fasterxml.jackson.databind.ObjectMapper;
 // Remove this import since we'll use the one from RabbitMQConfig
 // import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
-import com.rabbitmq.client.DeliverCallback;
-import jakarta.annotation.PostConstruct;
+import jakarta.annotation.Resource;
 import jakarta.ejb.Stateless;
 import jakarta.inject.Inject;
+import jakarta.transaction.TransactionSynchronizationRegistry;
 
-import java.io.IOException;
-import java.nio.charset.StandardCharsets;
 import java.time.LocalDateTime;
 import java.util.ArrayList;
 import java.util.HashMap;
@@ -35,61 +38,76 @@ public class OrderService {
     @Inject
     private CartService cartService;
 
+    @Inject
+    private CartStore cartStore;
+
     @Inject
     private RabbitMQConfig rabbitMQConfig;
 
     @Inject
     private NotificationSender notificationSender;
 
+    @Inject
+    private DeliveryScheduler deliveryScheduler;
+
+    @Inject
+    private OutboxRepository outboxRepository;
+
+    @Inject
+    private ProcessedMessageRepository processedMessageRepository;
+
+    @Inject
+    private AuthContext auth;
+
+    @Resource
+    private TransactionSynchronizationRegistry transactionRegistry;
+
     private static final double MINIMUM_CHARGE = 50.0;
 
-    @PostConstruct
-    public void setupConsumer() {
-        try {
-            System.out.println("\u001B[33m Setting up consumer for queue: " + RabbitMQConfig.STOCK_CONFIRMATION_QUEUE + " \u001B[0m");
-
-            DeliverCallback deliverCallback = (consumerTag, delivery) -> {
-                String message = new String(delivery.getBody(), StandardCharsets.UTF_8);
-                System.out.println("\u001B[34m Received stock confirmation message: " + message + " \u001B[0m");
-
-                try {
-                    // Parse the JSON message to extract confirmation details
-                    StockConfirmationResponse response = rabbitMQConfig.getObjectMapper()
-                            .readValue(message, StockConfirmationResponse.class);
-
-                    System.out.println("\u001B[34m Parsed stock confirmation - Order ID: " +
-                            response.getOrderId() + ", In stock: " + response.isInStock() +
-                            ", Total price: $" + response.getTotalPrice() + " \u001B[0m");
-
-                    // Process the order based on stock confirmation
-                    processOrder(response.getOrderId(), response.isInStock(), response.getTotalPrice());
-                } catch (Exception e) {
-                    System.err.println("\u001B[31m Failed to process stock confirmation: " + e.getMessage() + " \u001B[0m");
-                    e.printStackTrace();
-                }
-            };
-
-            rabbitMQConfig.getChannel().basicConsume(
-                    RabbitMQConfig.STOCK_CONFIRMATION_QUEUE,
-                    true,  // auto-acknowledge
-                    deliverCallback,
-                    consumerTag -> {
-                        System.err.println("\u001B[31m Consumer cancelled: " + consumerTag + " \u001B[0m");
-                    });
-
-            System.out.println("\u001B[32m Stock confirmation consumer registered successfully \u001B[0m");
-        } catch (IOException e) {
-            System.err.println("\u001B[31m Failed to set up RabbitMQ consumer: " + e.getMessage() + " \u001B[0m");
-            throw new RuntimeException("Failed to set up RabbitMQ consumer", e);
+    public OrderService() {
+    }
+
+    // Lets tests apply stock confirmations against in-memory repositories
+    OrderService(OrderRepository orderRepository, NotificationSender notificationSender,
+                 DeliveryScheduler deliveryScheduler, ProcessedMessageRepository processedMessageRepository) {
+        this.orderRepository = orderRepository;
+        this.notificationSender = notificationSender;
+        this.deliveryScheduler = deliveryScheduler;
+        this.processedMessageRepository = processedMessageRepository;
+    }
+
+    /**
+     * Applies the stock confirmations carried by one message, all in one transaction. The
+     * message id is recorded in that transaction too, so a message that is delivered again
+     * after its changes were committed is recognised and skipped. Returns false in that case.
+     */
+    public boolean applyStockConfirmations(String messageId, List<StockConfirmationResponse> responses) {
+        if (messageId != null && processedMessageRepository.isProcessed(messageId)) {
+            return false;
+        }
+
+        for (StockConfirmationResponse response : responses) {
+            System.out.println("\u001B[34m Parsed stock confirmation - Order ID: " +
+                    response.getOrderId() + ", In stock: " + response.isInStock() +
+                    ", Total price: $" + response.getTotalPrice() + " \u001B[0m");
+
+            // A failing order fails the whole message: the repository calls have already marked
+            // the shared transaction for rollback, so the message is retried as a unit
+            processOrder(response.getOrderId(), response.isInStock(), response.getTotalPrice());
+        }
+
+        if (messageId != null) {
+            processedMessageRepository.record(messageId);
         }
+        return true;
     }
 
-    public Order createOrderFromCart(String token) {
+    public Order createOrderFromCart() {
         try {
-            Long userId = Jwt.getUserId(token);
+            Long userId = auth.getUserId();
 
             // Initialize cart if not already initialized
-            cartService.initializeCart(token);
+            cartService.initializeCart();
             Cart cart = cartService.getCurrentCart();
 
             // Check if cart is empty
@@ -144,9 +162,7 @@ public class OrderService {
                         "Order #" + order.getId() + " was canceled due to not meeting minimum charge requirement"
                 );
 
-                // Clear cart after order creation
-                cartService.clearCart();
-                cartService.persistCart();
+                clearCartAfterCommit(userId);
 
                 return order;
             }
@@ -154,9 +170,7 @@ public class OrderService {
             // Only check product stock if minimum charge is met
             checkProductStock(order);
 
-            // Clear cart after order creation
-            cartService.clearCart();
-            cartService.persistCart();
+            clearCartAfterCommit(userId);
 
             return order;
         } catch (Exception e) {
@@ -174,6 +188,14 @@ public class OrderService {
     }
 
 
+    // The cart is only emptied once the order is stored; if the order rolls back, the user keeps it
+    private void clearCartAfterCommit(Long userId) {
+        Transactions.afterCommit(transactionRegistry, () -> {
+            cartStore.clear(userId);
+            cartStore.flush(userId);
+        });
+    }
+
     private double calculateCartTotal(Cart cart) {
         double total = 0.0;
         for (OrderDish dish : cart.getDishes()) {
@@ -198,19 +220,16 @@ public class OrderService {
             System.out.println("\u001B[34m Order ID: " + order.getId() + " \u001B[0m");
             System.out.println("\u001B[34m Products: " + productQuantities + " \u001B[0m");
 
-            // Convert request to JSON using the ObjectMapper from RabbitMQConfig
-            String jsonRequest = rabbitMQConfig.getObjectMapper().writeValueAsString(stockCheckRequest);
-
-            // Send to RabbitMQ queue
-            rabbitMQConfig.getChannel().basicPublish(
+            // Written in the order's transaction; the outbox relay batches it with other orders
+            MessageCodec codec = rabbitMQConfig.getCodecs().preferred();
+            outboxRepository.enqueue(
                     "",  // Default exchange
-                    RabbitMQConfig.ORDER_STOCK_CHECK_QUEUE,  // Queue name
+                    RabbitMQConfig.ORDER_STOCK_CHECK_QUEUE,
                     null,
-                    jsonRequest.getBytes(StandardCharsets.UTF_8)
+                    codec.contentType(),
+                    codec.encode(stockCheckRequest)
             );
 
-            System.out.println("\u001B[34m === STOCK CHECK REQUEST SENT === \u001B[0m");
-
         } catch (Exception e) {
             System.err.println("\u001B[31m Error sending stock check request: " + e.getMessage() + " \u001B[0m");
             e.printStackTrace();
@@ -226,7 +245,7 @@ public class OrderService {
         }
     }
 
-    private void processOrder(Long orderId, boolean inStock, double totalPrice) throws InterruptedException {
+    private void processOrder(Long orderId, boolean inStock, double totalPrice) {
         Order order = orderRepository.findById(orderId);
 
         if (order == null) {
@@ -237,22 +256,30 @@ public class OrderService {
 
         System.out.println("\u001B[34m Processing order " + orderId + " - In stock: " + inStock + " - Total price: $" + totalPrice + " \u001B[0m");
 
+        // Only a pending order is waiting for its stock check; anything else was decided before
+        if (order.getStatus() != OrderStatus.PENDING) {
+            System.out.println("\u001B[33m Order " + orderId + " is already " + order.getStatus() +
+                    ", ignoring stock confirmation \u001B[0m");
+            return;
+        }
+
         if (inStock) {
             // If price is too low, cancel order
             if (totalPrice < MINIMUM_CHARGE) {
-                order.setStatus(OrderStatus.CANCELED);
-                orderRepository.save(order);
+                if (!transition(orderId, OrderStatus.CANCELED)) {
+                    return;
+                }
                 System.out.println("\u001B[33m Order " + orderId + " canceled: Below minimum charge \u001B[0m");
                 notificationSender.sendLogMessage("Order", "Warning",
                         "Order " + orderId + " canceled: Minimum charge not met");
                 notificationSender.sendPaymentFailure(orderId, "Minimum charge not met");
                 notificationSender.sendOrderConfirmation(orderId, "canceled - minimum charge not met but in stock",  order.getUserId());
             } else {
-                // Update to being delivered
-                order.setStatus(OrderStatus.BEING_DELIVERED);
-                Thread.sleep(7000);
-                order.setStatus(OrderStatus.DELIVERED);
-                orderRepository.save(order);
+                // Update to being delivered, delivery completes in the background
+                if (!transition(orderId, OrderStatus.BEING_DELIVERED)) {
+                    return;
+                }
+                deliveryScheduler.deliveryStarted(orderId);
                 System.out.println("\u001B[32m Order " + orderId + " updated to BEING_DELIVERED \u001B[0m");
 
                 // Send notification to user about successful order
@@ -260,8 +287,9 @@ public class OrderService {
             }
         } else {
             // Not enough stock, cancel order
-            order.setStatus(OrderStatus.CANCELED);
-            orderRepository.save(order);
+            if (!transition(orderId, OrderStatus.CANCELED)) {
+                return;
+            }
             System.out.println("\u001B[33m Order " + orderId + " canceled: Insufficient stock \u001B[0m");
             notificationSender.sendLogMessage("Order", "Warning",
                     "Order " + orderId + " canceled: Insufficient stock");
@@ -270,12 +298,21 @@ public class OrderService {
         }
     }
 
+    // Leaves PENDING only if no other consumer got there first
+    private boolean transition(Long orderId, OrderStatus to) {
+        if (orderRepository.transition(orderId, OrderStatus.PENDING, to)) {
+            return true;
+        }
+        System.out.println("\u001B[33m Order " + orderId + " left PENDING concurrently, ignoring stock confirmation \u001B[0m");
+        return false;
+    }
+
     public Order getOrder(Long orderId) {
-        return orderRepository.findById(orderId);
+        return orderRepository.findWithDishes(orderId);
     }
 
-    public List<CompanyOrderDTO> getOrdersByCompany(String token) {
-        String companyName = Jwt.getCompany(token);
+    public List<CompanyOrderDTO> getOrdersByCompany() {
+        String companyName = auth.getCompany();
 
         if (companyName == null || companyName.isEmpty()) {
             throw new SecurityException("Only company users can access company orders");
@@ -284,8 +321,25 @@ public class OrderService {
         return orderRepository.findByCompanyName(companyName);
     }
 
-    public List<Order> getOrders(String token) {
-        Long userId = Jwt.getUserId(token);
+    public CompanyOrderPage getCompanyOrderPage(long beforeId, LocalDateTime from, LocalDateTime to, int limit) {
+        String companyName = auth.getCompany();
+
+        if (companyName == null || companyName.isEmpty()) {
+            throw new SecurityException("Only company users can access company orders");
+        }
+
+        // One extra order tells whether there is a next page
+        List<CompanyOrderDTO> orders = orderRepository.findCompanyOrders(companyName, beforeId, from, to, limit + 1);
+        String nextCursor = null;
+        if (orders.size() > limit) {
+            orders = new ArrayList<>(orders.subList(0, limit));
+            nextCursor = String.valueOf(orders.get(limit - 1).getId());
+        }
+        return new CompanyOrderPage(orders, nextCursor);
+    }
+
+    public List<Order> getOrders() {
+        Long userId = auth.getUserId();
         return orderRepository.findByUserId(userId);
     }
 
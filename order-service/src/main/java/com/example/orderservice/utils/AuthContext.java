@@ -0,0 +1,44 @@
+package com.example.orderservice.utils;
+
+import io.jsonwebtoken.Claims;
+import jakarta.enterprise.context.RequestScoped;
+
+/**
+ * Claims of the bearer token of the current request, filled in once by JwtFilter.
+ * Empty when the request carried no token or one that did not verify.
+ */
+@RequestScoped
+public class AuthContext {
+
+    private String token;
+    private Claims claims;
+
+    public void set(String token, Claims claims) {
+        this.token = token;
+        this.claims = claims;
+    }
+
+    public boolean isAuthenticated() {
+        return claims != null;
+    }
+
+    public String getToken() {
+        return token;
+    }
+
+    public String getUsername() {
+        return claims == null ? null : claims.getSubject();
+    }
+
+    public String getRole() {
+        return claims == null ? null : claims.get("role", String.class);
+    }
+
+    public String getCompany() {
+        return claims == null ? null : claims.get("company", String.class);
+    }
+
+    public Long getUserId() {
+        return claims == null ? null : claims.get("userId", Long.class);
+    }
+}
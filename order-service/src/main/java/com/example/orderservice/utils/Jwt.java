@@ -1,25 +1,93 @@
 package com.example.orderservice.utils;
+
 import io.jsonwebtoken.Claims;
+import io.jsonwebtoken.ExpiredJwtException;
+import io.jsonwebtoken.JwsHeader;
+import io.jsonwebtoken.JwtParser;
 import io.jsonwebtoken.Jwts;
-import io.jsonwebtoken.security.Keys;
+import io.jsonwebtoken.SigningKeyResolverAdapter;
+import io.jsonwebtoken.security.SignatureException;
 import jakarta.enterprise.context.ApplicationScoped;
 
-import javax.crypto.SecretKey;
-import java.nio.charset.StandardCharsets;
+import java.security.Key;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.Map;
 
+/**
+ * Token verification. Verified claims are kept in a small LRU cache keyed by the token's
+ * signature, so the same token is only verified again once it drops out of the cache;
+ * cached claims are still checked for expiry on every lookup.
+ *
+ * The key is picked by the token's kid from JwtKeyring, which may hold shared secrets or,
+ * when auth-service signs asymmetrically, only public keys.
+ */
 @ApplicationScoped
 public class Jwt {
 
-    private static final String JWT_SECRET = "the-most-secure-secret-key-in-hostory";
-    private static final SecretKey SECRET_KEY = Keys.hmacShaKeyFor(
-            JWT_SECRET.getBytes(StandardCharsets.UTF_8));
+    // Thread safe, so one parser serves every request; the key is looked up per token
+    private static final JwtParser PARSER = Jwts.parserBuilder()
+            .setSigningKeyResolver(new SigningKeyResolverAdapter() {
+                // jjwt 0.11 declares the header raw, so the override has to as well
+                @Override
+                @SuppressWarnings("rawtypes")
+                public Key resolveSigningKey(JwsHeader header, Claims claims) {
+                    Key key = JwtKeyring.verificationKey(header.getKeyId());
+                    if (key == null) {
+                        throw new SignatureException("Unknown signing key " + header.getKeyId());
+                    }
+                    return key;
+                }
+            })
+            .build();
+
+    // Override with -Djwt.claims.cache.size
+    private static final int CACHE_SIZE = Integer.getInteger("jwt.claims.cache.size", 10_000);
+
+    private static final Map<String, CachedClaims> CACHE = new LinkedHashMap<>(256, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, CachedClaims> eldest) {
+            return size() > CACHE_SIZE;
+        }
+    };
+
+    private static class CachedClaims {
+        final String token;
+        final Claims claims;
+        final int keyringVersion;
+
+        CachedClaims(String token, Claims claims, int keyringVersion) {
+            this.token = token;
+            this.claims = claims;
+            this.keyringVersion = keyringVersion;
+        }
+    }
 
     public static Claims validateToken(String token) {
-        return Jwts.parserBuilder()
-                .setSigningKey(SECRET_KEY)
-                .build()
-                .parseClaimsJws(token)
-                .getBody();
+        String signature = token.substring(token.lastIndexOf('.') + 1);
+
+        CachedClaims cached;
+        synchronized (CACHE) {
+            cached = CACHE.get(signature);
+        }
+        // The whole token has to match, not just the signature part, and its key must not have been retired since
+        int keyringVersion = JwtKeyring.version();
+        if (cached != null && cached.token.equals(token) && cached.keyringVersion == keyringVersion) {
+            Date expiration = cached.claims.getExpiration();
+            if (expiration == null || expiration.after(new Date())) {
+                return cached.claims;
+            }
+            synchronized (CACHE) {
+                CACHE.remove(signature);
+            }
+            throw new ExpiredJwtException(null, cached.claims, "JWT expired at " + expiration.toInstant());
+        }
+
+        Claims claims = PARSER.parseClaimsJws(token).getBody();
+        synchronized (CACHE) {
+            CACHE.put(signature, new CachedClaims(token, claims, keyringVersion));
+        }
+        return claims;
     }
 
     public static String getUsername(String token) {
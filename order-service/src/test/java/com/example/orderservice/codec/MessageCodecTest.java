@@ -0,0 +1,88 @@
+package com.example.orderservice.codec;
+
+import com.example.orderservice.dto.StockCheckBatch;
+import com.example.orderservice.dto.StockCheckRequest;
+import com.example.orderservice.dto.StockConfirmationBatch;
+import com.example.orderservice.dto.StockConfirmationResponse;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class MessageCodecTest {
+
+    private final MessageCodecs codecs = new MessageCodecs(new ObjectMapper());
+    private final MessageCodec json = codecs.forContentType(JsonMessageCodec.CONTENT_TYPE);
+    private final MessageCodec binary = codecs.forContentType(BinaryMessageCodec.CONTENT_TYPE);
+
+    @Test
+    void stockCheckBatchRoundTrips() throws IOException {
+        for (MessageCodec codec : List.of(json, binary)) {
+            StockCheckBatch batch = new StockCheckBatch(List.of(order(1L, 3), order(Long.MAX_VALUE - 1, 20)));
+
+            StockCheckBatch decoded = codec.decode(codec.encode(batch), StockCheckBatch.class);
+
+            assertEquals(2, decoded.getRequests().size(), codec.contentType());
+            for (int i = 0; i < 2; i++) {
+                assertEquals(batch.getRequests().get(i).getOrderId(), decoded.getRequests().get(i).getOrderId());
+                assertEquals(batch.getRequests().get(i).getProductQuantities(), decoded.getRequests().get(i).getProductQuantities());
+            }
+        }
+    }
+
+    @Test
+    void confirmationBatchRoundTrips() throws IOException {
+        StockConfirmationBatch batch = new StockConfirmationBatch(List.of(
+                new StockConfirmationResponse(7L, true, 129.95),
+                new StockConfirmationResponse(null, false, 0.0)));
+
+        StockConfirmationBatch decoded = binary.decode(binary.encode(batch), StockConfirmationBatch.class);
+
+        assertEquals(7L, decoded.getResponses().get(0).getOrderId());
+        assertTrue(decoded.getResponses().get(0).isInStock());
+        assertEquals(129.95, decoded.getResponses().get(0).getTotalPrice());
+        assertNull(decoded.getResponses().get(1).getOrderId());
+    }
+
+    @Test
+    void binaryIsMuchSmallerThanJson() throws IOException {
+        StockCheckRequest request = order(123456L, 8);
+
+        int jsonSize = json.encode(request).length;
+        int binarySize = binary.encode(request).length;
+
+        System.out.printf("Stock check with 8 dishes: %d bytes as JSON, %d bytes binary%n", jsonSize, binarySize);
+        assertTrue(binarySize * 3 < jsonSize, "binary " + binarySize + " bytes vs JSON " + jsonSize);
+    }
+
+    @Test
+    void rejectsTruncatedBody() throws IOException {
+        byte[] body = binary.encode(order(42L, 4));
+
+        assertThrows(IOException.class,
+                () -> binary.decode(Arrays.copyOf(body, body.length - 1), StockCheckRequest.class));
+    }
+
+    @Test
+    void untypedMessagesAreJson() {
+        assertSame(json, codecs.forContentType(null));
+    }
+
+    private static StockCheckRequest order(Long orderId, int dishes) {
+        Map<Long, Integer> quantities = new LinkedHashMap<>();
+        for (int i = 1; i <= dishes; i++) {
+            quantities.put(1000L + i, i);
+        }
+        return new StockCheckRequest(orderId, quantities);
+    }
+}
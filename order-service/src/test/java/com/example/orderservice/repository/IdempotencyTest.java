@@ -0,0 +1,139 @@
+package com.example.orderservice.repository;
+
+import com.example.orderservice.model.Cart;
+import com.example.orderservice.model.Order;
+import com.example.orderservice.model.OrderDish;
+import com.example.orderservice.model.OrderStatus;
+import com.example.orderservice.model.ProcessedMessage;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.PersistenceException;
+import org.hibernate.SessionFactory;
+import org.hibernate.cfg.Configuration;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.lang.reflect.Field;
+import java.time.LocalDateTime;
+import java.util.function.Supplier;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * The database guards that keep a redelivered stock confirmation from being applied twice.
+ */
+class IdempotencyTest {
+
+    private static SessionFactory sessionFactory;
+
+    private EntityManager entityManager;
+    private OrderRepository orderRepository;
+    private ProcessedMessageRepository processedMessageRepository;
+
+    @BeforeAll
+    static void createDatabase() {
+        sessionFactory = new Configuration()
+                .addAnnotatedClass(Order.class)
+                .addAnnotatedClass(OrderDish.class)
+                .addAnnotatedClass(Cart.class)
+                .addAnnotatedClass(ProcessedMessage.class)
+                .setProperty("hibernate.connection.url", "jdbc:h2:mem:idempotency;DB_CLOSE_DELAY=-1")
+                .setProperty("hibernate.hbm2ddl.auto", "create-drop")
+                .setProperty("jakarta.persistence.validation.mode", "none")
+                .buildSessionFactory();
+    }
+
+    @AfterAll
+    static void dropDatabase() {
+        sessionFactory.close();
+    }
+
+    @BeforeEach
+    void setUp() throws Exception {
+        entityManager = sessionFactory.createEntityManager();
+        orderRepository = new OrderRepository();
+        processedMessageRepository = new ProcessedMessageRepository();
+        inject(orderRepository, entityManager);
+        inject(processedMessageRepository, entityManager);
+    }
+
+    @AfterEach
+    void tearDown() {
+        entityManager.close();
+    }
+
+    @Test
+    void orderLeavesPendingOnlyOnce() {
+        Order order = new Order();
+        order.setUserId(1L);
+        order.setStatus(OrderStatus.PENDING);
+        order.setCreatedAt(LocalDateTime.now());
+        Long id = inTransaction(() -> orderRepository.save(order).getId());
+
+        assertTrue(inTransaction(() -> orderRepository.transition(id, OrderStatus.PENDING, OrderStatus.BEING_DELIVERED)));
+        assertFalse(inTransaction(() -> orderRepository.transition(id, OrderStatus.PENDING, OrderStatus.CANCELED)));
+
+        entityManager.clear();
+        assertEquals(OrderStatus.BEING_DELIVERED, orderRepository.findById(id).getStatus());
+    }
+
+    @Test
+    void messageIsRecordedOnce() {
+        inTransaction(() -> {
+            processedMessageRepository.record("message-1");
+            return null;
+        });
+        assertTrue(processedMessageRepository.isProcessed("message-1"));
+        assertFalse(processedMessageRepository.isProcessed("message-2"));
+
+        // A second consumer that missed the first record fails instead of applying it again
+        EntityManager other = sessionFactory.createEntityManager();
+        try {
+            ProcessedMessageRepository otherRepository = new ProcessedMessageRepository();
+            inject(otherRepository, other);
+            other.getTransaction().begin();
+            assertThrows(PersistenceException.class, () -> otherRepository.record("message-1"));
+            other.getTransaction().rollback();
+        } catch (Exception e) {
+            throw new AssertionError(e);
+        } finally {
+            other.close();
+        }
+    }
+
+    @Test
+    void expiredMessagesAreRemoved() {
+        inTransaction(() -> {
+            processedMessageRepository.record("message-old");
+            return null;
+        });
+        int deleted = inTransaction(() -> processedMessageRepository.deleteBefore(LocalDateTime.now().plusMinutes(1)));
+
+        assertTrue(deleted >= 1);
+        entityManager.clear();
+        assertFalse(processedMessageRepository.isProcessed("message-old"));
+    }
+
+    private <T> T inTransaction(Supplier<T> work) {
+        entityManager.getTransaction().begin();
+        try {
+            T result = work.get();
+            entityManager.getTransaction().commit();
+            return result;
+        } catch (RuntimeException e) {
+            entityManager.getTransaction().rollback();
+            throw e;
+        }
+    }
+
+    private static void inject(Object repository, EntityManager entityManager) throws Exception {
+        Field field = repository.getClass().getDeclaredField("entityManager");
+        field.setAccessible(true);
+        field.set(repository, entityManager);
+    }
+}
@@ -0,0 +1,173 @@
+package com.example.orderservice.repository;
+
+import com.example.orderservice.model.OutboxMessage;
+import jakarta.persistence.EntityManager;
+import org.hibernate.SessionFactory;
+import org.hibernate.cfg.Configuration;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.lang.reflect.Field;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * How the outbox relays a batch in which some messages cannot be published.
+ */
+class OutboxRepositoryTest {
+
+    private static SessionFactory sessionFactory;
+
+    private EntityManager entityManager;
+    private OutboxRepository outboxRepository;
+
+    @BeforeAll
+    static void createDatabase() {
+        sessionFactory = new Configuration()
+                .addAnnotatedClass(OutboxMessage.class)
+                .setProperty("hibernate.connection.url", "jdbc:h2:mem:outbox;DB_CLOSE_DELAY=-1")
+                .setProperty("hibernate.hbm2ddl.auto", "create-drop")
+                .setProperty("jakarta.persistence.validation.mode", "none")
+                .buildSessionFactory();
+    }
+
+    @AfterAll
+    static void dropDatabase() {
+        sessionFactory.close();
+    }
+
+    @BeforeEach
+    void setUp() throws Exception {
+        entityManager = sessionFactory.createEntityManager();
+        outboxRepository = new OutboxRepository();
+        Field field = OutboxRepository.class.getDeclaredField("entityManager");
+        field.setAccessible(true);
+        field.set(outboxRepository, entityManager);
+
+        inTransaction(() -> entityManager.createQuery("DELETE FROM OutboxMessage").executeUpdate());
+    }
+
+    @AfterEach
+    void tearDown() {
+        entityManager.close();
+    }
+
+    @Test
+    void healthyBatchIsRelayedWhole() throws IOException {
+        enqueue("a", "b", "c");
+        List<String> published = new ArrayList<>();
+
+        int relayed = inTransaction(() -> outboxRepository.relayBatch(10, batch -> {
+            for (OutboxMessage message : batch) {
+                published.add(payload(message));
+            }
+        }));
+
+        assertEquals(3, relayed);
+        assertEquals(List.of("a", "b", "c"), published);
+        assertEquals(0, pending().size());
+    }
+
+    @Test
+    void badRowDoesNotHoldUpTheRest() throws IOException {
+        enqueue("a", "bad", "c");
+        List<String> published = new ArrayList<>();
+
+        int relayed = inTransaction(() -> outboxRepository.relayBatch(10, rejecting("bad", published)));
+
+        assertEquals(2, relayed);
+        assertEquals(List.of("a", "c"), published);
+        List<OutboxMessage> left = pending();
+        assertEquals(1, left.size());
+        assertEquals("bad", payload(left.get(0)));
+        assertEquals(1, left.get(0).getAttempts());
+    }
+
+    @Test
+    void rowThatKeepsFailingIsParked() throws IOException {
+        enqueue("bad");
+        for (int run = 0; run < 5; run++) {
+            enqueue("ok-" + run);
+            inTransaction(() -> outboxRepository.relayBatch(10, rejecting("bad", new ArrayList<>())));
+        }
+
+        assertEquals(0, pending().size());
+        entityManager.clear();
+        OutboxMessage parked = entityManager.createQuery("SELECT m FROM OutboxMessage m", OutboxMessage.class)
+                .getSingleResult();
+        assertTrue(parked.isParked());
+        assertEquals("bad", payload(parked));
+    }
+
+    @Test
+    void brokerOutageCountsNoAttempts() throws IOException {
+        enqueue("a", "b");
+
+        assertThrows(IOException.class, () -> inTransaction(() -> outboxRepository.relayBatch(10, batch -> {
+            throw new IOException("connection refused");
+        })));
+
+        List<OutboxMessage> left = pending();
+        assertEquals(2, left.size());
+        for (OutboxMessage message : left) {
+            assertEquals(0, message.getAttempts());
+        }
+    }
+
+    // Fails every publish that includes the given payload, as the broker would for an unroutable message
+    private static OutboxRepository.BatchPublisher rejecting(String bad, List<String> published) {
+        return batch -> {
+            for (OutboxMessage message : batch) {
+                if (payload(message).equals(bad)) {
+                    throw new IOException("message " + message.getId() + " nacked");
+                }
+            }
+            for (OutboxMessage message : batch) {
+                published.add(payload(message));
+            }
+        };
+    }
+
+    private void enqueue(String... payloads) throws IOException {
+        inTransaction(() -> {
+            for (String payload : payloads) {
+                outboxRepository.enqueue("notifications", "key", null, null, payload.getBytes(StandardCharsets.UTF_8));
+            }
+            return null;
+        });
+    }
+
+    private List<OutboxMessage> pending() {
+        entityManager.clear();
+        return entityManager.createNamedQuery("OutboxMessage.findOldest", OutboxMessage.class).getResultList();
+    }
+
+    private static String payload(OutboxMessage message) {
+        return new String(message.getPayload(), StandardCharsets.UTF_8);
+    }
+
+    private interface Work<T> {
+        T run() throws IOException;
+    }
+
+    private <T> T inTransaction(Work<T> work) throws IOException {
+        entityManager.getTransaction().begin();
+        try {
+            T result = work.run();
+            entityManager.getTransaction().commit();
+            return result;
+        } catch (IOException | RuntimeException e) {
+            entityManager.getTransaction().rollback();
+            throw e;
+        }
+    }
+}
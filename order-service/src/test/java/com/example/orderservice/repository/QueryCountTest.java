@@ -0,0 +1,159 @@
+package com.example.orderservice.repository;
+
+import com.example.orderservice.dto.CompanyOrderDTO;
+import com.example.orderservice.model.Cart;
+import com.example.orderservice.model.Order;
+import com.example.orderservice.model.OrderDish;
+import com.example.orderservice.model.OrderStatus;
+import jakarta.persistence.EntityManager;
+import org.hibernate.SessionFactory;
+import org.hibernate.cfg.Configuration;
+import org.hibernate.stat.Statistics;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.lang.reflect.Field;
+import java.time.LocalDateTime;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Counts the SQL statements behind each read the endpoints make, against an in-memory H2
+ * database, so a change that brings back N+1 selects fails the build.
+ */
+class QueryCountTest {
+
+    private static final int ORDERS = 30;
+    private static final long USER_ID = 7L;
+
+    private static SessionFactory sessionFactory;
+
+    private EntityManager entityManager;
+    private OrderRepository orderRepository;
+    private CartRepository cartRepository;
+    private Statistics statistics;
+
+    @BeforeAll
+    static void createDatabase() {
+        sessionFactory = new Configuration()
+                .addAnnotatedClass(Order.class)
+                .addAnnotatedClass(OrderDish.class)
+                .addAnnotatedClass(Cart.class)
+                .setProperty("hibernate.connection.url", "jdbc:h2:mem:query-count;DB_CLOSE_DELAY=-1")
+                .setProperty("hibernate.hbm2ddl.auto", "create-drop")
+                .setProperty("hibernate.generate_statistics", "true")
+                .setProperty("jakarta.persistence.validation.mode", "none")
+                .buildSessionFactory();
+
+        EntityManager setup = sessionFactory.createEntityManager();
+        setup.getTransaction().begin();
+        for (int i = 0; i < ORDERS; i++) {
+            Order order = new Order();
+            order.setUserId(USER_ID);
+            order.setStatus(i % 2 == 0 ? OrderStatus.BEING_DELIVERED : OrderStatus.DELIVERED);
+            order.setCreatedAt(LocalDateTime.of(2026, 1, 1, 0, 0).plusHours(i));
+            order.getDishes().add(new OrderDish(1L, "Soup", "food", 10.0, 1));
+            order.getDishes().add(new OrderDish(2L, "Salad", "food", 8.0, 2));
+            order.getDishes().add(new OrderDish(3L, "Cake", "bakery", 5.0, 1));
+            setup.persist(order);
+        }
+        Cart cart = new Cart();
+        cart.setUserId(USER_ID);
+        cart.addDish(new OrderDish(1L, "Soup", "food", 10.0, 3));
+        cart.addDish(new OrderDish(2L, "Salad", "food", 8.0, 1));
+        setup.persist(cart);
+        setup.getTransaction().commit();
+        setup.close();
+    }
+
+    @AfterAll
+    static void dropDatabase() {
+        sessionFactory.close();
+    }
+
+    @BeforeEach
+    void setUp() throws Exception {
+        entityManager = sessionFactory.createEntityManager();
+        orderRepository = new OrderRepository();
+        cartRepository = new CartRepository();
+        inject(orderRepository, entityManager);
+        inject(cartRepository, entityManager);
+        statistics = sessionFactory.getStatistics();
+        statistics.clear();
+    }
+
+    @AfterEach
+    void tearDown() {
+        entityManager.close();
+    }
+
+    @Test
+    void userOrdersLoadWithTheirDishesInOneStatement() {
+        List<Order> orders = orderRepository.findByUserId(USER_ID);
+        int dishes = orders.stream().mapToInt(order -> order.getDishes().size()).sum();
+
+        assertEquals(ORDERS, orders.size());
+        assertEquals(ORDERS * 3, dishes);
+        assertStatements(1);
+    }
+
+    @Test
+    void singleOrderLoadsWithItsDishesInOneStatement() {
+        Long id = orderRepository.findByUserId(USER_ID).get(0).getId();
+        entityManager.clear();
+        statistics.clear();
+
+        Order order = orderRepository.findWithDishes(id);
+        assertEquals(3, order.getDishes().size());
+        assertStatements(1);
+    }
+
+    @Test
+    void orderWithoutFetchPlanDoesNotLoadDishes() {
+        List<Order> orders = orderRepository.findByStatus(OrderStatus.BEING_DELIVERED);
+
+        assertEquals(ORDERS / 2, orders.size());
+        assertStatements(1);
+    }
+
+    @Test
+    void dishesTouchedWithoutFetchPlanAreBatchLoaded() {
+        List<Order> orders = orderRepository.findByStatus(OrderStatus.DELIVERED);
+        orders.forEach(order -> order.getDishes().size());
+
+        // One select for the orders and one per 50 orders' dishes, never one per order
+        assertStatements(2);
+    }
+
+    @Test
+    void companyOrdersTakeTwoStatements() {
+        List<CompanyOrderDTO> orders = orderRepository.findByCompanyName("food");
+
+        assertEquals(ORDERS, orders.size());
+        assertTrue(orders.stream().allMatch(order -> order.getCompanyDishes().size() == 2));
+        assertStatements(2);
+    }
+
+    @Test
+    void cartLoadsWithItsDishesInOneStatement() {
+        Cart cart = cartRepository.findByUserId(USER_ID);
+
+        assertEquals(2, cart.getDishes().size());
+        assertStatements(1);
+    }
+
+    private void assertStatements(long expected) {
+        assertEquals(expected, statistics.getPrepareStatementCount(), "SQL statements");
+    }
+
+    private static void inject(Object repository, EntityManager entityManager) throws Exception {
+        Field field = repository.getClass().getDeclaredField("entityManager");
+        field.setAccessible(true);
+        field.set(repository, entityManager);
+    }
+}
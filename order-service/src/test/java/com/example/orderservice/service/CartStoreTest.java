@@ -0,0 +1,147 @@
+package com.example.orderservice.service;
+
+import com.example.orderservice.model.Cart;
+import com.example.orderservice.model.OrderDish;
+import com.example.orderservice.repository.CartRepository;
+import jakarta.persistence.OptimisticLockException;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class CartStoreTest {
+
+    private static final Long USER_ID = 1L;
+    private static final int EDITS = 1000;
+
+    private ScheduledExecutorService executor;
+    private InMemoryCartRepository repository;
+    private CartStore store;
+
+    @BeforeEach
+    void setUp() {
+        executor = Executors.newScheduledThreadPool(2);
+        repository = new InMemoryCartRepository();
+        store = new CartStore(executor, repository);
+    }
+
+    @AfterEach
+    void tearDown() {
+        executor.shutdownNow();
+    }
+
+    @Test
+    void burstOfEditsIsLoadedAndStoredOnce() throws InterruptedException {
+        for (int i = 0; i < EDITS; i++) {
+            store.addDish(USER_ID, (long) (i % 10), 1, "Dish " + i % 10, 5.0, "food");
+            store.get(USER_ID);
+        }
+        assertEquals(10, store.get(USER_ID).getDishes().size());
+
+        // Lets the pending flush run
+        executor.shutdown();
+        assertTrue(executor.awaitTermination(5, TimeUnit.SECONDS));
+
+        assertEquals(1, repository.loads.get());
+        assertEquals(1, repository.saves.get());
+        Cart stored = repository.findByUserId(USER_ID);
+        assertEquals(10, stored.getDishes().size());
+        assertEquals(EDITS, stored.getDishes().stream().mapToInt(OrderDish::getQuantity).sum());
+    }
+
+    @Test
+    void versionConflictAppliesUnsavedEditsToTheStoredCart() {
+        store.addDish(USER_ID, 1L, 1, "Soup", 10.0, "food");
+        store.flush(USER_ID);
+
+        // Another instance writes the cart in the meantime
+        Cart elsewhere = repository.findByUserId(USER_ID);
+        elsewhere.addDish(new OrderDish(2L, "Cake", "bakery", 5.0, 1));
+        repository.save(elsewhere);
+
+        store.addDish(USER_ID, 1L, 2, "Soup", 10.0, "food");
+        store.flush(USER_ID);
+        store.flush(USER_ID);
+
+        Cart stored = repository.findByUserId(USER_ID);
+        assertEquals(2, stored.getDishes().size());
+        assertEquals(3, quantityOf(stored, 1L));
+        assertEquals(1, quantityOf(stored, 2L));
+        assertEquals(2, store.get(USER_ID).getDishes().size());
+        assertEquals(3, quantityOf(store.get(USER_ID), 1L));
+    }
+
+    @Test
+    void storedCartIsNotReadAgainWithoutConflict() {
+        for (int i = 0; i < 5; i++) {
+            store.updateDish(USER_ID, 1L, i);
+            store.addDish(USER_ID, 1L, 1, "Soup", 10.0, "food");
+            store.flush(USER_ID);
+        }
+        store.clear(USER_ID);
+        store.flush(USER_ID);
+
+        assertEquals(1, repository.loads.get());
+        assertEquals(6, repository.saves.get());
+        assertTrue(repository.findByUserId(USER_ID).getDishes().isEmpty());
+    }
+
+    private static int quantityOf(Cart cart, Long dishId) {
+        return cart.getDishes().stream()
+                .filter(dish -> dish.getDishId().equals(dishId))
+                .mapToInt(OrderDish::getQuantity)
+                .sum();
+    }
+
+    private static Cart copy(Cart cart) {
+        Cart copy = new Cart();
+        copy.setId(cart.getId());
+        copy.setUserId(cart.getUserId());
+        copy.setVersion(cart.getVersion());
+        for (OrderDish dish : cart.getDishes()) {
+            copy.addDish(new OrderDish(dish.getDishId(), dish.getName(), dish.getCompanyName(),
+                    dish.getPrice(), dish.getQuantity()));
+        }
+        return copy;
+    }
+
+    private static class InMemoryCartRepository extends CartRepository {
+        private final Map<Long, Cart> carts = new ConcurrentHashMap<>();
+        private final AtomicLong ids = new AtomicLong();
+        final AtomicInteger loads = new AtomicInteger();
+        final AtomicInteger saves = new AtomicInteger();
+
+        @Override
+        public Cart findByUserId(Long userId) {
+            loads.incrementAndGet();
+            Cart cart = carts.get(userId);
+            return cart == null ? null : copy(cart);
+        }
+
+        @Override
+        public synchronized Cart save(Cart cart) {
+            saves.incrementAndGet();
+            Cart current = carts.get(cart.getUserId());
+            if (current != null && current.getVersion() != cart.getVersion()) {
+                throw new OptimisticLockException("Cart " + cart.getId() + " was changed");
+            }
+            Cart saved = copy(cart);
+            if (saved.getId() == null) {
+                saved.setId(ids.incrementAndGet());
+            }
+            saved.setVersion(cart.getVersion() + 1);
+            carts.put(saved.getUserId(), saved);
+            return copy(saved);
+        }
+    }
+}
@@ -0,0 +1,219 @@
+package com.example.orderservice.service;
+
+import com.example.orderservice.dto.StockConfirmationResponse;
+import com.example.orderservice.messaging.NotificationSender;
+import com.example.orderservice.model.Order;
+import com.example.orderservice.model.OrderStatus;
+import com.example.orderservice.repository.OrderRepository;
+import com.example.orderservice.repository.ProcessedMessageRepository;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class DeliverySchedulerTest {
+
+    private ScheduledThreadPoolExecutor executor;
+    private InMemoryOrderRepository repository;
+    private RecordingNotificationSender notificationSender;
+
+    @BeforeEach
+    void setUp() {
+        executor = new ScheduledThreadPoolExecutor(2);
+        repository = new InMemoryOrderRepository();
+        notificationSender = new RecordingNotificationSender();
+    }
+
+    @AfterEach
+    void tearDown() {
+        executor.shutdownNow();
+    }
+
+    @Test
+    void confirmationStartsDeliveryWithoutWaitingForIt() {
+        DeliveryScheduler scheduler = new DeliveryScheduler(executor, repository, TimeUnit.HOURS.toMillis(1));
+        OrderService orderService = orderService(scheduler);
+        Long confirmed = repository.save(newOrder()).getId();
+        Long outOfStock = repository.save(newOrder()).getId();
+
+        assertTrue(orderService.applyStockConfirmations("message-1", List.of(
+                new StockConfirmationResponse(confirmed, true, 80.0),
+                new StockConfirmationResponse(outOfStock, false, 80.0))));
+
+        // Returned with the completion still scheduled
+        assertEquals(OrderStatus.BEING_DELIVERED, repository.findById(confirmed).getStatus());
+        assertEquals(1, executor.getQueue().size());
+        assertEquals(OrderStatus.CANCELED, repository.findById(outOfStock).getStatus());
+        assertEquals(List.of(confirmed + ": confirmed - Your order is being processed",
+                outOfStock + ": Insufficient stock"), notificationSender.confirmations);
+        assertEquals(List.of(outOfStock + ": Insufficient stock"), notificationSender.paymentFailures);
+    }
+
+    @Test
+    void confirmedOrderIsDelivered() throws InterruptedException {
+        OrderService orderService = orderService(new DeliveryScheduler(executor, repository, 10));
+        Long id = repository.save(newOrder()).getId();
+
+        orderService.applyStockConfirmations("message-1", List.of(new StockConfirmationResponse(id, true, 80.0)));
+
+        executor.shutdown();
+        assertTrue(executor.awaitTermination(5, TimeUnit.SECONDS));
+        assertEquals(OrderStatus.DELIVERED, repository.findById(id).getStatus());
+    }
+
+    @Test
+    void redeliveredConfirmationIsSkipped() {
+        OrderService orderService = orderService(new DeliveryScheduler(executor, repository, TimeUnit.HOURS.toMillis(1)));
+        Long id = repository.save(newOrder()).getId();
+        List<StockConfirmationResponse> responses = List.of(new StockConfirmationResponse(id, true, 80.0));
+
+        assertTrue(orderService.applyStockConfirmations("message-1", responses));
+        assertFalse(orderService.applyStockConfirmations("message-1", responses));
+
+        assertEquals(1, notificationSender.confirmations.size());
+        assertEquals(1, executor.getQueue().size());
+    }
+
+    @Test
+    void confirmationBelowMinimumChargeCancelsTheOrder() {
+        OrderService orderService = orderService(new DeliveryScheduler(executor, repository, TimeUnit.HOURS.toMillis(1)));
+        Long id = repository.save(newOrder()).getId();
+
+        orderService.applyStockConfirmations("message-1", List.of(new StockConfirmationResponse(id, true, 20.0)));
+
+        assertEquals(OrderStatus.CANCELED, repository.findById(id).getStatus());
+        assertEquals(List.of(id + ": Minimum charge not met"), notificationSender.paymentFailures);
+        assertEquals(0, executor.getQueue().size());
+    }
+
+    @Test
+    void canceledOrderIsNotDelivered() throws InterruptedException {
+        DeliveryScheduler scheduler = new DeliveryScheduler(executor, repository, 50);
+
+        Order order = repository.save(beingDelivered());
+        scheduler.deliveryStarted(order.getId());
+        order.setStatus(OrderStatus.CANCELED);
+        repository.save(order);
+
+        executor.shutdown();
+        assertTrue(executor.awaitTermination(5, TimeUnit.SECONDS));
+        assertEquals(OrderStatus.CANCELED, repository.findById(order.getId()).getStatus());
+    }
+
+    @Test
+    void resumesOrdersThatWereBeingDelivered() throws InterruptedException {
+        Order order = newOrder();
+        order.setStatus(OrderStatus.BEING_DELIVERED);
+        repository.save(order);
+
+        new DeliveryScheduler(executor, repository, 10).resumeDeliveries();
+
+        executor.shutdown();
+        assertTrue(executor.awaitTermination(5, TimeUnit.SECONDS));
+        assertEquals(OrderStatus.DELIVERED, repository.findById(order.getId()).getStatus());
+    }
+
+    private OrderService orderService(DeliveryScheduler scheduler) {
+        return new OrderService(repository, notificationSender, scheduler, new InMemoryProcessedMessageRepository());
+    }
+
+    private static Order beingDelivered() {
+        Order order = newOrder();
+        order.setStatus(OrderStatus.BEING_DELIVERED);
+        return order;
+    }
+
+    private static Order newOrder() {
+        Order order = new Order();
+        order.setUserId(1L);
+        order.setStatus(OrderStatus.PENDING);
+        return order;
+    }
+
+    private static class InMemoryOrderRepository extends OrderRepository {
+        private final Map<Long, OrderStatus> statuses = new ConcurrentHashMap<>();
+        private final AtomicLong ids = new AtomicLong();
+
+        @Override
+        public Order findById(Long id) {
+            OrderStatus status = statuses.get(id);
+            if (status == null) {
+                return null;
+            }
+            Order order = newOrder();
+            order.setId(id);
+            order.setStatus(status);
+            return order;
+        }
+
+        @Override
+        public Order save(Order order) {
+            if (order.getId() == null) {
+                order.setId(ids.incrementAndGet());
+            }
+            statuses.put(order.getId(), order.getStatus());
+            return order;
+        }
+
+        @Override
+        public boolean transition(Long id, OrderStatus from, OrderStatus to) {
+            return statuses.replace(id, from, to);
+        }
+
+        @Override
+        public List<Order> findByStatus(OrderStatus status) {
+            List<Order> orders = new ArrayList<>();
+            statuses.forEach((id, current) -> {
+                if (current == status) {
+                    orders.add(findById(id));
+                }
+            });
+            return orders;
+        }
+    }
+
+    private static class InMemoryProcessedMessageRepository extends ProcessedMessageRepository {
+        private final Set<String> processed = ConcurrentHashMap.newKeySet();
+
+        @Override
+        public boolean isProcessed(String messageId) {
+            return processed.contains(messageId);
+        }
+
+        @Override
+        public void record(String messageId) {
+            processed.add(messageId);
+        }
+    }
+
+    private static class RecordingNotificationSender extends NotificationSender {
+        final List<String> confirmations = new ArrayList<>();
+        final List<String> paymentFailures = new ArrayList<>();
+
+        @Override
+        public void sendOrderConfirmation(Long orderId, String status, Long userId) {
+            confirmations.add(orderId + ": " + status);
+        }
+
+        @Override
+        public void sendPaymentFailure(Long orderId, String reason) {
+            paymentFailures.add(orderId + ": " + reason);
+        }
+
+        @Override
+        public void sendLogMessage(String service, String severity, String message) {
+        }
+    }
+}
@@ -0,0 +1,240 @@
+package com.example.product.codec;
+
+import com.example.product.dto.StockCheckBatch;
+import com.example.product.dto.StockCheckRequest;
+import com.example.product.dto.StockConfirmationBatch;
+import com.example.product.dto.StockConfirmationResponse;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Compact binary encoding of the stock check messages.
+ *
+ * Integers are written as varints, zig-zag encoded where they may be negative. Nullable
+ * ids and collections are written as value + 1, with 0 standing for null. Prices are
+ * written as the 8 bytes of the IEEE double. A StockCheckRequest is therefore:
+ *
+ *   orderId+1, entryCount+1, then (dishId, quantity) per entry
+ *
+ * and a StockConfirmationResponse is orderId+1, one inStock byte and the totalPrice.
+ * Batches are a count followed by their elements.
+ *
+ * This codec must stay byte for byte identical to the one in order-service.
+ */
+public class BinaryMessageCodec implements MessageCodec {
+    public static final String CONTENT_TYPE = "application/vnd.stock-message.v1+binary";
+
+    @Override
+    public String contentType() {
+        return CONTENT_TYPE;
+    }
+
+    @Override
+    public byte[] encode(Object value) throws IOException {
+        Writer writer = new Writer();
+        if (value instanceof StockCheckRequest) {
+            writeRequest(writer, (StockCheckRequest) value);
+        } else if (value instanceof StockCheckBatch) {
+            List<StockCheckRequest> requests = ((StockCheckBatch) value).getRequests();
+            writer.writeVarLong(requests.size());
+            for (StockCheckRequest request : requests) {
+                writeRequest(writer, request);
+            }
+        } else if (value instanceof StockConfirmationResponse) {
+            writeResponse(writer, (StockConfirmationResponse) value);
+        } else if (value instanceof StockConfirmationBatch) {
+            List<StockConfirmationResponse> responses = ((StockConfirmationBatch) value).getResponses();
+            writer.writeVarLong(responses.size());
+            for (StockConfirmationResponse response : responses) {
+                writeResponse(writer, response);
+            }
+        } else {
+            throw new IOException("No binary encoding for " + (value == null ? "null" : value.getClass().getName()));
+        }
+        return writer.toByteArray();
+    }
+
+    @Override
+    public <T> T decode(byte[] body, Class<T> type) throws IOException {
+        Reader reader = new Reader(body);
+        Object value;
+        if (type == StockCheckRequest.class) {
+            value = readRequest(reader);
+        } else if (type == StockCheckBatch.class) {
+            int count = reader.readCount();
+            List<StockCheckRequest> requests = new ArrayList<>(count);
+            for (int i = 0; i < count; i++) {
+                requests.add(readRequest(reader));
+            }
+            value = new StockCheckBatch(requests);
+        } else if (type == StockConfirmationResponse.class) {
+            value = readResponse(reader);
+        } else if (type == StockConfirmationBatch.class) {
+            int count = reader.readCount();
+            List<StockConfirmationResponse> responses = new ArrayList<>(count);
+            for (int i = 0; i < count; i++) {
+                responses.add(readResponse(reader));
+            }
+            value = new StockConfirmationBatch(responses);
+        } else {
+            throw new IOException("No binary encoding for " + type.getName());
+        }
+        if (reader.remaining() != 0) {
+            throw new IOException(reader.remaining() + " unexpected trailing byte(s) in " + type.getSimpleName());
+        }
+        return type.cast(value);
+    }
+
+    private static void writeRequest(Writer writer, StockCheckRequest request) {
+        writer.writeNullableLong(request.getOrderId());
+        Map<Long, Integer> quantities = request.getProductQuantities();
+        if (quantities == null) {
+            writer.writeVarLong(0);
+            return;
+        }
+        writer.writeVarLong(quantities.size() + 1L);
+        for (Map.Entry<Long, Integer> entry : quantities.entrySet()) {
+            writer.writeVarLong(zigZag(entry.getKey()));
+            writer.writeVarLong(zigZag(entry.getValue()));
+        }
+    }
+
+    private static StockCheckRequest readRequest(Reader reader) throws IOException {
+        Long orderId = reader.readNullableLong();
+        long size = reader.readVarLong();
+        Map<Long, Integer> quantities = null;
+        if (size > 0) {
+            int count = reader.checkCount(size - 1);
+            quantities = new LinkedHashMap<>(count * 2);
+            for (int i = 0; i < count; i++) {
+                long dishId = unZigZag(reader.readVarLong());
+                quantities.put(dishId, (int) unZigZag(reader.readVarLong()));
+            }
+        }
+        return new StockCheckRequest(orderId, quantities);
+    }
+
+    private static void writeResponse(Writer writer, StockConfirmationResponse response) {
+        writer.writeNullableLong(response.getOrderId());
+        writer.writeByte(response.isInStock() ? 1 : 0);
+        writer.writeLong(Double.doubleToLongBits(response.getTotalPrice()));
+    }
+
+    private static StockConfirmationResponse readResponse(Reader reader) throws IOException {
+        Long orderId = reader.readNullableLong();
+        boolean inStock = reader.readByte() != 0;
+        double totalPrice = Double.longBitsToDouble(reader.readLong());
+        return new StockConfirmationResponse(orderId, inStock, totalPrice);
+    }
+
+    private static long zigZag(long value) {
+        return (value << 1) ^ (value >> 63);
+    }
+
+    private static long unZigZag(long value) {
+        return (value >>> 1) ^ -(value & 1);
+    }
+
+    private static class Writer {
+        private byte[] buffer = new byte[64];
+        private int position;
+
+        void writeByte(int value) {
+            ensureCapacity(1);
+            buffer[position++] = (byte) value;
+        }
+
+        void writeVarLong(long value) {
+            ensureCapacity(10);
+            while ((value & ~0x7FL) != 0) {
+                buffer[position++] = (byte) ((value & 0x7F) | 0x80);
+                value >>>= 7;
+            }
+            buffer[position++] = (byte) value;
+        }
+
+        void writeNullableLong(Long value) {
+            // Ids are never negative, so shifting by one leaves room for null
+            writeVarLong(value == null ? 0 : value + 1);
+        }
+
+        void writeLong(long value) {
+            ensureCapacity(8);
+            for (int shift = 56; shift >= 0; shift -= 8) {
+                buffer[position++] = (byte) (value >>> shift);
+            }
+        }
+
+        byte[] toByteArray() {
+            return Arrays.copyOf(buffer, position);
+        }
+
+        private void ensureCapacity(int extra) {
+            if (position + extra > buffer.length) {
+                buffer = Arrays.copyOf(buffer, Math.max(buffer.length * 2, position + extra));
+            }
+        }
+    }
+
+    private static class Reader {
+        private final byte[] buffer;
+        private int position;
+
+        Reader(byte[] buffer) {
+            this.buffer = buffer;
+        }
+
+        int remaining() {
+            return buffer.length - position;
+        }
+
+        int readByte() throws IOException {
+            if (position >= buffer.length) {
+                throw new IOException("Truncated binary message");
+            }
+            return buffer[position++] & 0xFF;
+        }
+
+        long readVarLong() throws IOException {
+            long value = 0;
+            for (int shift = 0; shift < 64; shift += 7) {
+                int b = readByte();
+                value |= (long) (b & 0x7F) << shift;
+                if ((b & 0x80) == 0) {
+                    return value;
+                }
+            }
+            throw new IOException("Malformed varint in binary message");
+        }
+
+        Long readNullableLong() throws IOException {
+            long value = readVarLong();
+            return value == 0 ? null : value - 1;
+        }
+
+        long readLong() throws IOException {
+            long value = 0;
+            for (int i = 0; i < 8; i++) {
+                value = (value << 8) | readByte();
+            }
+            return value;
+        }
+
+        int readCount() throws IOException {
+            return checkCount(readVarLong());
+        }
+
+        int checkCount(long count) throws IOException {
+            // Every element takes at least one byte, which bounds what a corrupt count can allocate
+            if (count < 0 || count > remaining()) {
+                throw new IOException("Invalid element count " + count + " in binary message");
+            }
+            return (int) count;
+        }
+    }
+}
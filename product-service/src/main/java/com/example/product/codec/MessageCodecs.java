@@ -0,0 +1,30 @@
+package com.example.product.codec;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+/**
+ * The codecs this service understands. Outgoing messages use the codec named by
+ * -Dmessaging.codec (binary or json, default binary); incoming messages are decoded with
+ * the codec matching their content-type, and messages without one are taken to be JSON.
+ */
+public class MessageCodecs {
+    private final JsonMessageCodec json;
+    private final BinaryMessageCodec binary = new BinaryMessageCodec();
+    private final MessageCodec preferred;
+
+    public MessageCodecs(ObjectMapper objectMapper) {
+        this.json = new JsonMessageCodec(objectMapper);
+        this.preferred = "json".equalsIgnoreCase(System.getProperty("messaging.codec", "binary")) ? json : binary;
+    }
+
+    public MessageCodec preferred() {
+        return preferred;
+    }
+
+    public MessageCodec forContentType(String contentType) {
+        if (BinaryMessageCodec.CONTENT_TYPE.equals(contentType)) {
+            return binary;
+        }
+        return json;
+    }
+}
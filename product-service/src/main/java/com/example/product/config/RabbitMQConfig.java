@@ -1,48 +1,84 @@
 package com.example.product.config;
 
+import com.example.product.codec.MessageCodec;
+import com.example.product.codec.MessageCodecs;
+import com.example.product.codec.NotificationEvent;
+import com.example.product.dto.StockCheckBatch;
 import com.example.product.dto.StockCheckRequest;
+import com.example.product.dto.StockConfirmationBatch;
 import com.example.product.dto.StockConfirmationResponse;
-import com.example.product.model.Dish;
 import com.example.product.service.DishService;
+import com.example.product.service.StockLedger;
+import com.example.product.utils.StripedLocks;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
+import com.rabbitmq.client.AMQP;
 import com.rabbitmq.client.DeliverCallback;
 import jakarta.annotation.PostConstruct;
 import jakarta.annotation.PreDestroy;
+import jakarta.annotation.Resource;
 import jakarta.ejb.Singleton;
 import jakarta.ejb.Startup;
 import com.rabbitmq.client.Channel;
 import com.rabbitmq.client.Connection;
 import com.rabbitmq.client.ConnectionFactory;
 import jakarta.inject.Inject;
-import jakarta.persistence.EntityManager;
-import jakarta.persistence.PersistenceContext;
 
 import java.io.IOException;
-import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ExecutorService;
 import java.util.concurrent.TimeoutException;
+import java.util.concurrent.locks.Lock;
 
 @Singleton
 @Startup
 public class RabbitMQConfig {
     private Connection connection;
     private Channel channel;
+    private final List<Channel> consumerChannels = new ArrayList<>();
     private final ObjectMapper objectMapper = new ObjectMapper();
+    private final MessageCodecs codecs = new MessageCodecs(objectMapper);
 
-    @PersistenceContext(unitName = "product-service")
-    private EntityManager entityManager;
+    // Orders touching the same dish are serialized, orders on disjoint dishes run in parallel
+    private final StripedLocks dishLocks = new StripedLocks(DISH_LOCK_STRIPES);
+
+    @Resource(lookup = "java:comp/DefaultManagedExecutorService")
+    private ExecutorService consumerExecutor;
 
     @Inject
     private DishService dishService;
 
+    @Inject
+    private StockLedger stockLedger;
+
     public static final String STOCK_CONFIRMATION_QUEUE = "stock-confirmation";
     private static final String ORDER_STOCK_CHECK_QUEUE = "order-stock-check";
 
     public static final String SELLER_STOCK_CHECK_QUEUE = "seller-stock-check";
     public static final String ADMIN_LOG_EXCHANGE = "admin-log";
 
+    // AMQP message types of batched messages; messages without a type carry a single order
+    public static final String STOCK_CHECK_BATCH_TYPE = "StockCheckBatch";
+    public static final String STOCK_CONFIRMATION_BATCH_TYPE = "StockConfirmationBatch";
+
+    public static final AMQP.BasicProperties NOTIFICATION_EVENT_PROPERTIES = new AMQP.BasicProperties.Builder()
+            .contentType(NotificationEvent.CONTENT_TYPE)
+            .build();
+
+    // Stock check consumers, each on its own channel; override with -Dstock.check.consumers / -Dstock.check.prefetch
+    private static final int STOCK_CHECK_CONSUMERS =
+            Integer.getInteger("stock.check.consumers", Runtime.getRuntime().availableProcessors());
+    private static final int STOCK_CHECK_PREFETCH = Integer.getInteger("stock.check.prefetch", 10);
+    private static final int DISH_LOCK_STRIPES = 64;
+    // How long a consumer waits for the broker to confirm its replies before giving the delivery back
+    private static final long CONFIRM_TIMEOUT_MILLIS = Long.getLong("stock.check.confirm-timeout.ms", 5000);
+
     @PostConstruct
     public void init() {
         try {
@@ -55,26 +91,26 @@ public class RabbitMQConfig {
             factory.setUsername("guest");
             factory.setPassword("guest");
 
-            connection = factory.newConnection();
+            // Consumer callbacks run on the managed executor instead of unmanaged client threads
+            connection = factory.newConnection(consumerExecutor);
             channel = connection.createChannel();
 
             // Declare exchanges
             channel.exchangeDeclare(ADMIN_LOG_EXCHANGE, "topic", true);
 
-            // Declare queues
-            channel.queueDeclare(ORDER_STOCK_CHECK_QUEUE, false, false, false, null);
-            channel.queueDeclare(STOCK_CONFIRMATION_QUEUE, false, false, false, null);
-            channel.queueDeclare(SELLER_STOCK_CHECK_QUEUE, false, false, false, null);
+            // Durable queues, each with its delay queues and parking lot
+            QueueTopology.declare(channel, ORDER_STOCK_CHECK_QUEUE);
+            QueueTopology.declare(channel, STOCK_CONFIRMATION_QUEUE);
+            QueueTopology.declare(channel, SELLER_STOCK_CHECK_QUEUE);
 
             // Bind queues to exchanges
             channel.queueBind(SELLER_STOCK_CHECK_QUEUE, ADMIN_LOG_EXCHANGE, "Stock_*");
 
-            DeliverCallback deliverCallback = (consumerTag, delivery) -> {
-                String message = new String(delivery.getBody(), StandardCharsets.UTF_8);
-                processStockCheckRequest(message);
-            };
-
-            channel.basicConsume(ORDER_STOCK_CHECK_QUEUE, true, deliverCallback, consumerTag -> {});
+            for (int i = 0; i < STOCK_CHECK_CONSUMERS; i++) {
+                consumerChannels.add(startStockCheckConsumer());
+            }
+            System.out.println("\u001B[32m Started " + STOCK_CHECK_CONSUMERS + " stock check consumer(s) with prefetch " +
+                    STOCK_CHECK_PREFETCH + " \u001B[0m");
 
             System.out.println("\u001B[32m === RABBITMQ CONFIG INITIALIZED SUCCESSFULLY === \u001B[0m");
         } catch (IOException | TimeoutException e) {
@@ -91,118 +127,243 @@ public class RabbitMQConfig {
         return objectMapper;
     }
 
-    private void processStockCheckRequest(String message) {
-        try {
-            System.out.println("\u001B[34m Received stock check request: " + message + " \u001B[0m");
-
-            // Parse the message from JSON to StockCheckRequest object
-            StockCheckRequest request = objectMapper.readValue(message, StockCheckRequest.class);
+    private Channel startStockCheckConsumer() throws IOException {
+        Channel consumerChannel = connection.createChannel();
+        consumerChannel.basicQos(STOCK_CHECK_PREFETCH);
+        // Replies are confirmed before the request is acked, so a lost reply means a redelivery
+        consumerChannel.confirmSelect();
+
+        DeliverCallback deliverCallback = (consumerTag, delivery) -> {
+            long deliveryTag = delivery.getEnvelope().getDeliveryTag();
+            // Reply in the encoding of the request, so the order service can always read it
+            MessageCodec codec = codecs.forContentType(delivery.getProperties().getContentType());
+            boolean batch = STOCK_CHECK_BATCH_TYPE.equals(delivery.getProperties().getType());
+            // A request seen before may have reserved its stock already
+            boolean seenBefore = delivery.getEnvelope().isRedeliver()
+                    || QueueTopology.retryCount(delivery.getProperties()) > 0;
+
+            List<StockCheckRequest> requests;
+            try {
+                requests = batch
+                        ? codec.decode(delivery.getBody(), StockCheckBatch.class).getRequests()
+                        : List.of(codec.decode(delivery.getBody(), StockCheckRequest.class));
+            } catch (Exception e) {
+                // Reading it again will not go any better; rejecting dead-letters it to the parking lot
+                reportStockCheckError(consumerChannel, e);
+                consumerChannel.basicReject(deliveryTag, false);
+                return;
+            }
 
-            System.out.println("\u001B[34m Deserialized request: " + request + " \u001B[0m");
+            List<StockCheckRequest> failed = batch
+                    ? processStockCheckBatch(consumerChannel, codec, requests, seenBefore)
+                    : processStockCheckRequest(consumerChannel, codec, requests.get(0), seenBefore);
+            if (!failed.isEmpty()) {
+                // Only the orders that failed go round again, the others are confirmed already
+                retry(consumerChannel, codec, delivery.getProperties(), failed);
+            }
+            // Ack only once the reply and retry are safely with the broker, so a crash or a lost
+            // publish redelivers the request; reservations are idempotent per order
+            if (awaitConfirms(consumerChannel)) {
+                consumerChannel.basicAck(deliveryTag, false);
+            } else {
+                consumerChannel.basicNack(deliveryTag, false, true);
+            }
+        };
 
-            Long orderId = request.getOrderId();
-            Map<Long, Integer> productQuantities = request.getProductQuantities();
+        consumerChannel.basicConsume(ORDER_STOCK_CHECK_QUEUE, false, deliverCallback, consumerTag -> {});
+        return consumerChannel;
+    }
 
-            if (orderId == null || productQuantities == null) {
-                throw new IllegalArgumentException("Invalid request format: orderId or productQuantities is null");
+    private static boolean awaitConfirms(Channel channel) {
+        try {
+            if (channel.waitForConfirms(CONFIRM_TIMEOUT_MILLIS)) {
+                return true;
             }
+            System.err.println("\u001B[31m Broker rejected a stock check reply, requeueing the request \u001B[0m");
+        } catch (TimeoutException e) {
+            System.err.println("\u001B[31m Stock check reply not confirmed in time, requeueing the request \u001B[0m");
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        return false;
+    }
 
-            // Convert to map with Long values
-            Map<Long, Long> productCounts = new HashMap<>();
-            for (Map.Entry<Long, Integer> entry : productQuantities.entrySet()) {
-                productCounts.put(entry.getKey(), entry.getValue().longValue());
-            }
+    /**
+     * Returns the request back if it could not be checked.
+     */
+    private List<StockCheckRequest> processStockCheckRequest(Channel replyChannel, MessageCodec codec,
+                                                             StockCheckRequest request, boolean seenBefore) throws IOException {
+        System.out.println("\u001B[34m Received stock check request: " + request + " as " + codec.contentType() + " \u001B[0m");
 
-            System.out.println("\u001B[35m Processing order: \u001B[0m " + orderId +
-                    " with products: " + productCounts);
-
-            boolean allInStock = checkStock(productCounts);
-            double totalPrice = calculateTotalPrice(productCounts);
-
-            // Create response object
-            StockConfirmationResponse response = new StockConfirmationResponse(
-                    orderId,
-                    allInStock,
-                    totalPrice
-            );
-
-            // Serialize to JSON and send
-            String jsonResponse = objectMapper.writeValueAsString(response);
-            System.out.println("\u001B[34m Sending response: " + jsonResponse + " \u001B[0m");
-
-            channel.basicPublish(
-                    "",  // Default exchange
-                    STOCK_CONFIRMATION_QUEUE,
-                    null,
-                    jsonResponse.getBytes(StandardCharsets.UTF_8)
-            );
-
-            if (allInStock) {
-                dishService.decreaseStock(productCounts);
-                System.out.println("\u001B[35m Stock decreased for order ID: \u001B[0m " + orderId);
-            } else {
-                System.out.println("\u001B[31m Insufficient stock for order ID: \u001B[0m " + orderId);
+        StockConfirmationResponse response;
+        try {
+            response = checkOrder(request, seenBefore);
+        } catch (Exception e) {
+            reportStockCheckError(replyChannel, e);
+            return List.of(request);
+        }
+        System.out.println("\u001B[34m Sending response: " + response + " \u001B[0m");
+
+        // The message id lets the order service recognise a redelivered confirmation
+        AMQP.BasicProperties properties = new AMQP.BasicProperties.Builder()
+                .contentType(codec.contentType())
+                .messageId(UUID.randomUUID().toString())
+                .build();
+        replyChannel.basicPublish(
+                "",  // Default exchange
+                STOCK_CONFIRMATION_QUEUE,
+                properties,
+                codec.encode(response)
+        );
+        return List.of();
+    }
+
+    /**
+     * Returns the requests of the batch that could not be checked.
+     */
+    private List<StockCheckRequest> processStockCheckBatch(Channel replyChannel, MessageCodec codec,
+                                                           List<StockCheckRequest> requests, boolean seenBefore) throws IOException {
+        System.out.println("\u001B[34m Received stock check batch of " + requests.size() + " order(s) \u001B[0m");
+
+        // Load every dish the batch touches that the ledger does not know yet in one query
+        Set<Long> dishIds = new HashSet<>();
+        for (StockCheckRequest request : requests) {
+            if (request.getProductQuantities() != null) {
+                dishIds.addAll(request.getProductQuantities().keySet());
             }
+        }
+        List<StockCheckRequest> failed = new ArrayList<>();
+        try {
+            stockLedger.loadMissing(dishIds);
         } catch (Exception e) {
-            System.err.println("\u001B[31m Error processing stock check request: " + e.getMessage() + " \u001B[0m");
-            e.printStackTrace();
+            reportStockCheckError(replyChannel, e);
+            return requests;
+        }
 
+        List<StockConfirmationResponse> responses = new ArrayList<>(requests.size());
+        for (StockCheckRequest request : requests) {
             try {
-                // Send error to admin log exchange
-                if (channel != null) {
-                    String errorMessage = "Product_Error:" + e.getMessage();
-                    channel.basicPublish(ADMIN_LOG_EXCHANGE, "Product_Error", null,
-                            errorMessage.getBytes(StandardCharsets.UTF_8));
-                    System.out.println("\u001B[31m Sent error to admin log: " + errorMessage + "\u001B[0m");
-                }
-            } catch (IOException ioException) {
-                ioException.printStackTrace();
+                responses.add(checkOrder(request, seenBefore));
+            } catch (Exception e) {
+                // One bad order must not hold back the rest of the batch
+                reportStockCheckError(replyChannel, e);
+                failed.add(request);
             }
         }
+        if (responses.isEmpty()) {
+            return failed;
+        }
+
+        System.out.println("\u001B[34m Sending " + responses.size() + " stock confirmation(s) \u001B[0m");
+
+        AMQP.BasicProperties properties = new AMQP.BasicProperties.Builder()
+                .type(STOCK_CONFIRMATION_BATCH_TYPE)
+                .contentType(codec.contentType())
+                .messageId(UUID.randomUUID().toString())
+                .build();
+        replyChannel.basicPublish(
+                "",  // Default exchange
+                STOCK_CONFIRMATION_QUEUE,
+                properties,
+                codec.encode(new StockConfirmationBatch(responses))
+        );
+        return failed;
     }
 
-    private boolean checkStock(Map<Long, Long> productCounts) {
-        for (Map.Entry<Long, Long> entry : productCounts.entrySet()) {
-            Long productId = entry.getKey();
-            Long quantity = entry.getValue();
-
-            System.out.println("\u001B[35m Checking stock for product ID: \u001B[0m " +
-                    productId + " (quantity needed: " + quantity + ")");
-
-            Dish dish = entityManager.find(Dish.class, productId);
-            if (dish == null || dish.getStockCount() < quantity) {
-                System.out.println("\u001B[31m Product " + productId +
-                        " insufficient stock: available=" +
-                        (dish != null ? dish.getStockCount() : 0) +
-                        ", needed=" + quantity + "\u001B[0m");
-                return false;
+    private void retry(Channel channel, MessageCodec codec, AMQP.BasicProperties received,
+                       List<StockCheckRequest> failed) throws IOException {
+        // Keeps the retry count of the delivery; a lone request travels as a plain StockCheckRequest
+        AMQP.BasicProperties properties = received.builder()
+                .type(failed.size() == 1 ? null : STOCK_CHECK_BATCH_TYPE)
+                .contentType(codec.contentType())
+                .build();
+        byte[] body = failed.size() == 1
+                ? codec.encode(failed.get(0))
+                : codec.encode(new StockCheckBatch(new ArrayList<>(failed)));
+        QueueTopology.retry(channel, ORDER_STOCK_CHECK_QUEUE, properties, body);
+    }
+
+    private void reportStockCheckError(Channel replyChannel, Exception e) {
+        System.err.println("\u001B[31m Error processing stock check request: " + e.getMessage() + " \u001B[0m");
+        e.printStackTrace();
+
+        try {
+            // Send error to admin log exchange
+            if (replyChannel.isOpen()) {
+                NotificationEvent event = NotificationEvent.log("Product", "Error", e.getMessage());
+                replyChannel.basicPublish(ADMIN_LOG_EXCHANGE, "Product_Error", NOTIFICATION_EVENT_PROPERTIES,
+                        event.encode());
+                System.out.println("\u001B[31m Sent error to admin log: " + event + "\u001B[0m");
             }
+        } catch (IOException ioException) {
+            ioException.printStackTrace();
+        }
+    }
+
+    private StockConfirmationResponse checkOrder(StockCheckRequest request, boolean seenBefore) {
+        Long orderId = request.getOrderId();
+        Map<Long, Integer> productQuantities = request.getProductQuantities();
+
+        if (orderId == null || productQuantities == null) {
+            throw new IllegalArgumentException("Invalid request format: orderId or productQuantities is null");
+        }
+
+        // Convert to map with Long values
+        Map<Long, Long> productCounts = new HashMap<>();
+        for (Map.Entry<Long, Integer> entry : productQuantities.entrySet()) {
+            productCounts.put(entry.getKey(), entry.getValue().longValue());
+        }
+
+        System.out.println("\u001B[35m Processing order: \u001B[0m " + orderId +
+                " with products: " + productCounts);
+
+        List<Lock> locks = dishLocks.lockAll(productCounts.keySet());
+        try {
+            return checkAndReserve(orderId, productCounts, seenBefore);
+        } finally {
+            dishLocks.unlockAll(locks);
         }
-        return true;
     }
 
-    private double calculateTotalPrice(Map<Long, Long> productCounts) {
-        double totalPrice = 0.0;
-        for (Map.Entry<Long, Long> entry : productCounts.entrySet()) {
-            Long productId = entry.getKey();
-            Long quantity = entry.getValue();
-
-            Dish dish = entityManager.find(Dish.class, productId);
-            if (dish != null) {
-                double itemTotal = dish.getPrice() * quantity;
-                totalPrice += itemTotal;
-                System.out.println("\u001B[36m Product " + productId +
-                        ": $" + dish.getPrice() + " x " + quantity +
-                        " = $" + itemTotal + "\u001B[0m");
+    private StockConfirmationResponse checkAndReserve(Long orderId, Map<Long, Long> productCounts, boolean seenBefore) {
+        // Priced before reserving, so nothing after the reservation can fail the check
+        Double cachedTotal = stockLedger.totalPrice(productCounts);
+        double totalPrice = cachedTotal != null ? cachedTotal : dishService.calculateTotalPrice(productCounts);
+
+        boolean allInStock;
+        if (!seenBefore && stockLedger.lacksStock(productCounts)) {
+            // Known to be short, no need to touch the database. Not trusted for an order seen
+            // before, whose own earlier reservation may be what the ledger is missing.
+            allInStock = false;
+        } else {
+            // Reserve first so the confirmation only goes out once stock is actually held
+            DishService.Reservation reservation = dishService.reserveStock(orderId, productCounts);
+            allInStock = reservation != DishService.Reservation.INSUFFICIENT;
+            if (reservation == DishService.Reservation.RESERVED) {
+                stockLedger.applyReservation(productCounts);
+            } else if (reservation == DishService.Reservation.INSUFFICIENT) {
+                // The ledger thought the order fits, so it is stale for these dishes
+                stockLedger.refresh(productCounts.keySet());
             }
         }
-        System.out.println("\u001B[36m Total price: $" + totalPrice + "\u001B[0m");
-        return totalPrice;
+
+        if (allInStock) {
+            System.out.println("\u001B[35m Stock decreased for order ID: \u001B[0m " + orderId);
+        } else {
+            System.out.println("\u001B[31m Insufficient stock for order ID: \u001B[0m " + orderId);
+        }
+
+        return new StockConfirmationResponse(orderId, allInStock, totalPrice);
     }
 
     @PreDestroy
     public void cleanup() {
         try {
+            for (Channel consumerChannel : consumerChannels) {
+                if (consumerChannel.isOpen()) {
+                    consumerChannel.close();
+                }
+            }
             if (channel != null && channel.isOpen()) {
                 channel.close();
             }
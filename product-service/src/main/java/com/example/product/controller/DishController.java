@@ -1,12 +1,15 @@
 package com.example.product.controller;
 
 
-import com.example.product.utils.Jwt;
+import com.example.product.dto.DishQuery;
+import com.example.product.utils.AuthContext;
 import com.example.product.utils.Roles;
 import com.example.product.service.DishService;
 import jakarta.inject.Inject;
 import jakarta.ws.rs.*;
+import jakarta.ws.rs.core.Context;
 import jakarta.ws.rs.core.MediaType;
+import jakarta.ws.rs.core.Request;
 import jakarta.ws.rs.core.Response;
 
 @Path("/dish")
@@ -17,29 +20,29 @@ public class DishController {
     @Inject
     DishService dishService;
 
+    @Inject
+    AuthContext auth;
+
     Roles ROLES;
 
     @Path("/create")
     @POST
     public Response createDish(
-            @HeaderParam("Authorization") String authHeader,
             @QueryParam("name") String name,
             @QueryParam("description") String description,
             @QueryParam("price") double price,
             @QueryParam("stockCount") int stockCount) {
         try {
-            if (authHeader == null || !authHeader.startsWith("Bearer ")) {
+            if (!auth.isAuthenticated()) {
                 return Response.status(Response.Status.UNAUTHORIZED)
                         .entity("Valid authentication token required").build();
             }
 
-            String token = authHeader.substring("Bearer ".length());
-            String role = Jwt.getRole(token);
-            if (!role.equals(ROLES.RESTAURANT_REPRESENTATIVE.toString())) {
+            if (!ROLES.RESTAURANT_REPRESENTATIVE.toString().equals(auth.getRole())) {
                 return Response.status(Response.Status.FORBIDDEN)
                         .entity("Unauthorized access").build();
             }
-            String companyName = Jwt.getCompany(token);
+            String companyName = auth.getCompany();
 
             if (name == null || name.trim().isEmpty()) {
                 return Response.status(Response.Status.BAD_REQUEST)
@@ -57,15 +60,15 @@ public class DishController {
             }
 
             // add 10 dishs statically
-            dishService.createDish("fish", "fish", 10.0, companyName, 10, token);
-            dishService.createDish("chicken", "chicken", 10.0, companyName, 10, token);
-            dishService.createDish("beef", "beef", 10.0, companyName, 10, token);
-            dishService.createDish("pork", "pork", 10.0, companyName, 10, token);
-            dishService.createDish("vegetable", "vegetable", 10.0, companyName, 10, token);
-            dishService.createDish("fruit", "fruit", 10.0, companyName, 3, token);
-            dishService.createDish("salad", "salad", 10.0, companyName, 10, token);
-            dishService.createDish("soup", "soup", 10.0, companyName, 10, token);
-            return dishService.createDish(name, description, price, companyName, stockCount, token);
+            dishService.createDish("fish", "fish", 10.0, companyName, 10);
+            dishService.createDish("chicken", "chicken", 10.0, companyName, 10);
+            dishService.createDish("beef", "beef", 10.0, companyName, 10);
+            dishService.createDish("pork", "pork", 10.0, companyName, 10);
+            dishService.createDish("vegetable", "vegetable", 10.0, companyName, 10);
+            dishService.createDish("fruit", "fruit", 10.0, companyName, 3);
+            dishService.createDish("salad", "salad", 10.0, companyName, 10);
+            dishService.createDish("soup", "soup", 10.0, companyName, 10);
+            return dishService.createDish(name, description, price, companyName, stockCount);
 
         } catch (Exception e) {
             return Response.status(Response.Status.INTERNAL_SERVER_ERROR)
@@ -75,22 +78,24 @@ public class DishController {
 
     @GET
     @Path("/getDishes")
-    public Response viewDishes(@HeaderParam("Authorization") String authHeader) {
+    public Response viewDishes(@BeanParam DishQuery query) {
         try {
-            if (authHeader == null || !authHeader.startsWith("Bearer ")) {
+            if (!auth.isAuthenticated()) {
                 return Response.status(Response.Status.UNAUTHORIZED)
                         .entity("Valid authentication token required").build();
             }
 
-            String token = authHeader.substring("Bearer ".length());
-            String role = Jwt.getRole(token);
-            if (!role.equals(ROLES.RESTAURANT_REPRESENTATIVE.toString())) {
+            if (!ROLES.RESTAURANT_REPRESENTATIVE.toString().equals(auth.getRole())) {
                 return Response.status(Response.Status.FORBIDDEN)
                         .entity("Unauthorized access").build();
             }
 
-            String companyName = Jwt.getCompany(token);
-            return dishService.getDishesByCompanyName(companyName);
+            String companyName = auth.getCompany();
+            if (query.isUnpaged()) {
+                return dishService.getDishesByCompanyName(companyName);
+            }
+            // Sellers only ever page through their own dishes
+            return dishService.getDishPage(query, companyName);
 
         } catch (Exception e) {
             return Response.status(Response.Status.INTERNAL_SERVER_ERROR)
@@ -100,22 +105,25 @@ public class DishController {
 
     @GET
     @Path("/getDishForCustomer")
-    public Response viewDishForCustomer(@HeaderParam("Authorization") String authHeader) {
+    public Response viewDishForCustomer(@BeanParam DishQuery query,
+                                        @Context Request request) {
         try {
-            if (authHeader == null || !authHeader.startsWith("Bearer ")) {
+            if (!auth.isAuthenticated()) {
                 return Response.status(Response.Status.UNAUTHORIZED)
                         .entity("Valid authentication token required").build();
             }
 
-            String token = authHeader.substring("Bearer ".length());
-            String role = Jwt.getRole(token);
-            if (!role.equals(ROLES.CUSTOMER.toString())) {
+            if (!ROLES.CUSTOMER.toString().equals(auth.getRole())) {
                 return Response.status(Response.Status.FORBIDDEN)
                         .entity("Unauthorized access").build();
             }
 
 
-            return dishService.getAllDishes();
+            if (!query.isUnpaged()) {
+                return dishService.getDishPage(query, query.getCompanyName());
+            }
+            // Served from the catalog cache, with If-None-Match support
+            return dishService.getAllDishes(request);
 
         } catch (Exception e) {
             return Response.status(Response.Status.INTERNAL_SERVER_ERROR)
@@ -123,30 +131,50 @@ public class DishController {
         }
     }
 
+    @GET
+    @Path("/search")
+    public Response searchDishes(
+            @QueryParam("q") String query,
+            @QueryParam("limit") Integer limit) {
+        try {
+            if (!auth.isAuthenticated()) {
+                return Response.status(Response.Status.UNAUTHORIZED)
+                        .entity("Valid authentication token required").build();
+            }
+
+            if (!ROLES.CUSTOMER.toString().equals(auth.getRole())) {
+                return Response.status(Response.Status.FORBIDDEN)
+                        .entity("Unauthorized access").build();
+            }
+
+            return dishService.searchDishes(query, limit);
+        } catch (Exception e) {
+            return Response.status(Response.Status.INTERNAL_SERVER_ERROR)
+                    .entity("Error searching dishes: " + e.getMessage()).build();
+        }
+    }
+
     @PUT
     @Path("/update")
     public Response updateDish(
-            @HeaderParam("Authorization") String authHeader,
             @QueryParam("dishId") Long dishId,
             @QueryParam("name") String name,
             @QueryParam("description") String description,
             @QueryParam("price") Double price,
             @QueryParam("stockCount") Integer stockCount) {
         try {
-            if (authHeader == null || !authHeader.startsWith("Bearer ")) {
+            if (!auth.isAuthenticated()) {
                 return Response.status(Response.Status.UNAUTHORIZED)
                         .entity("Valid authentication token required").build();
             }
 
-            String token = authHeader.substring("Bearer ".length());
-            String role = Jwt.getRole(token);
-            if (!role.equals(ROLES.RESTAURANT_REPRESENTATIVE.toString())) {
+            if (!ROLES.RESTAURANT_REPRESENTATIVE.toString().equals(auth.getRole())) {
                 return Response.status(Response.Status.FORBIDDEN)
                         .entity("Unauthorized access").build();
             }
-            String companyName = Jwt.getCompany(token);
+            String companyName = auth.getCompany();
 
-            return dishService.updateDish(dishId, name, description, price, stockCount, companyName, token);
+            return dishService.updateDish(dishId, name, description, price, stockCount, companyName);
         } catch (Exception e) {
             return Response.status(Response.Status.INTERNAL_SERVER_ERROR)
                     .entity("Error updating dish: " + e.getMessage()).build();
@@ -156,21 +184,18 @@ public class DishController {
     @DELETE
     @Path("/delete")
     public Response deleteDish(
-            @HeaderParam("Authorization") String authHeader,
             @QueryParam("dishId") Long dishId) {
         try {
-            if (authHeader == null || !authHeader.startsWith("Bearer ")) {
+            if (!auth.isAuthenticated()) {
                 return Response.status(Response.Status.UNAUTHORIZED)
                         .entity("Valid authentication token required").build();
             }
 
-            String token = authHeader.substring("Bearer ".length());
-            String role = Jwt.getRole(token);
-            if (!role.equals(ROLES.RESTAURANT_REPRESENTATIVE.toString())) {
+            if (!ROLES.RESTAURANT_REPRESENTATIVE.toString().equals(auth.getRole())) {
                 return Response.status(Response.Status.FORBIDDEN)
                         .entity("Unauthorized access").build();
             }
-            String companyName = Jwt.getCompany(token);
+            String companyName = auth.getCompany();
 
             return dishService.deleteDish(dishId, companyName);
         } catch (Exception e) {
@@ -181,20 +206,18 @@ public class DishController {
 
     @GET
     @Path("/getSoldDishes")
-    public Response getSoldDishes(@HeaderParam("Authorization") String authHeader) {
+    public Response getSoldDishes() {
         try {
-            if (authHeader == null || !authHeader.startsWith("Bearer ")) {
+            if (!auth.isAuthenticated()) {
                 return Response.status(Response.Status.UNAUTHORIZED)
                         .entity("Valid authentication token required").build();
             }
 
-            String token = authHeader.substring("Bearer ".length());
-            String role = Jwt.getRole(token);
-            if (!role.equals(ROLES.RESTAURANT_REPRESENTATIVE.toString())) {
+            if (!ROLES.RESTAURANT_REPRESENTATIVE.toString().equals(auth.getRole())) {
                 return Response.status(Response.Status.FORBIDDEN)
                         .entity("Unauthorized access").build();
             }
-            String companyName = Jwt.getCompany(token);
+            String companyName = auth.getCompany();
 
             return dishService.getSoldDishesByCompanyName(companyName);
         } catch (Exception e) {
@@ -0,0 +1,27 @@
+package com.example.product.dto;
+
+import com.example.product.model.Dish;
+
+import java.io.Serializable;
+import java.util.List;
+
+public class DishPage implements Serializable {
+    private List<Dish> dishes;
+    // Pass as cursor to get the next page; null on the last page
+    private String nextCursor;
+
+    // Default constructor for serialization
+    public DishPage() {}
+
+    public DishPage(List<Dish> dishes, String nextCursor) {
+        this.dishes = dishes;
+        this.nextCursor = nextCursor;
+    }
+
+    // Getters and setters
+    public List<Dish> getDishes() { return dishes; }
+    public void setDishes(List<Dish> dishes) { this.dishes = dishes; }
+
+    public String getNextCursor() { return nextCursor; }
+    public void setNextCursor(String nextCursor) { this.nextCursor = nextCursor; }
+}
@@ -0,0 +1,72 @@
+package com.example.product.dto;
+
+import jakarta.ws.rs.QueryParam;
+
+/**
+ * Paging, filter and sort parameters of the dish listing endpoints, bound with @BeanParam.
+ * The cursor is the opaque nextCursor of the previous page and must be used with the same sort.
+ */
+public class DishQuery {
+    public static final int DEFAULT_LIMIT = 50;
+    public static final int MAX_LIMIT = 500;
+
+    @QueryParam("limit")
+    private Integer limit;
+
+    @QueryParam("cursor")
+    private String cursor;
+
+    @QueryParam("company")
+    private String companyName;
+
+    @QueryParam("minPrice")
+    private Double minPrice;
+
+    @QueryParam("maxPrice")
+    private Double maxPrice;
+
+    @QueryParam("inStock")
+    private Boolean inStock;
+
+    // id (default), price, price_desc or name
+    @QueryParam("sort")
+    private String sort;
+
+    /**
+     * True when none of the paging parameters were given, in which case the endpoints keep
+     * returning the plain list of all dishes.
+     */
+    public boolean isUnpaged() {
+        return limit == null && cursor == null && companyName == null && minPrice == null
+                && maxPrice == null && inStock == null && sort == null;
+    }
+
+    public int getEffectiveLimit() {
+        if (limit == null || limit <= 0) {
+            return DEFAULT_LIMIT;
+        }
+        return Math.min(limit, MAX_LIMIT);
+    }
+
+    // Getters and setters
+    public Integer getLimit() { return limit; }
+    public void setLimit(Integer limit) { this.limit = limit; }
+
+    public String getCursor() { return cursor; }
+    public void setCursor(String cursor) { this.cursor = cursor; }
+
+    public String getCompanyName() { return companyName; }
+    public void setCompanyName(String companyName) { this.companyName = companyName; }
+
+    public Double getMinPrice() { return minPrice; }
+    public void setMinPrice(Double minPrice) { this.minPrice = minPrice; }
+
+    public Double getMaxPrice() { return maxPrice; }
+    public void setMaxPrice(Double maxPrice) { this.maxPrice = maxPrice; }
+
+    public Boolean getInStock() { return inStock; }
+    public void setInStock(Boolean inStock) { this.inStock = inStock; }
+
+    public String getSort() { return sort; }
+    public void setSort(String sort) { this.sort = sort; }
+}
@@ -4,7 +4,14 @@ package com.example.product.model;
 import jakarta.persistence.*;
 
 @Entity
-@Table(name = "dish")
+@Table(name = "dish", indexes = {
+        // Keyset pages: each index ends in id so "after (value, id)" is a single range scan
+        @Index(name = "idx_dish_company_id", columnList = "companyName, id"),
+        @Index(name = "idx_dish_company_price", columnList = "companyName, price, id"),
+        @Index(name = "idx_dish_price_id", columnList = "price, id"),
+        @Index(name = "idx_dish_name_id", columnList = "name, id"),
+        @Index(name = "idx_dish_stock_count", columnList = "stockCount")
+})
 @NamedQueries(
         {
                 @NamedQuery(name = "Dish.findByName",
@@ -16,7 +23,23 @@ import jakarta.persistence.*;
                 @NamedQuery(name = "Dish.findByStockCount",
                         query = "SELECT d FROM Dish d WHERE d.stockCount >= :stockCount"),
                 @NamedQuery(name = "Dish.findAll",
-                        query = "SELECT d FROM Dish d")
+                        query = "SELECT d FROM Dish d"),
+                @NamedQuery(name = "Dish.findByIds",
+                        query = "SELECT d FROM Dish d WHERE d.id IN :ids"),
+                @NamedQuery(name = "Dish.findStockLevels",
+                        query = "SELECT d.id, d.stockCount, d.price FROM Dish d"),
+                @NamedQuery(name = "Dish.findSearchFields",
+                        query = "SELECT d.id, d.name, d.description FROM Dish d"),
+                @NamedQuery(name = "Dish.findPricesByIds",
+                        query = "SELECT d.id, d.price FROM Dish d WHERE d.id IN :ids"),
+                // Guarded decrement: updates nothing when the dish does not have enough stock left
+                @NamedQuery(name = "Dish.reserveStock",
+                        query = "UPDATE Dish d SET d.stockCount = d.stockCount - :quantity " +
+                                "WHERE d.id = :id AND d.stockCount >= :quantity"),
+                // Relative, so reservations committed meanwhile are kept; never takes stock below zero
+                @NamedQuery(name = "Dish.adjustStock",
+                        query = "UPDATE Dish d SET d.stockCount = d.stockCount + :delta " +
+                                "WHERE d.id = :id AND d.stockCount + :delta >= 0")
         }
 )
 public class Dish {
@@ -0,0 +1,36 @@
+package com.example.product.model;
+
+import jakarta.persistence.*;
+import java.time.LocalDateTime;
+
+/**
+ * Marks the order whose stock has been reserved. It is written in the same transaction as
+ * the reservation, so a redelivered stock check for the order finds it and does not take
+ * the stock a second time. Rows are removed once they are older than any redelivery could be.
+ */
+@Entity
+@Table(name = "stock_reservations", indexes = {
+        @Index(name = "idx_stock_reservations_reserved_at", columnList = "reservedAt")
+})
+@NamedQueries({
+        @NamedQuery(name = "StockReservation.deleteBefore",
+                query = "DELETE FROM StockReservation r WHERE r.reservedAt < :before")
+})
+public class StockReservation {
+    @Id
+    private Long orderId;
+
+    @Column(nullable = false)
+    private LocalDateTime reservedAt;
+
+    public StockReservation() {
+    }
+
+    public StockReservation(Long orderId) {
+        this.orderId = orderId;
+        this.reservedAt = LocalDateTime.now();
+    }
+
+    public Long getOrderId() { return orderId; }
+    public LocalDateTime getReservedAt() { return reservedAt; }
+}
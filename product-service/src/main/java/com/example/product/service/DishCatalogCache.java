@@ -0,0 +1,152 @@
+package com.example.product.service;
+
+import com.example.product.model.Dish;
+import com.example.product.utils.Transactions;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import jakarta.annotation.Resource;
+import jakarta.ejb.ConcurrencyManagement;
+import jakarta.ejb.ConcurrencyManagementType;
+import jakarta.ejb.Singleton;
+import jakarta.json.bind.Jsonb;
+import jakarta.json.bind.JsonbBuilder;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.PersistenceContext;
+import jakarta.transaction.TransactionSynchronizationRegistry;
+import jakarta.ws.rs.core.EntityTag;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Serialized customer dish catalog, kept in memory together with its ETag so the catalog
+ * endpoint does not query and serialize the dish table on every page load.
+ *
+ * Dish changes drop the cached copy once their transaction commits, so readers never cache
+ * data from before the commit. Stock reservations happen on every order; they only mark
+ * the copy stale, and it is rebuilt at most once per -Ddish.catalog.max-stale.ms (default
+ * 1000) while orders keep coming in.
+ */
+@Singleton
+@ConcurrencyManagement(ConcurrencyManagementType.BEAN)
+public class DishCatalogCache {
+
+    private static final long MAX_STALE_NANOS =
+            TimeUnit.MILLISECONDS.toNanos(Long.getLong("dish.catalog.max-stale.ms", 1000));
+
+    @PersistenceContext(unitName = "product-service")
+    private EntityManager entityManager;
+
+    @Resource
+    private TransactionSynchronizationRegistry transactionRegistry;
+
+    private Jsonb jsonb;
+
+    private final Object rebuildLock = new Object();
+    private volatile Catalog catalog;
+    // Bumped by every invalidation so a rebuild that raced with one is not kept
+    private final AtomicLong generation = new AtomicLong();
+    // System.nanoTime() of the first stock change since the last rebuild started, 0 when there is none
+    private final AtomicLong staleSince = new AtomicLong();
+
+    public static class Catalog {
+        private final byte[] body;
+        private final EntityTag tag;
+
+        Catalog(byte[] body, EntityTag tag) {
+            this.body = body;
+            this.tag = tag;
+        }
+
+        public byte[] getBody() { return body; }
+        public EntityTag getTag() { return tag; }
+    }
+
+    @PostConstruct
+    public void init() {
+        jsonb = JsonbBuilder.create();
+    }
+
+    public Catalog get() {
+        Catalog current = catalog;
+        if (current != null && !tooStale()) {
+            return current;
+        }
+        synchronized (rebuildLock) {
+            current = catalog;
+            if (current != null && !tooStale()) {
+                return current;
+            }
+            return rebuild();
+        }
+    }
+
+    /**
+     * Drops the cached catalog after the current transaction commits, or right away when
+     * there is no transaction.
+     */
+    public void invalidate() {
+        afterCommit(() -> {
+            generation.incrementAndGet();
+            catalog = null;
+        });
+    }
+
+    /**
+     * Marks the cached catalog stale after the current transaction commits.
+     */
+    public void stockChanged() {
+        afterCommit(() -> staleSince.compareAndSet(0, System.nanoTime()));
+    }
+
+    private boolean tooStale() {
+        long since = staleSince.get();
+        return since != 0 && System.nanoTime() - since >= MAX_STALE_NANOS;
+    }
+
+    private Catalog rebuild() {
+        long startGeneration = generation.get();
+        // Stock changes committed from here on may be missed by the query and start a new stale window
+        staleSince.set(0);
+
+        List<Dish> dishes = entityManager.createNamedQuery("Dish.findAll", Dish.class).getResultList();
+        byte[] body = jsonb.toJson(dishes).getBytes(StandardCharsets.UTF_8);
+        Catalog rebuilt = new Catalog(body, new EntityTag(digest(body)));
+
+        // Only keep the result when no invalidation happened while it was being built
+        if (generation.get() == startGeneration) {
+            catalog = rebuilt;
+        }
+        return rebuilt;
+    }
+
+    private void afterCommit(Runnable action) {
+        Transactions.afterCommit(transactionRegistry, action);
+    }
+
+    private static String digest(byte[] body) {
+        try {
+            byte[] hash = MessageDigest.getInstance("SHA-256").digest(body);
+            StringBuilder hex = new StringBuilder(32);
+            for (int i = 0; i < 16; i++) {
+                hex.append(String.format("%02x", hash[i]));
+            }
+            return hex.toString();
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 not available", e);
+        }
+    }
+
+    @PreDestroy
+    public void cleanup() {
+        try {
+            jsonb.close();
+        } catch (Exception e) {
+            System.err.println("\u001B[31m Failed to close JSON-B instance: " + e.getMessage() + " \u001B[0m");
+        }
+    }
+}
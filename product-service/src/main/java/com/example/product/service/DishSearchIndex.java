@@ -0,0 +1,371 @@
+package com.example.product.service;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.ejb.ConcurrencyManagement;
+import jakarta.ejb.ConcurrencyManagementType;
+import jakarta.ejb.Singleton;
+import jakarta.ejb.Startup;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.PersistenceContext;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+
+/**
+ * In-memory inverted index over dish names and descriptions.
+ *
+ * Terms are kept in a sorted dictionary, so a prefix is a range of it, and every term is
+ * also indexed by its trigrams to find near misses. Each query word must match a dish
+ * exactly, by prefix or within a small edit distance; dishes are ranked by how well and
+ * where (name before description) the words matched. The index is built on startup and
+ * updated by DishService whenever a dish is created, changed or deleted.
+ */
+@Singleton
+@Startup
+@ConcurrencyManagement(ConcurrencyManagementType.BEAN)
+public class DishSearchIndex {
+
+    private static final double EXACT_SCORE = 3.0;
+    private static final double PREFIX_SCORE = 2.0;
+    private static final double FUZZY_SCORE = 1.0;
+    private static final double DESCRIPTION_WEIGHT = 0.3;
+
+    // Keep short or very common prefixes from expanding into most of the dictionary
+    private static final int MIN_PREFIX_LENGTH = 2;
+    private static final int MAX_PREFIX_TERMS = 64;
+    private static final int MAX_FUZZY_TERMS = 16;
+    // Candidates scored per query; the best ones are visited first, so this bounds latency, not quality
+    private static final int MAX_CANDIDATES = Integer.getInteger("dish.search.max-candidates", 5000);
+
+    @PersistenceContext(unitName = "product-service")
+    private EntityManager entityManager;
+
+    // term -> dishes containing it
+    private final NavigableMap<String, Posting> postings = new ConcurrentSkipListMap<>();
+    // trigram -> terms containing it
+    private final Map<String, Set<String>> trigrams = new ConcurrentHashMap<>();
+    // dish id -> indexed terms, to unindex a dish without a lookup
+    private final Map<Long, Set<String>> dishTerms = new ConcurrentHashMap<>();
+
+    private static class Posting {
+        final Set<Long> name = ConcurrentHashMap.newKeySet();
+        final Set<Long> description = ConcurrentHashMap.newKeySet();
+
+        boolean isEmpty() {
+            return name.isEmpty() && description.isEmpty();
+        }
+    }
+
+    // Dictionary terms a query word matched, with the score of that kind of match
+    private static class WordMatch {
+        final List<Posting> postings = new ArrayList<>();
+        final List<Double> scores = new ArrayList<>();
+        long size;
+
+        void add(Posting posting, double score) {
+            postings.add(posting);
+            scores.add(score);
+            size += posting.name.size() + posting.description.size();
+        }
+
+        double score(Long dishId) {
+            double best = 0;
+            for (int i = 0; i < postings.size(); i++) {
+                Posting posting = postings.get(i);
+                if (posting.name.contains(dishId)) {
+                    best = Math.max(best, scores.get(i));
+                } else if (posting.description.contains(dishId)) {
+                    best = Math.max(best, scores.get(i) * DESCRIPTION_WEIGHT);
+                }
+            }
+            return best;
+        }
+    }
+
+    @PostConstruct
+    public void init() {
+        try {
+            List<Object[]> rows = entityManager.createNamedQuery("Dish.findSearchFields", Object[].class)
+                    .getResultList();
+            for (Object[] row : rows) {
+                put((Long) row[0], (String) row[1], (String) row[2]);
+            }
+            System.out.println("\u001B[32m Dish search index built: " + dishTerms.size() + " dishes, " +
+                    postings.size() + " terms \u001B[0m");
+        } catch (Exception e) {
+            System.err.println("\u001B[31m Failed to build dish search index: " + e.getMessage() + " \u001B[0m");
+        }
+    }
+
+    /**
+     * Indexes a dish, replacing whatever was indexed for it before.
+     */
+    public synchronized void put(Long dishId, String name, String description) {
+        remove(dishId);
+
+        Set<String> nameTerms = new HashSet<>(tokenize(name));
+        Set<String> descriptionTerms = new HashSet<>(tokenize(description));
+        for (String term : nameTerms) {
+            posting(term).name.add(dishId);
+        }
+        for (String term : descriptionTerms) {
+            posting(term).description.add(dishId);
+        }
+
+        Set<String> terms = new HashSet<>(nameTerms);
+        terms.addAll(descriptionTerms);
+        dishTerms.put(dishId, terms);
+    }
+
+    public synchronized void remove(Long dishId) {
+        Set<String> terms = dishTerms.remove(dishId);
+        if (terms == null) {
+            return;
+        }
+        for (String term : terms) {
+            Posting posting = postings.get(term);
+            if (posting == null) {
+                continue;
+            }
+            posting.name.remove(dishId);
+            posting.description.remove(dishId);
+            if (posting.isEmpty()) {
+                postings.remove(term);
+                for (String trigram : trigramsOf(term)) {
+                    Set<String> withTrigram = trigrams.get(trigram);
+                    if (withTrigram != null) {
+                        withTrigram.remove(term);
+                        if (withTrigram.isEmpty()) {
+                            trigrams.remove(trigram);
+                        }
+                    }
+                }
+            }
+        }
+    }
+
+    private Posting posting(String term) {
+        return postings.computeIfAbsent(term, t -> {
+            for (String trigram : trigramsOf(t)) {
+                trigrams.computeIfAbsent(trigram, g -> ConcurrentHashMap.newKeySet()).add(t);
+            }
+            return new Posting();
+        });
+    }
+
+    /**
+     * Ids of the best matching dishes, best first. Every query word has to match.
+     */
+    public List<Long> search(String query, int limit) {
+        List<WordMatch> words = new ArrayList<>();
+        for (String word : new HashSet<>(tokenize(query))) {
+            WordMatch match = match(word);
+            if (match.postings.isEmpty()) {
+                return Collections.emptyList();
+            }
+            words.add(match);
+        }
+        if (words.isEmpty()) {
+            return Collections.emptyList();
+        }
+
+        // Walk the rarest word's dishes, best kind of match first, and look the others up
+        words.sort(Comparator.comparingLong(w -> w.size));
+        WordMatch driver = words.get(0);
+        List<WordMatch> others = words.subList(1, words.size());
+
+        PriorityQueue<Map.Entry<Long, Double>> best = new PriorityQueue<>(limit + 1, RANKING.reversed());
+        Set<Long> seen = new HashSet<>();
+        for (Set<Long> dishes : candidateOrder(driver)) {
+            for (Long dishId : dishes) {
+                if (!seen.add(dishId)) {
+                    continue;
+                }
+                double score = driver.score(dishId);
+                for (WordMatch other : others) {
+                    double otherScore = other.score(dishId);
+                    if (otherScore == 0) {
+                        score = 0;
+                        break;
+                    }
+                    score += otherScore;
+                }
+                if (score > 0) {
+                    best.add(Map.entry(dishId, score));
+                    if (best.size() > limit) {
+                        best.poll();
+                    }
+                }
+                if (seen.size() >= MAX_CANDIDATES) {
+                    return ranked(best);
+                }
+            }
+        }
+        return ranked(best);
+    }
+
+    // Highest score first, lower id first on ties
+    private static final Comparator<Map.Entry<Long, Double>> RANKING =
+            Comparator.<Map.Entry<Long, Double>>comparingDouble(e -> -e.getValue())
+                    .thenComparing(Map.Entry::getKey);
+
+    private static List<Long> ranked(PriorityQueue<Map.Entry<Long, Double>> best) {
+        List<Map.Entry<Long, Double>> entries = new ArrayList<>(best);
+        entries.sort(RANKING);
+        List<Long> ids = new ArrayList<>(entries.size());
+        for (Map.Entry<Long, Double> entry : entries) {
+            ids.add(entry.getKey());
+        }
+        return ids;
+    }
+
+    /**
+     * The dish sets of a word in the order their matches score: names before descriptions,
+     * and within each exact before prefix before fuzzy matches.
+     */
+    private static List<Set<Long>> candidateOrder(WordMatch word) {
+        List<Integer> order = new ArrayList<>();
+        for (int i = 0; i < word.postings.size(); i++) {
+            order.add(i);
+        }
+        order.sort((a, b) -> Double.compare(word.scores.get(b), word.scores.get(a)));
+
+        List<Set<Long>> sets = new ArrayList<>();
+        for (int i : order) {
+            sets.add(word.postings.get(i).name);
+        }
+        for (int i : order) {
+            sets.add(word.postings.get(i).description);
+        }
+        return sets;
+    }
+
+    private WordMatch match(String word) {
+        WordMatch match = new WordMatch();
+
+        Posting exact = postings.get(word);
+        if (exact != null) {
+            match.add(exact, EXACT_SCORE);
+        }
+
+        if (word.length() >= MIN_PREFIX_LENGTH) {
+            int expanded = 0;
+            for (Map.Entry<String, Posting> entry : postings.tailMap(word, false).entrySet()) {
+                if (!entry.getKey().startsWith(word) || expanded++ >= MAX_PREFIX_TERMS) {
+                    break;
+                }
+                match.add(entry.getValue(), PREFIX_SCORE);
+            }
+        }
+
+        // Only look for near misses when the word itself is unknown
+        if (match.postings.isEmpty() && word.length() >= 3) {
+            for (String term : fuzzyTerms(word)) {
+                Posting posting = postings.get(term);
+                if (posting != null) {
+                    match.add(posting, FUZZY_SCORE);
+                }
+            }
+        }
+        return match;
+    }
+
+    private List<String> fuzzyTerms(String word) {
+        int maxDistance = word.length() <= 5 ? 1 : 2;
+
+        // Candidate terms share at least one trigram with the word
+        Map<String, Integer> shared = new HashMap<>();
+        for (String trigram : trigramsOf(word)) {
+            Set<String> terms = trigrams.get(trigram);
+            if (terms != null) {
+                for (String term : terms) {
+                    shared.merge(term, 1, Integer::sum);
+                }
+            }
+        }
+
+        List<Map.Entry<String, Integer>> candidates = new ArrayList<>(shared.entrySet());
+        candidates.sort((a, b) -> Integer.compare(b.getValue(), a.getValue()));
+
+        List<String> matches = new ArrayList<>();
+        for (Map.Entry<String, Integer> candidate : candidates) {
+            String term = candidate.getKey();
+            if (Math.abs(term.length() - word.length()) <= maxDistance
+                    && editDistance(word, term, maxDistance) <= maxDistance) {
+                matches.add(term);
+                if (matches.size() >= MAX_FUZZY_TERMS) {
+                    break;
+                }
+            }
+        }
+        return matches;
+    }
+
+    /**
+     * Levenshtein distance, giving up as soon as it is known to exceed max.
+     */
+    private static int editDistance(String a, String b, int max) {
+        int[] previous = new int[b.length() + 1];
+        int[] current = new int[b.length() + 1];
+        for (int j = 0; j <= b.length(); j++) {
+            previous[j] = j;
+        }
+        for (int i = 1; i <= a.length(); i++) {
+            current[0] = i;
+            int rowMin = current[0];
+            for (int j = 1; j <= b.length(); j++) {
+                int cost = a.charAt(i - 1) == b.charAt(j - 1) ? 0 : 1;
+                current[j] = Math.min(Math.min(current[j - 1] + 1, previous[j] + 1), previous[j - 1] + cost);
+                rowMin = Math.min(rowMin, current[j]);
+            }
+            if (rowMin > max) {
+                return rowMin;
+            }
+            int[] swap = previous;
+            previous = current;
+            current = swap;
+        }
+        return previous[b.length()];
+    }
+
+    private static Set<String> trigramsOf(String term) {
+        // Padded so that short terms and word starts get trigrams too
+        String padded = " " + term + " ";
+        Set<String> result = new HashSet<>();
+        for (int i = 0; i + 3 <= padded.length(); i++) {
+            result.add(padded.substring(i, i + 3));
+        }
+        return result;
+    }
+
+    /**
+     * Lower-cased runs of letters and digits.
+     */
+    static List<String> tokenize(String text) {
+        List<String> tokens = new ArrayList<>();
+        if (text == null) {
+            return tokens;
+        }
+        int start = -1;
+        for (int i = 0; i <= text.length(); i++) {
+            boolean wordChar = i < text.length() && Character.isLetterOrDigit(text.charAt(i));
+            if (wordChar && start < 0) {
+                start = i;
+            } else if (!wordChar && start >= 0) {
+                tokens.add(text.substring(start, i).toLowerCase());
+                start = -1;
+            }
+        }
+        return tokens;
+    }
+}
@@ -1,16 +1,36 @@
 package com.example.product.service;
 
+import com.example.product.dto.DishPage;
+import com.example.product.dto.DishQuery;
 import com.example.product.model.Dish;
-import com.example.product.utils.Jwt;
+import com.example.product.model.StockReservation;
+import com.example.product.utils.AuthContext;
+import com.example.product.utils.Transactions;
+import jakarta.annotation.Resource;
+import jakarta.ejb.Schedule;
+import jakarta.ejb.SessionContext;
 import jakarta.ejb.Stateless;
 import jakarta.inject.Inject;
 import jakarta.persistence.EntityManager;
 import jakarta.persistence.PersistenceContext;
+import jakarta.persistence.Query;
+import jakarta.persistence.TypedQuery;
+import jakarta.transaction.TransactionSynchronizationRegistry;
+import jakarta.ws.rs.core.CacheControl;
+import jakarta.ws.rs.core.MediaType;
+import jakarta.ws.rs.core.Request;
 import jakarta.ws.rs.core.Response;
-import jakarta.transaction.Transactional;
 
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.TreeMap;
 
 @Stateless
 public class DishService {
@@ -20,18 +40,63 @@ public class DishService {
     @Inject
     private NotificationService notificationService;
 
-    private Long getSellerIdFromToken(String token) {
-        if (token != null && token.startsWith("Bearer ")) {
-            token = token.substring("Bearer ".length());
-        }
-        return Jwt.getUserId(token);
+    @Inject
+    private StockLedger stockLedger;
+
+    @Inject
+    private DishCatalogCache catalogCache;
+
+    @Inject
+    private DishSearchIndex searchIndex;
+
+    @Inject
+    private AuthContext auth;
+
+    @Resource
+    private SessionContext sessionContext;
+
+    @Resource
+    private TransactionSynchronizationRegistry transactionRegistry;
+
+    // Sort keys of getDishPage; the id breaks ties so the order is total and matches the cursor
+    private static final Map<String, String> DISH_SORTS = Map.of(
+            "id", "d.id",
+            "price", "d.price, d.id",
+            "price_desc", "d.price DESC, d.id DESC",
+            "name", "d.name, d.id");
+
+    // Clients may keep the catalog but must check its ETag before reusing it
+    private static final CacheControl REVALIDATE = revalidate();
+
+    private static CacheControl revalidate() {
+        CacheControl cacheControl = new CacheControl();
+        cacheControl.setPrivate(true);
+        cacheControl.setNoCache(true);
+        // On by default, and not part of the header sent so far
+        cacheControl.setNoTransform(false);
+        return cacheControl;
+    }
+
+    // The ledger and search index only learn about a change once it is committed
+    private void mirrorAfterCommit(Dish dish) {
+        Long dishId = dish.getId();
+        int stockCount = dish.getStockCount();
+        double price = dish.getPrice();
+        String name = dish.getName();
+        String description = dish.getDescription();
+        Transactions.afterCommit(transactionRegistry, () -> {
+            stockLedger.put(dishId, stockCount, price);
+            searchIndex.put(dishId, name, description);
+        });
     }
 
-    public Response createDish(String name, String description, double price, String companyName, int stockCount, String token) {
+    public Response createDish(String name, String description, double price, String companyName, int stockCount) {
         try {
-            Long sellerId = getSellerIdFromToken(token);
+            Long sellerId = auth.getUserId();
             Dish dish = new Dish(name, description, price, companyName, stockCount);
             entityManager.persist(dish);
+            mirrorAfterCommit(dish);
+            catalogCache.invalidate();
 
             // Log the new dish creation
             notificationService.sendLogMessage("Dish","Info",
@@ -65,53 +130,84 @@ public class DishService {
         return Response.ok(dishes).build();
     }
 
-    public Response updateDish(Long dishId, String name, String description, Double price, Integer stockCount, String companyName, String token) {
+    public Response updateDish(Long dishId, String name, String description, Double price, Integer stockCount, String companyName) {
         try {
-            Long sellerId = getSellerIdFromToken(token);
+            Long sellerId = auth.getUserId();
             Dish dish = entityManager.find(Dish.class, dishId);
             if (dish == null || !dish.getCompanyName().equals(companyName)) {
                 return Response.status(Response.Status.NOT_FOUND).entity("Dish not found or unauthorized").build();
             }
 
+            // Only the fields the caller supplied are written, so concurrent changes to the others survive
+            Map<String, Object> fields = new LinkedHashMap<>();
             if (name != null && !name.trim().isEmpty()) {
-                dish.setName(name);
+                fields.put("name", name);
             }
             if (description != null) {
-                dish.setDescription(description);
+                fields.put("description", description);
             }
             if (price != null && price > 0) {
-                dish.setPrice(price);
+                fields.put("price", price);
+            }
+            if (!fields.isEmpty()) {
+                List<String> assignments = new ArrayList<>();
+                for (String field : fields.keySet()) {
+                    assignments.add("d." + field + " = :" + field);
+                }
+                Query update = entityManager.createQuery(
+                                "UPDATE Dish d SET " + String.join(", ", assignments) + " WHERE d.id = :id")
+                        .setParameter("id", dishId);
+                fields.forEach(update::setParameter);
+                update.executeUpdate();
+            }
+
+            // The new count is applied as the difference to the count this request saw, so stock
+            // reserved after it was read stays reserved
+            int oldStockCount = dish.getStockCount();
+            if (stockCount != null && stockCount >= 0 && stockCount != oldStockCount) {
+                int updated = entityManager.createNamedQuery("Dish.adjustStock")
+                        .setParameter("delta", stockCount - oldStockCount)
+                        .setParameter("id", dishId)
+                        .executeUpdate();
+                if (updated == 0) {
+                    sessionContext.setRollbackOnly();
+                    return Response.status(Response.Status.CONFLICT)
+                            .entity("Stock was reserved meanwhile; reload the dish and try again").build();
+                }
             }
 
+            // The bulk updates bypassed the persistence context; the row is locked until commit
+            entityManager.refresh(dish);
+
             // Check for stock count changes and send notifications if needed
             if (stockCount != null && stockCount >= 0) {
-                int oldStockCount = dish.getStockCount();
-                dish.setStockCount(stockCount);
+                int newStockCount = dish.getStockCount();
 
                 // Check if stock is low (below 10) and notify sellers
-                if (stockCount < 10) {
+                if (newStockCount < 10) {
                     notificationService.sendStockNotification(
                         dishId,
                         dish.getName(),
-                        stockCount,
+                        newStockCount,
                         companyName,
                         sellerId
                     );
 
                     // Log low stock event
                     notificationService.sendLogMessage("Dish","Warning",
-                            "Low stock for dish " + dish.getName() + " (" + companyName + "): " + stockCount + " remaining");
+                            "Low stock for dish " + dish.getName() + " (" + companyName + "): " + newStockCount + " remaining");
                 }
 
                 // Log if stock was increased
-                if (stockCount > oldStockCount) {
+                if (newStockCount > oldStockCount) {
                     notificationService.sendLogMessage("Dish","Info",
                             "Stock increased for dish " + dish.getName() + " (" + companyName + "): " +
-                                    oldStockCount + " → " + stockCount);
+                                    oldStockCount + " → " + newStockCount);
                 }
             }
 
-            entityManager.merge(dish);
+            mirrorAfterCommit(dish);
+            catalogCache.invalidate();
             return Response.ok("Dish updated successfully").build();
         } catch (Exception e) {
             notificationService.sendLogMessage("Dish", "Error", "Failed to update dish: " + e.getMessage());
@@ -126,14 +222,160 @@ public class DishService {
             return Response.status(Response.Status.NOT_FOUND).entity("Dish not found or unauthorized").build();
         }
         entityManager.remove(dish);
+        Transactions.afterCommit(transactionRegistry, () -> {
+            stockLedger.remove(dishId);
+            searchIndex.remove(dishId);
+        });
+        catalogCache.invalidate();
         return Response.ok("Dish deleted successfully").build();
     }
 
-    public Response getAllDishes() {
-        List<Dish> dishes = entityManager.createNamedQuery("Dish.findAll", Dish.class).getResultList();
+    /**
+     * The customer catalog as serialized JSON. Answers 304 Not Modified when the client
+     * already holds the current version.
+     */
+    public Response getAllDishes(Request request) {
+        DishCatalogCache.Catalog catalog = catalogCache.get();
+
+        Response.ResponseBuilder notModified = request.evaluatePreconditions(catalog.getTag());
+        if (notModified != null) {
+            return notModified.cacheControl(REVALIDATE).build();
+        }
+        return Response.ok(catalog.getBody(), MediaType.APPLICATION_JSON)
+                .tag(catalog.getTag())
+                .cacheControl(REVALIDATE)
+                .build();
+    }
+
+    /**
+     * One page of dishes using keyset pagination: the cursor holds the sort value and id of
+     * the last dish of the previous page, so every page is a bounded index range scan no
+     * matter how deep into the catalog it is.
+     *
+     * @param companyName restricts the page to one company, or null for all companies
+     */
+    public Response getDishPage(DishQuery query, String companyName) {
+        String sort = query.getSort() == null ? "id" : query.getSort();
+        if (!DISH_SORTS.containsKey(sort)) {
+            return Response.status(Response.Status.BAD_REQUEST)
+                    .entity("Unknown sort " + sort + ", expected one of " + DISH_SORTS.keySet()).build();
+        }
+
+        List<String> conditions = new ArrayList<>();
+        Map<String, Object> parameters = new HashMap<>();
+        if (companyName != null) {
+            conditions.add("d.companyName = :companyName");
+            parameters.put("companyName", companyName);
+        }
+        if (query.getMinPrice() != null) {
+            conditions.add("d.price >= :minPrice");
+            parameters.put("minPrice", query.getMinPrice());
+        }
+        if (query.getMaxPrice() != null) {
+            conditions.add("d.price <= :maxPrice");
+            parameters.put("maxPrice", query.getMaxPrice());
+        }
+        if (query.getInStock() != null) {
+            conditions.add(query.getInStock() ? "d.stockCount > 0" : "d.stockCount = 0");
+        }
+
+        if (query.getCursor() != null) {
+            try {
+                String[] position = decodeCursor(query.getCursor());
+                parameters.put("afterId", Long.parseLong(position[1]));
+                switch (sort) {
+                    case "price":
+                        conditions.add("(d.price > :afterValue OR (d.price = :afterValue AND d.id > :afterId))");
+                        parameters.put("afterValue", Double.parseDouble(position[0]));
+                        break;
+                    case "price_desc":
+                        conditions.add("(d.price < :afterValue OR (d.price = :afterValue AND d.id < :afterId))");
+                        parameters.put("afterValue", Double.parseDouble(position[0]));
+                        break;
+                    case "name":
+                        conditions.add("(d.name > :afterValue OR (d.name = :afterValue AND d.id > :afterId))");
+                        parameters.put("afterValue", position[0]);
+                        break;
+                    default:
+                        conditions.add("d.id > :afterId");
+                }
+            } catch (IllegalArgumentException e) {
+                return Response.status(Response.Status.BAD_REQUEST).entity("Invalid cursor").build();
+            }
+        }
+
+        StringBuilder jpql = new StringBuilder("SELECT d FROM Dish d");
+        if (!conditions.isEmpty()) {
+            jpql.append(" WHERE ").append(String.join(" AND ", conditions));
+        }
+        jpql.append(" ORDER BY ").append(DISH_SORTS.get(sort));
+
+        int limit = query.getEffectiveLimit();
+        TypedQuery<Dish> typedQuery = entityManager.createQuery(jpql.toString(), Dish.class)
+                .setMaxResults(limit + 1);
+        parameters.forEach(typedQuery::setParameter);
+        List<Dish> dishes = typedQuery.getResultList();
+
+        // The extra row only tells whether another page exists
+        String nextCursor = null;
+        if (dishes.size() > limit) {
+            dishes = new ArrayList<>(dishes.subList(0, limit));
+            Dish last = dishes.get(limit - 1);
+            String value = sort.startsWith("price") ? Double.toString(last.getPrice())
+                    : "name".equals(sort) ? last.getName() : "";
+            nextCursor = encodeCursor(value, last.getId());
+        }
+        return Response.ok(new DishPage(dishes, nextCursor)).build();
+    }
+
+    /**
+     * Dishes matching the search words, best match first. Only the dishes of the returned
+     * page are read from the database, by primary key.
+     */
+    public Response searchDishes(String query, Integer limit) {
+        if (query == null || query.trim().isEmpty()) {
+            return Response.status(Response.Status.BAD_REQUEST).entity("Search query is required").build();
+        }
+        int max = limit == null || limit <= 0 ? DishQuery.DEFAULT_LIMIT : Math.min(limit, DishQuery.MAX_LIMIT);
+
+        List<Long> ids = searchIndex.search(query, max);
+        if (ids.isEmpty()) {
+            return Response.ok(Collections.emptyList()).build();
+        }
+
+        Map<Long, Dish> found = new HashMap<>();
+        for (Dish dish : entityManager.createNamedQuery("Dish.findByIds", Dish.class)
+                .setParameter("ids", ids)
+                .getResultList()) {
+            found.put(dish.getId(), dish);
+        }
+
+        // Keep the ranking of the index
+        List<Dish> dishes = new ArrayList<>(ids.size());
+        for (Long id : ids) {
+            Dish dish = found.get(id);
+            if (dish != null) {
+                dishes.add(dish);
+            }
+        }
         return Response.ok(dishes).build();
     }
 
+    private static String encodeCursor(String value, Long id) {
+        return Base64.getUrlEncoder().withoutPadding()
+                .encodeToString((value + "\n" + id).getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static String[] decodeCursor(String cursor) {
+        String decoded = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8);
+        // The id comes last, so a name containing the separator still decodes
+        int separator = decoded.lastIndexOf('\n');
+        if (separator < 0) {
+            throw new IllegalArgumentException("Malformed cursor");
+        }
+        return new String[]{decoded.substring(0, separator), decoded.substring(separator + 1)};
+    }
+
     //TODO : implement this
     public Response getSoldDishesByCompanyName(String companyName) {
         try {
@@ -146,50 +388,89 @@ public class DishService {
         }
     }
 
-    @Transactional
-    public void decreaseStock(Map<Long, Long> productCounts) {
-        System.out.println("\u001B[32m === STOCK DECREASE OPERATION STARTING === \u001B[0m");
+    public enum Reservation {
+        RESERVED,
+        // A redelivered check for an order whose stock was reserved before
+        ALREADY_RESERVED,
+        INSUFFICIENT
+    }
 
-        try {
-            for (Map.Entry<Long, Long> entry : productCounts.entrySet()) {
-                Long productId = entry.getKey();
-                Long quantity = entry.getValue();
-
-                Dish dish = entityManager.find(Dish.class, productId);
-                if (dish != null) {
-                    int oldStock = dish.getStockCount();
-                    int newStock = oldStock - quantity.intValue();
-                    dish.setStockCount(newStock);
-
-                    entityManager.merge(dish);
-                    System.out.println("\u001B[32m Product " + productId + " (" + dish.getName() +
-                            "): Stock DECREASED from " + oldStock +
-                            " to " + newStock + "\u001B[0m");
-
-//                    // Check if stock is low after decrease
-//                    if (newStock < 10) {
-//                        // For stock decrease during orders, we need to make an HTTP call to auth service
-//                        // to get the seller ID. For now, we'll just use the companyName in the message
-//                        notificationService.sendStockNotification(
-//                            productId,
-//                            dish.getName(),
-//                            newStock,
-//                            dish.getCompanyName(),
-//                            null  // The notification service will need to look up the seller ID
-//                        );
-//                    }
+    // Reservation markers outlive every retry and redelivery of the stock check by far
+    private static final long RESERVATION_RETENTION_HOURS = 24;
 
-                    notificationService.sendLogMessage("Dish","Info",
-                            "Stock decreased for product " + dish.getName() +
-                                    " (ID: " + productId + "): " +
-                                    oldStock + " → " + newStock);
-                }
+    /**
+     * Reserves stock for every line of an order, or for none of them. Each line is a single
+     * guarded update, so concurrent reservations can never take a dish below zero, and the
+     * whole transaction is rolled back as soon as one line cannot be served. A marker row
+     * for the order commits with the reservation, so checking the same order again reports
+     * ALREADY_RESERVED without touching the stock.
+     */
+    public Reservation reserveStock(Long orderId, Map<Long, Long> productCounts) {
+        if (entityManager.find(StockReservation.class, orderId) != null) {
+            System.out.println("\u001B[33m Stock for order " + orderId + " was reserved before, not reserving again \u001B[0m");
+            return Reservation.ALREADY_RESERVED;
+        }
+
+        System.out.println("\u001B[32m === STOCK RESERVATION STARTING === \u001B[0m");
+
+        // Update rows in id order so concurrent reservations lock them in the same order
+        Map<Long, Long> lines = new TreeMap<>(productCounts);
+        for (Map.Entry<Long, Long> line : lines.entrySet()) {
+            if (line.getValue() == null || line.getValue() <= 0) {
+                throw new IllegalArgumentException("Invalid quantity " + line.getValue() + " for product " + line.getKey());
             }
-            System.out.println("\u001B[32m === STOCK DECREASE COMMITTED SUCCESSFULLY === \u001B[0m");
-        } catch (Exception e) {
-            System.out.println("\u001B[31m === STOCK DECREASE FAILED: " + e.getMessage() + " === \u001B[0m");
-            e.printStackTrace();
-            throw e; // Rethrow to trigger transaction rollback
         }
+
+        for (Map.Entry<Long, Long> line : lines.entrySet()) {
+            Long productId = line.getKey();
+            int quantity = line.getValue().intValue();
+
+            int updated = entityManager.createNamedQuery("Dish.reserveStock")
+                    .setParameter("id", productId)
+                    .setParameter("quantity", quantity)
+                    .executeUpdate();
+
+            if (updated == 0) {
+                sessionContext.setRollbackOnly();
+                System.out.println("\u001B[31m Product " + productId + " insufficient stock for quantity " +
+                        quantity + ", reservation rolled back\u001B[0m");
+                return Reservation.INSUFFICIENT;
+            }
+            System.out.println("\u001B[32m Product " + productId + ": Stock DECREASED by " + quantity + "\u001B[0m");
+        }
+
+        // Flushed now so a concurrent check of the same order fails here instead of at commit
+        entityManager.persist(new StockReservation(orderId));
+        entityManager.flush();
+
+        catalogCache.stockChanged();
+        notificationService.sendLogMessage("Dish", "Info", "Stock reserved for products " + lines);
+        System.out.println("\u001B[32m === STOCK RESERVATION COMMITTED === \u001B[0m");
+        return Reservation.RESERVED;
+    }
+
+    @Schedule(hour = "*", persistent = false)
+    public void purgeReservations() {
+        int deleted = entityManager.createNamedQuery("StockReservation.deleteBefore")
+                .setParameter("before", LocalDateTime.now().minusHours(RESERVATION_RETENTION_HOURS))
+                .executeUpdate();
+        if (deleted > 0) {
+            System.out.println("\u001B[36m Removed " + deleted + " old stock reservation marker(s) \u001B[0m");
+        }
+    }
+
+    public double calculateTotalPrice(Map<Long, Long> productCounts) {
+        List<Object[]> prices = entityManager.createNamedQuery("Dish.findPricesByIds", Object[].class)
+                .setParameter("ids", productCounts.keySet())
+                .getResultList();
+
+        double totalPrice = 0.0;
+        for (Object[] row : prices) {
+            Long productId = (Long) row[0];
+            double price = (Double) row[1];
+            totalPrice += price * productCounts.get(productId);
+        }
+        System.out.println("\u001B[36m Total price: $" + totalPrice + "\u001B[0m");
+        return totalPrice;
     }
-}
\ No newline at end of file
+}
@@ -1,11 +1,11 @@
 package com.example.product.service;
 
+import com.example.product.codec.NotificationEvent;
 import com.example.product.config.RabbitMQConfig;
 import jakarta.ejb.Stateless;
 import jakarta.inject.Inject;
 
 import java.io.IOException;
-import java.nio.charset.StandardCharsets;
 
 @Stateless
 public class NotificationService {
@@ -16,12 +16,12 @@ public class NotificationService {
 
     public void sendStockNotification(Long productId, String productName, int quantity, String sellerCompanyName, Long sellerId) {
         try {
-            String message = productName + ":" + quantity + ":" + sellerCompanyName + ":" + sellerId;
+            NotificationEvent event = NotificationEvent.stockAlert(productId, productName, quantity, sellerCompanyName, sellerId);
             rabbitMQConfig.getChannel().basicPublish(
                 "",  // Default exchange
                 RabbitMQConfig.SELLER_STOCK_CHECK_QUEUE,  // Queue name
-                null,
-                message.getBytes(StandardCharsets.UTF_8)
+                RabbitMQConfig.NOTIFICATION_EVENT_PROPERTIES,
+                event.encode()
             );
             
             System.out.println("Sent stock notification for " + productName + " (quantity: " + quantity + ") to seller: " + sellerCompanyName);
@@ -34,16 +34,16 @@ public class NotificationService {
     public void sendLogMessage(String service, String severity, String message) {
         try {
             String routingKey = service + "_" + severity;
-            String logMessage = routingKey + ":" + message;
+            NotificationEvent event = NotificationEvent.log(service, severity, message);
             
             rabbitMQConfig.getChannel().basicPublish(
                 RabbitMQConfig.ADMIN_LOG_EXCHANGE,  // Exchange
                 routingKey,  // Routing key
-                null,
-                logMessage.getBytes(StandardCharsets.UTF_8)
+                RabbitMQConfig.NOTIFICATION_EVENT_PROPERTIES,
+                event.encode()
             );
             
-            System.out.println("Sent log message: " + logMessage);
+            System.out.println("Sent log message: " + event);
         } catch (IOException e) {
             System.err.println("Failed to send log message: " + e.getMessage());
         }
@@ -0,0 +1,198 @@
+package com.example.product.service;
+
+import com.example.product.model.Dish;
+import jakarta.annotation.PostConstruct;
+import jakarta.ejb.ConcurrencyManagement;
+import jakarta.ejb.ConcurrencyManagementType;
+import jakarta.ejb.Schedule;
+import jakarta.ejb.Singleton;
+import jakarta.ejb.Startup;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.PersistenceContext;
+
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * In-process view of dish stock and prices. It lets stock checks that are bound to fail,
+ * and price calculations, be answered from memory without a database round trip.
+ *
+ * The dish table stays the source of truth: reservations are still applied there with
+ * guarded updates and copied here only after they commit. The ledger is rebuilt from the
+ * table on startup and every minute, and the affected dishes are reloaded whenever the
+ * database disagrees with it. Every change stamps its entry from a clock, so a rebuild
+ * leaves alone the entries changed, and the dishes removed, after its query started:
+ * they are newer than its snapshot.
+ */
+@Singleton
+@Startup
+@ConcurrencyManagement(ConcurrencyManagementType.BEAN)
+public class StockLedger {
+
+    @PersistenceContext(unitName = "product-service")
+    private EntityManager entityManager;
+
+    private final Map<Long, Entry> entries = new ConcurrentHashMap<>();
+    // dish id -> clock value of its removal, until a rebuild has started after it
+    private final Map<Long, Long> removed = new ConcurrentHashMap<>();
+    private final AtomicLong clock = new AtomicLong();
+
+    // Changed only inside entries.compute() for its dish
+    private static class Entry {
+        final AtomicInteger stock;
+        volatile double price;
+        // Clock value of the last change
+        volatile long changed;
+
+        Entry(int stock, double price, long changed) {
+            this.stock = new AtomicInteger(stock);
+            this.price = price;
+            this.changed = changed;
+        }
+    }
+
+    @PostConstruct
+    public void init() {
+        reconcile();
+    }
+
+    @Schedule(hour = "*", minute = "*", persistent = false)
+    public void reconcile() {
+        try {
+            long started = clock.get();
+            List<Object[]> rows = entityManager.createNamedQuery("Dish.findStockLevels", Object[].class)
+                    .getResultList();
+
+            Set<Long> seen = new HashSet<>();
+            for (Object[] row : rows) {
+                Long dishId = (Long) row[0];
+                int stockCount = (Integer) row[1];
+                double price = (Double) row[2];
+                seen.add(dishId);
+                entries.compute(dishId, (id, entry) -> {
+                    Long removedAt = removed.get(id);
+                    if (removedAt != null && removedAt > started) {
+                        return entry;
+                    }
+                    if (entry == null) {
+                        return new Entry(stockCount, price, started);
+                    }
+                    if (entry.changed <= started) {
+                        entry.stock.set(stockCount);
+                        entry.price = price;
+                    }
+                    return entry;
+                });
+            }
+            for (Long dishId : entries.keySet()) {
+                if (!seen.contains(dishId)) {
+                    // Gone from the table, unless it was added after the query started
+                    entries.computeIfPresent(dishId, (id, entry) -> entry.changed <= started ? null : entry);
+                }
+            }
+            removed.values().removeIf(removedAt -> removedAt <= started);
+        } catch (Exception e) {
+            System.err.println("\u001B[31m Failed to reconcile stock ledger: " + e.getMessage() + " \u001B[0m");
+        }
+    }
+
+    /**
+     * Reloads the given dishes from the database, dropping the ones that no longer exist.
+     */
+    public void refresh(Collection<Long> dishIds) {
+        List<Dish> dishes = entityManager.createNamedQuery("Dish.findByIds", Dish.class)
+                .setParameter("ids", dishIds)
+                .getResultList();
+
+        Set<Long> missing = new HashSet<>(dishIds);
+        for (Dish dish : dishes) {
+            put(dish.getId(), dish.getStockCount(), dish.getPrice());
+            missing.remove(dish.getId());
+        }
+        for (Long dishId : missing) {
+            remove(dishId);
+        }
+    }
+
+    /**
+     * Loads the dishes the ledger has not seen yet, all in one query.
+     */
+    public void loadMissing(Collection<Long> dishIds) {
+        Set<Long> missing = new HashSet<>();
+        for (Long dishId : dishIds) {
+            if (!entries.containsKey(dishId)) {
+                missing.add(dishId);
+            }
+        }
+        if (!missing.isEmpty()) {
+            refresh(missing);
+        }
+    }
+
+    /**
+     * True when a dish of the order is known to be short. Unknown dishes are left for the
+     * database to decide.
+     */
+    public boolean lacksStock(Map<Long, Long> productCounts) {
+        for (Map.Entry<Long, Long> line : productCounts.entrySet()) {
+            Entry entry = entries.get(line.getKey());
+            if (entry != null && entry.stock.get() < line.getValue()) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Total price of the order, or null when a dish is not in the ledger.
+     */
+    public Double totalPrice(Map<Long, Long> productCounts) {
+        double total = 0.0;
+        for (Map.Entry<Long, Long> line : productCounts.entrySet()) {
+            Entry entry = entries.get(line.getKey());
+            if (entry == null) {
+                return null;
+            }
+            total += entry.price * line.getValue();
+        }
+        return total;
+    }
+
+    /**
+     * Mirrors a reservation that has already been committed to the dish table.
+     */
+    public void applyReservation(Map<Long, Long> productCounts) {
+        for (Map.Entry<Long, Long> line : productCounts.entrySet()) {
+            entries.computeIfPresent(line.getKey(), (id, entry) -> {
+                entry.stock.addAndGet(-line.getValue().intValue());
+                entry.changed = clock.incrementAndGet();
+                return entry;
+            });
+        }
+    }
+
+    public void put(Long dishId, int stockCount, double price) {
+        entries.compute(dishId, (id, entry) -> {
+            if (entry == null) {
+                return new Entry(stockCount, price, clock.incrementAndGet());
+            }
+            entry.stock.set(stockCount);
+            entry.price = price;
+            entry.changed = clock.incrementAndGet();
+            return entry;
+        });
+    }
+
+    public void remove(Long dishId) {
+        entries.compute(dishId, (id, entry) -> {
+            removed.put(id, clock.incrementAndGet());
+            return null;
+        });
+    }
+}
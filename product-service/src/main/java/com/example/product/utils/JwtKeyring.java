@@ -0,0 +1,210 @@
+package com.example.product.utils;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.security.Key;
+import java.security.KeyFactory;
+import java.security.PrivateKey;
+import java.security.PublicKey;
+import java.security.spec.PKCS8EncodedKeySpec;
+import java.security.spec.X509EncodedKeySpec;
+import java.util.Base64;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Properties;
+
+import io.jsonwebtoken.security.Keys;
+
+/**
+ * Keys used to sign and verify tokens, looked up by the token's key id (kid).
+ *
+ * Without -Djwt.keyring.file there is a single HMAC key with id "default", the shared secret
+ * all services used before. The keyring file is a properties file that is read again whenever
+ * it changes (checked at most every -Djwt.keyring.refresh.ms, default 30000), so keys can be
+ * added and retired without a restart:
+ *
+ *   hmac.{kid}={shared secret}
+ *   public.{kid}={base64 X.509 RSA or EC public key}
+ *   private.{kid}={base64 PKCS#8 private key, auth-service only}
+ *   signing.kid={kid auth-service signs new tokens with}
+ *
+ * With only public keys in it a service can verify tokens but holds nothing that can sign
+ * one. Tokens without a kid were issued before key ids existed and are checked with the
+ * "default" key, as long as the keyring still has one.
+ */
+public final class JwtKeyring {
+
+    public static final String DEFAULT_KID = "default";
+
+    private static final String LEGACY_SECRET = "the-most-secure-secret-key-in-hostory";
+    private static final String FILE = System.getProperty("jwt.keyring.file");
+    private static final long REFRESH_MILLIS = Long.getLong("jwt.keyring.refresh.ms", 30_000);
+
+    private static final Object LOCK = new Object();
+    private static volatile Snapshot current = load(null);
+    private static volatile long nextCheck;
+
+    // One loaded version of the keyring; replaced as a whole on reload
+    private static final class Snapshot {
+        final Map<String, Key> verificationKeys;
+        final String signingKid;
+        final Key signingKey;
+        final long modified;
+        final int version;
+
+        Snapshot(Map<String, Key> verificationKeys, String signingKid, Key signingKey, long modified, int version) {
+            this.verificationKeys = Collections.unmodifiableMap(verificationKeys);
+            this.signingKid = signingKid;
+            this.signingKey = signingKey;
+            this.modified = modified;
+            this.version = version;
+        }
+    }
+
+    public static final class SigningKey {
+        private final String kid;
+        private final Key key;
+
+        private SigningKey(String kid, Key key) {
+            this.kid = kid;
+            this.key = key;
+        }
+
+        public String getKid() {
+            return kid;
+        }
+
+        public Key getKey() {
+            return key;
+        }
+    }
+
+    private JwtKeyring() {
+    }
+
+    /**
+     * Key to verify a token signed with the given kid, or null when the kid is unknown.
+     */
+    public static Key verificationKey(String kid) {
+        return keys().verificationKeys.get(kid == null ? DEFAULT_KID : kid);
+    }
+
+    /**
+     * Key new tokens are signed with and its kid, both from the same version of the keyring.
+     */
+    public static SigningKey signing() {
+        Snapshot snapshot = keys();
+        if (snapshot.signingKey == null) {
+            throw new IllegalStateException("No signing key in the JWT keyring");
+        }
+        return new SigningKey(snapshot.signingKid, snapshot.signingKey);
+    }
+
+    /**
+     * Changes whenever the keyring is reloaded, so anything derived from the old keys can be dropped.
+     */
+    public static int version() {
+        return keys().version;
+    }
+
+    private static Snapshot keys() {
+        if (FILE != null && System.currentTimeMillis() >= nextCheck) {
+            synchronized (LOCK) {
+                if (System.currentTimeMillis() >= nextCheck) {
+                    nextCheck = System.currentTimeMillis() + REFRESH_MILLIS;
+                    refresh();
+                }
+            }
+        }
+        return current;
+    }
+
+    private static void refresh() {
+        try {
+            long modified = Files.getLastModifiedTime(Paths.get(FILE)).toMillis();
+            if (modified != current.modified) {
+                current = load(current);
+                System.out.println("\u001B[32m JWT keyring loaded: " + current.verificationKeys.keySet() +
+                        ", signing with " + current.signingKid + " \u001B[0m");
+            }
+        } catch (Exception e) {
+            // Keep verifying with the keys we have rather than rejecting every token
+            System.err.println("\u001B[31m Failed to reload JWT keyring: " + e.getMessage() + " \u001B[0m");
+        }
+    }
+
+    private static Snapshot load(Snapshot previous) {
+        int version = previous == null ? 0 : previous.version + 1;
+        if (FILE == null) {
+            Key key = Keys.hmacShaKeyFor(LEGACY_SECRET.getBytes(StandardCharsets.UTF_8));
+            Map<String, Key> keys = new HashMap<>();
+            keys.put(DEFAULT_KID, key);
+            return new Snapshot(keys, DEFAULT_KID, key, 0, version);
+        }
+
+        Path path = Paths.get(FILE);
+        Properties properties = new Properties();
+        long modified;
+        try (InputStream in = Files.newInputStream(path)) {
+            modified = Files.getLastModifiedTime(path).toMillis();
+            properties.load(in);
+        } catch (IOException e) {
+            throw new IllegalStateException("Cannot read JWT keyring " + FILE, e);
+        }
+
+        Map<String, Key> verificationKeys = new HashMap<>();
+        Map<String, Key> privateKeys = new HashMap<>();
+        for (String name : properties.stringPropertyNames()) {
+            String value = properties.getProperty(name).trim();
+            if (name.startsWith("hmac.")) {
+                verificationKeys.put(name.substring(5),
+                        Keys.hmacShaKeyFor(value.getBytes(StandardCharsets.UTF_8)));
+            } else if (name.startsWith("public.")) {
+                verificationKeys.put(name.substring(7), publicKey(Base64.getMimeDecoder().decode(value)));
+            } else if (name.startsWith("private.")) {
+                privateKeys.put(name.substring(8), privateKey(Base64.getMimeDecoder().decode(value)));
+            }
+        }
+
+        String signingKid = properties.getProperty("signing.kid");
+        Key signingKey = null;
+        if (signingKid != null) {
+            signingKid = signingKid.trim();
+            // A private key when signing asymmetrically, otherwise the shared secret of that kid
+            signingKey = privateKeys.containsKey(signingKid) ? privateKeys.get(signingKid) : verificationKeys.get(signingKid);
+            if (signingKey == null) {
+                throw new IllegalStateException("JWT keyring has no key for signing.kid " + signingKid);
+            }
+        }
+        return new Snapshot(verificationKeys, signingKid, signingKey, modified, version);
+    }
+
+    private static PublicKey publicKey(byte[] encoded) {
+        X509EncodedKeySpec spec = new X509EncodedKeySpec(encoded);
+        for (String algorithm : new String[]{"RSA", "EC"}) {
+            try {
+                return KeyFactory.getInstance(algorithm).generatePublic(spec);
+            } catch (Exception ignored) {
+                // Try the next key type
+            }
+        }
+        throw new IllegalStateException("Unsupported public key in JWT keyring");
+    }
+
+    private static PrivateKey privateKey(byte[] encoded) {
+        PKCS8EncodedKeySpec spec = new PKCS8EncodedKeySpec(encoded);
+        for (String algorithm : new String[]{"RSA", "EC"}) {
+            try {
+                return KeyFactory.getInstance(algorithm).generatePrivate(spec);
+            } catch (Exception ignored) {
+                // Try the next key type
+            }
+        }
+        throw new IllegalStateException("Unsupported private key in JWT keyring");
+    }
+}
@@ -0,0 +1,55 @@
+package com.example.product.utils;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Fixed set of locks that ids are hashed onto. Work on disjoint ids can run in
+ * parallel while work touching the same id is serialized.
+ */
+public class StripedLocks {
+    private final Lock[] stripes;
+
+    public StripedLocks(int stripeCount) {
+        if (stripeCount <= 0) {
+            throw new IllegalArgumentException("stripeCount must be positive");
+        }
+        stripes = new Lock[stripeCount];
+        for (int i = 0; i < stripeCount; i++) {
+            // Fair locks so contended ids are served in arrival order
+            stripes[i] = new ReentrantLock(true);
+        }
+    }
+
+    /**
+     * Acquires every stripe covering the given ids. Stripes are always taken in
+     * ascending index order so two callers can never deadlock each other.
+     */
+    public List<Lock> lockAll(Collection<Long> ids) {
+        int[] indexes = ids.stream()
+                .mapToInt(this::stripeFor)
+                .distinct()
+                .sorted()
+                .toArray();
+
+        List<Lock> acquired = new ArrayList<>(indexes.length);
+        for (int index : indexes) {
+            stripes[index].lock();
+            acquired.add(stripes[index]);
+        }
+        return acquired;
+    }
+
+    public void unlockAll(List<Lock> acquired) {
+        for (int i = acquired.size() - 1; i >= 0; i--) {
+            acquired.get(i).unlock();
+        }
+    }
+
+    private int stripeFor(Long id) {
+        return Math.floorMod(Long.hashCode(id), stripes.length);
+    }
+}
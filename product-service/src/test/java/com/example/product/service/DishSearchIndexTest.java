@@ -0,0 +1,88 @@
+package com.example.product.service;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class DishSearchIndexTest {
+
+    private static final int LIMIT = 10;
+
+    private DishSearchIndex index;
+
+    @BeforeEach
+    void setUp() {
+        index = new DishSearchIndex();
+        index.put(1L, "Margherita Pizza", "Tomato and mozzarella");
+        index.put(2L, "Pepperoni Pizza", "Spicy salami");
+        index.put(3L, "Garlic Bread", "Goes well with pizza");
+    }
+
+    @Test
+    void nameMatchesRankAboveDescriptionMatches() {
+        assertEquals(List.of(1L, 2L, 3L), index.search("pizza", LIMIT));
+    }
+
+    @Test
+    void exactMatchesRankAbovePrefixMatches() {
+        index.put(4L, "Pizzaiolo Special", null);
+
+        assertEquals(List.of(1L, 2L, 4L, 3L), index.search("pizza", LIMIT));
+        assertEquals(List.of(4L), index.search("pizzaiolo", LIMIT));
+    }
+
+    @Test
+    void prefixOfAWordMatches() {
+        assertEquals(List.of(1L), index.search("marg", LIMIT));
+        assertEquals(List.of(1L, 2L, 3L), index.search("Pizz", LIMIT));
+    }
+
+    @Test
+    void toleratesTypos() {
+        assertEquals(List.of(1L), index.search("margarita", LIMIT));
+        assertEquals(List.of(1L, 2L, 3L), index.search("piza", LIMIT));
+    }
+
+    @Test
+    void everyWordHasToMatch() {
+        assertEquals(List.of(2L), index.search("pizza salami", LIMIT));
+        assertTrue(index.search("pizza sushi", LIMIT).isEmpty());
+        assertTrue(index.search("  ", LIMIT).isEmpty());
+    }
+
+    @Test
+    void limitKeepsTheBestAndBreaksTiesByLowerId() {
+        assertEquals(List.of(1L), index.search("pizza", 1));
+        assertEquals(List.of(1L, 2L), index.search("pizza", 2));
+    }
+
+    @Test
+    void updateReplacesTheIndexedText() {
+        index.put(2L, "Hawaiian Pizza", "Ham and pineapple");
+
+        assertTrue(index.search("pepperoni", LIMIT).isEmpty());
+        assertTrue(index.search("salami", LIMIT).isEmpty());
+        assertEquals(List.of(2L), index.search("hawaiian", LIMIT));
+        assertEquals(List.of(1L, 2L, 3L), index.search("pizza", LIMIT));
+    }
+
+    @Test
+    void removedDishIsNotFound() {
+        index.remove(1L);
+
+        assertTrue(index.search("margherita", LIMIT).isEmpty());
+        // Terms that no dish uses any more are gone, so they no longer count as near misses either
+        assertTrue(index.search("margarita", LIMIT).isEmpty());
+        assertEquals(List.of(2L, 3L), index.search("pizza", LIMIT));
+    }
+
+    @Test
+    void tokenizesIntoLowerCaseWords() {
+        assertEquals(List.of("chili", "con", "carne", "2"), DishSearchIndex.tokenize("Chili-con Carne (2)"));
+        assertTrue(DishSearchIndex.tokenize(null).isEmpty());
+    }
+}